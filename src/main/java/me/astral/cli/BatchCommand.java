@@ -0,0 +1,222 @@
+package me.astral.cli;
+
+import me.astral.mal.MAL;
+import me.astral.mal.writer.MALWriter;
+import me.astral.mic.EngineType;
+import me.astral.mic.MIC1Machine;
+import me.astral.mic.MIC1Runner;
+import me.astral.mic.MachinePool;
+import me.astral.mic.RunOptions;
+import me.astral.mic.RunResult;
+import me.astral.mic.StopReason;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many test cases in one JVM, spread over a work stealing pool.
+ *
+ * The cases come either from a manifest, one case per line as
+ * {@code PROGRAM CONTROL_STORE [INPUT [EXPECTED_OUTPUT]]} with paths relative to the manifest
+ * and {@code #} comments, or from a directory where every {@code NAME.ijvm} is a case using
+ * {@code NAME.in} and {@code NAME.out} when present. Control stores ending in {@code .mal}
+ * are assembled first, once per file.
+ */
+@CommandLine.Command(name = "batch")
+public class BatchCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(paramLabel = "CASES", description = "A manifest file or a directory of .ijvm programs")
+    private File cases;
+
+    @CommandLine.Option(names = {"--control-store", "-c"}, description = "Control store for directory cases without NAME.mic1 or NAME.mal")
+    private File controlStore;
+
+    @CommandLine.Option(names = {"--engine", "-e"}, description = "Execution engine: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private EngineType engine = EngineType.PACKED;
+
+    @CommandLine.Option(names = {"--threads", "-j"}, description = "Worker threads (default: one per core)")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    @CommandLine.Option(names = {"--max-cycles"}, description = "Stop each case after this many clocks")
+    private long maxCycles = Long.MAX_VALUE;
+
+    @CommandLine.Option(names = {"--timeout"}, description = "Stop each case after this many seconds")
+    private long timeout = -1;
+
+    @CommandLine.Option(names = {"--max-memory"}, description = "Stop a case when its memory allocated would exceed this many bytes")
+    private long maxMemory = -1;
+
+    @CommandLine.Option(names = {"--junit"}, description = "Write a JUnit XML report to this file")
+    private File junitReport;
+
+    @CommandLine.Option(names = {"--json"}, description = "Write a JSON report to this file")
+    private File jsonReport;
+
+    record Case(String name, Path program, Path controlStore, Path input, Path expected){}
+
+    /**
+     * @param reason null when the case could not be run, {@code error} then tells why
+     */
+    record Outcome(Case testCase, boolean passed, StopReason reason, long cycles, long wallNanos, String output, String error){}
+
+    private final Map<Path, byte[]> controlStores = new ConcurrentHashMap<>();
+    private MachinePool machines;
+
+    @Override
+    public Integer call() throws Exception {
+        List<Case> batch = cases.isDirectory() ? scan(cases.toPath()) : parse(cases.toPath());
+        machines = new MachinePool(engine);
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newWorkStealingPool(Math.max(1, threads));
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            List<Future<Outcome>> futures = new ArrayList<>();
+            for (Case testCase : batch)
+                futures.add(pool.submit(() -> run(testCase)));
+            for (Future<Outcome> future : futures){
+                Outcome outcome = future.get();
+                outcomes.add(outcome);
+                System.out.printf("%s %s (%d cycles, %.3f s)%n", outcome.passed() ? "PASS" : "FAIL",
+                        outcome.testCase().name(), outcome.cycles(), outcome.wallNanos() / 1e9);
+                if (outcome.error() != null)
+                    System.out.println("    " + outcome.error());
+            }
+        } catch (ExecutionException e){
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw (Exception) e.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+        long wallNanos = System.nanoTime() - start;
+
+        long passed = outcomes.stream().filter(Outcome::passed).count();
+        System.out.printf("%d/%d passed in %.3f s%n", passed, outcomes.size(), wallNanos / 1e9);
+
+        if (junitReport != null)
+            Files.writeString(junitReport.toPath(), BatchReport.junit(outcomes, wallNanos));
+        if (jsonReport != null)
+            Files.writeString(jsonReport.toPath(), BatchReport.json(outcomes, wallNanos));
+        return passed == outcomes.size() ? 0 : 1;
+    }
+
+    private Outcome run(Case testCase){
+        long start = System.nanoTime();
+        try {
+            byte[] program = Files.readAllBytes(testCase.program());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+            ByteBuffer input = ByteBuffer.wrap(testCase.input() == null ? new byte[0] : Files.readAllBytes(testCase.input()));
+            MIC1Machine machine = machines.acquire(ByteBuffer.wrap(program), controlStore(testCase.controlStore()), input, output);
+            RunResult result;
+            try {
+                RunOptions.RunOptionsBuilder options = RunOptions.builder().maxCycles(maxCycles).maxFootprint(maxMemory);
+                if (timeout >= 0)
+                    options.timeout(Duration.ofSeconds(timeout));
+                result = MIC1Runner.run(machine, options.build());
+            } finally {
+                machines.release(machine);
+            }
+
+            String actual = output.toString(StandardCharsets.ISO_8859_1);
+            String error = null;
+            if (result.reason() != StopReason.HALTED)
+                error = "Stopped (" + result.reason() + ") after " + result.cycles() + " cycles";
+            else if (testCase.expected() != null){
+                String expected = Files.readString(testCase.expected(), StandardCharsets.ISO_8859_1);
+                if (!expected.equals(actual))
+                    error = "Output differs from " + testCase.expected().getFileName();
+            }
+            return new Outcome(testCase, error == null, result.reason(), result.cycles(), System.nanoTime() - start, actual, error);
+        } catch (Exception e){
+            return new Outcome(testCase, false, null, 0, System.nanoTime() - start, "", e.toString());
+        }
+    }
+
+    private byte[] controlStore(Path path){
+        return controlStores.computeIfAbsent(path.toAbsolutePath().normalize(), p -> {
+            try {
+                byte[] bytes = Files.readAllBytes(p);
+                if (p.getFileName().toString().endsWith(".mal"))
+                    bytes = new MALWriter(MAL.parse(new String(bytes, StandardCharsets.UTF_8))).write();
+                return bytes;
+            } catch (IOException e){
+                throw new IllegalArgumentException("Cannot read control store " + p, e);
+            }
+        });
+    }
+
+    private static List<Case> parse(Path manifest) throws IOException {
+        Path base = manifest.toAbsolutePath().getParent();
+        List<Case> batch = new ArrayList<>();
+        List<String> lines = Files.readAllLines(manifest);
+        for (int i = 0; i < lines.size(); i++){
+            String line = lines.get(i);
+            int comment = line.indexOf('#');
+            if (comment >= 0)
+                line = line.substring(0, comment);
+            line = line.strip();
+            if (line.isEmpty())
+                continue;
+
+            String[] fields = line.split("\\s+");
+            if (fields.length < 2 || fields.length > 4)
+                throw new IllegalArgumentException(manifest + ":" + (i + 1) + ": expected PROGRAM CONTROL_STORE [INPUT [EXPECTED_OUTPUT]]");
+            Path program = base.resolve(fields[0]);
+            batch.add(new Case(caseName(program) + ":" + (i + 1), program, base.resolve(fields[1]),
+                    fields.length > 2 ? base.resolve(fields[2]) : null,
+                    fields.length > 3 ? base.resolve(fields[3]) : null));
+        }
+        return batch;
+    }
+
+    private List<Case> scan(Path directory) throws IOException {
+        File[] programs = directory.toFile().listFiles((dir, name) -> name.endsWith(".ijvm"));
+        if (programs == null)
+            throw new IOException("Cannot list " + directory);
+        Arrays.sort(programs);
+
+        List<Case> batch = new ArrayList<>();
+        for (File file : programs){
+            Path program = file.toPath();
+            String name = caseName(program);
+            Path microcode = existing(directory.resolve(name + ".mic1"));
+            if (microcode == null)
+                microcode = existing(directory.resolve(name + ".mal"));
+            if (microcode == null && controlStore != null)
+                microcode = controlStore.toPath();
+            if (microcode == null)
+                throw new IllegalArgumentException("No control store for " + file + ", use --control-store");
+            batch.add(new Case(name, program, microcode,
+                    existing(directory.resolve(name + ".in")), existing(directory.resolve(name + ".out"))));
+        }
+        return batch;
+    }
+
+    private static Path existing(Path path){
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    private static String caseName(Path program){
+        String name = program.getFileName().toString();
+        return name.endsWith(".ijvm") ? name.substring(0, name.length() - 5) : name;
+    }
+}
@@ -0,0 +1,107 @@
+package me.astral.cli;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * JUnit XML and JSON renderings of the outcomes of a {@link BatchCommand}.
+ */
+final class BatchReport {
+
+    private BatchReport(){}
+
+    static String junit(List<BatchCommand.Outcome> outcomes, long wallNanos){
+        long failures = outcomes.stream().filter(o -> !o.passed() && o.reason() != null).count();
+        long errors = outcomes.stream().filter(o -> o.reason() == null).count();
+
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<testsuite name=\"mikel\" tests=\"").append(outcomes.size())
+                .append("\" failures=\"").append(failures)
+                .append("\" errors=\"").append(errors)
+                .append("\" time=\"").append(seconds(wallNanos)).append("\">\n");
+        for (BatchCommand.Outcome outcome : outcomes){
+            xml.append("  <testcase classname=\"mikel.batch\" name=\"").append(xml(outcome.testCase().name()))
+                    .append("\" time=\"").append(seconds(outcome.wallNanos())).append("\">\n");
+            xml.append("    <properties>\n");
+            xml.append("      <property name=\"cycles\" value=\"").append(outcome.cycles()).append("\"/>\n");
+            if (outcome.reason() != null)
+                xml.append("      <property name=\"reason\" value=\"").append(outcome.reason()).append("\"/>\n");
+            xml.append("    </properties>\n");
+            if (!outcome.passed()){
+                String tag = outcome.reason() == null ? "error" : "failure";
+                xml.append("    <").append(tag).append(" message=\"").append(xml(outcome.error())).append("\"/>\n");
+                xml.append("    <system-out>").append(xml(outcome.output())).append("</system-out>\n");
+            }
+            xml.append("  </testcase>\n");
+        }
+        xml.append("</testsuite>\n");
+        return xml.toString();
+    }
+
+    static String json(List<BatchCommand.Outcome> outcomes, long wallNanos){
+        long passed = outcomes.stream().filter(BatchCommand.Outcome::passed).count();
+
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"tests\": ").append(outcomes.size()).append(",\n");
+        json.append("  \"passed\": ").append(passed).append(",\n");
+        json.append("  \"time\": ").append(seconds(wallNanos)).append(",\n");
+        json.append("  \"cases\": [");
+        for (int i = 0; i < outcomes.size(); i++){
+            BatchCommand.Outcome outcome = outcomes.get(i);
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": ").append(json(outcome.testCase().name()))
+                    .append(", \"passed\": ").append(outcome.passed())
+                    .append(", \"reason\": ").append(outcome.reason() == null ? "null" : json(outcome.reason().name()))
+                    .append(", \"cycles\": ").append(outcome.cycles())
+                    .append(", \"time\": ").append(seconds(outcome.wallNanos()))
+                    .append(", \"error\": ").append(outcome.error() == null ? "null" : json(outcome.error()))
+                    .append("}");
+        }
+        json.append(outcomes.isEmpty() ? "]\n" : "\n  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String seconds(long nanos){
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e9);
+    }
+
+    private static String xml(String text){
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()){
+            switch (c){
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                case '\n', '\t' -> escaped.append(c);
+                default -> {
+                    if (c < 0x20)
+                        escaped.append("&#xFFFD;");
+                    else
+                        escaped.append(c);
+                }
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String json(String text){
+        StringBuilder escaped = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()){
+            switch (c){
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    else
+                        escaped.append(c);
+                }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+}
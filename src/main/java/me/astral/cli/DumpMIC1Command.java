@@ -23,31 +23,43 @@ public class DumpMIC1Command implements Callable<Integer> {
     private static String dumpControlStore(byte[] cs){
         BitSet bitSet = BitSet.valueOf(cs);
         StringBuilder builder = new StringBuilder();
-        int[][] ranges = {{0, 9, 1}, {9, 12, 0}, {12, 14, 0}, {14, 20, 0}, {20, 29, 0}, {29, 32, 0}, {32, 36, 0}};
         for (int i = 0; i < 512; i++){
-            int bitAddress = i * 36;
-            String address = "0x" + padLeft(Integer.toHexString(i).toUpperCase(), 3);
-
-            builder.append(address);
-            builder.append(": ");
+            builder.append(dumpWord(bitSet, i));
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
 
-            for (int[] range : ranges){
-                String bits = getBits(bitSet, bitAddress + range[0], bitAddress + range[1]);
+    /**
+     * @param bitSet the bits of a binary control store, as {@link BitSet#valueOf(byte[])} gives them
+     * @return the line of the dump for the word at {@code i}
+     */
+    static String dumpWord(BitSet bitSet, int i){
+        StringBuilder builder = new StringBuilder();
+        int[][] ranges = {{0, 9, 1}, {9, 12, 0}, {12, 14, 0}, {14, 20, 0}, {20, 29, 0}, {29, 32, 0}, {32, 36, 0}};
+        int bitAddress = i * 36;
+        builder.append(address(i));
+        builder.append(": ");
 
-                if (range[2] == 1){
-                    int value = Integer.parseInt(bits, 2);
-                    bits = "0x" + padLeft(Integer.toHexString(value).toUpperCase(), 3);
-                }
+        for (int[] range : ranges){
+            String bits = getBits(bitSet, bitAddress + range[0], bitAddress + range[1]);
 
-                builder.append(bits);
-                builder.append(" ");
+            if (range[2] == 1){
+                int value = Integer.parseInt(bits, 2);
+                bits = address(value);
             }
-            builder.setLength(builder.length() - 1);
-            builder.append('\n');
+
+            builder.append(bits);
+            builder.append(" ");
         }
+        builder.setLength(builder.length() - 1);
         return builder.toString();
     }
 
+    static String address(int address){
+        return "0x" + padLeft(Integer.toHexString(address).toUpperCase(), 3);
+    }
+
     private static String getBits(BitSet set, int from, int to){
         StringBuilder builder = new StringBuilder();
         for (int i = from; i < to; i++){
@@ -4,7 +4,7 @@ package me.astral.cli;
 import picocli.CommandLine;
 
 @CommandLine.Command(
-        subcommands = {MicroAssembleCommand.class, RunCommand.class, DumpMIC1Command.class},
+        subcommands = {MicroAssembleCommand.class, RunCommand.class, PackCommand.class, ResumeCommand.class, BatchCommand.class, DumpMIC1Command.class},
         name = "mikel"
 )
 public class MICLI {
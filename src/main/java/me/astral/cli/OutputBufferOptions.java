@@ -0,0 +1,30 @@
+package me.astral.cli;
+
+import me.astral.mic.IOModule;
+import me.astral.mic.StreamIOModule;
+import picocli.CommandLine;
+
+import java.time.Duration;
+
+/**
+ * Output buffering options shared by the commands running a program on the console.
+ */
+public class OutputBufferOptions {
+
+    @CommandLine.Option(names = {"--output-buffer"}, description = "Bytes of output buffered, 0 to write every byte at once (default: ${DEFAULT-VALUE})")
+    private int size = 8192;
+
+    @CommandLine.Option(names = {"--flush-on-newline"}, description = "Flush the output after every newline")
+    private boolean flushOnNewline;
+
+    @CommandLine.Option(names = {"--flush-interval"}, description = "Milliseconds buffered output may wait, -1 for no limit (default: ${DEFAULT-VALUE})")
+    private long flushInterval = 100;
+
+    void apply(IOModule memory){
+        if (memory instanceof StreamIOModule streams){
+            streams.bufferOutput(size);
+            streams.setFlushOnNewline(flushOnNewline);
+            streams.setFlushInterval(flushInterval < 0 ? null : Duration.ofMillis(flushInterval));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package me.astral.cli;
+
+import me.astral.mal.MAL;
+import me.astral.mal.writer.MALWriter;
+import me.astral.mic.ProgramImage;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+@CommandLine.Command(name = "pack")
+public class PackCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(paramLabel = "PROGRAM", description = "The compiled IJVM program (.ijvm)")
+    private File program;
+
+    @CommandLine.Parameters(paramLabel = "CONTROL_STORE", description = "The compiled (or textual when --text-mal) control store")
+    private File controlStore;
+
+    @CommandLine.Option(names = {"--text-mal", "-m"})
+    private boolean textualMAL;
+
+    @CommandLine.Option(names = {"--output", "-o"}, description = "Image file (default: the program name with " + ProgramImage.EXTENSION + ")")
+    private File output;
+
+    @CommandLine.Option(names = {"--input", "-i"}, description = "Input to store in the image, read instead of the standard input")
+    private File input;
+
+    @CommandLine.Option(names = {"--meta"}, paramLabel = "KEY=VALUE", description = "Metadata to store in the image")
+    private Map<String, String> meta = new LinkedHashMap<>();
+
+    @Override
+    public Integer call() throws Exception {
+        byte[] microCode = Files.readAllBytes(controlStore.toPath());
+        if (textualMAL)
+            microCode = new MALWriter(MAL.parse(new String(microCode, StandardCharsets.UTF_8))).write();
+
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("program", program.getName());
+        metadata.put("control-store", controlStore.getName());
+        metadata.putAll(meta);
+
+        String name = program.getName();
+        Path image = output != null ? output.toPath()
+                : program.toPath().resolveSibling((name.endsWith(".ijvm") ? name.substring(0, name.length() - 5) : name) + ProgramImage.EXTENSION);
+        ProgramImage.write(image, Files.readAllBytes(program.toPath()), microCode,
+                input == null ? null : Files.readAllBytes(input.toPath()), metadata);
+        System.out.println("Packed " + image);
+        return 0;
+    }
+}
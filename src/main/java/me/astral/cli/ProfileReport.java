@@ -0,0 +1,109 @@
+package me.astral.cli;
+
+import me.astral.mic.IJVMOpcodes;
+import me.astral.mic.IJVMProfile;
+import me.astral.mic.MicroProfile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Locale;
+
+/**
+ * Text renderings of the profiles taken by {@code run --profile} and {@code --profile-ijvm}.
+ */
+final class ProfileReport {
+
+    //Successors listed under each hot word
+    private static final int SUCCESSORS = 8;
+
+    private ProfileReport(){}
+
+    /**
+     * Lists the {@code limit} most run words of {@code microcode}, decoded as by the dump
+     * command, each with the transitions it took.
+     */
+    static String micro(MicroProfile profile, byte[] microcode, int limit){
+        BitSet bits = BitSet.valueOf(microcode);
+        long cycles = profile.getCycles();
+        int[] hottest = profile.getHottest(Integer.MAX_VALUE);
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Microcode profile: %d cycles, %d addresses run%n", cycles, hottest.length));
+        report.append(String.format(Locale.ROOT, "%12s %7s  %s%n", "count", "share", "word"));
+        for (int i = 0; i < Math.min(limit, hottest.length); i++){
+            int address = hottest[i];
+            long count = profile.getCount(address);
+            report.append(String.format(Locale.ROOT, "%12d %6.2f%%  %s%n", count, percent(count, cycles),
+                    DumpMIC1Command.dumpWord(bits, address)));
+            int[] successors = profile.getSuccessors(address);
+            for (int s = 0; s < Math.min(SUCCESSORS, successors.length); s++){
+                long taken = profile.getEdge(address, successors[s]);
+                report.append(String.format(Locale.ROOT, "%22s-> %s %d (%.1f%%)%n", "",
+                        DumpMIC1Command.address(successors[s]), taken, percent(taken, count)));
+            }
+            if (successors.length > SUCCESSORS)
+                report.append(String.format(Locale.ROOT, "%22s-> %d more%n", "", successors.length - SUCCESSORS));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Lists every opcode run with its count, clocks and clocks per instruction, then the
+     * {@code limit} text offsets the most clocks were spent at.
+     * @param names mnemonics by dispatch target, see {@link #names}
+     */
+    static String ijvm(IJVMProfile profile, String[] names, int limit){
+        long cycles = profile.getCycles();
+        int[] opcodes = profile.getOpcodes();
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "IJVM profile: %d instructions, %d cycles, %.2f CPI%n",
+                profile.getInstructions(), cycles, profile.getInstructions() == 0 ? 0 : (double) cycles / profile.getInstructions()));
+        report.append(String.format(Locale.ROOT, "%-16s %12s %12s %7s %8s%n", "opcode", "count", "cycles", "share", "CPI"));
+        for (int opcode : opcodes){
+            report.append(String.format(Locale.ROOT, "%-16s %12d %12d %6.2f%% %8.2f%n", names[opcode],
+                    profile.getCount(opcode), profile.getCycles(opcode), percent(profile.getCycles(opcode), cycles), profile.getCPI(opcode)));
+        }
+
+        int[] offsets = profile.getHottestOffsets(limit);
+        report.append(String.format(Locale.ROOT, "%nHottest offsets%n"));
+        report.append(String.format(Locale.ROOT, "%-8s %-16s %12s %12s %7s %8s%n", "offset", "opcode", "count", "cycles", "share", "CPI"));
+        for (int offset : offsets){
+            long count = profile.getOffsetCount(offset);
+            long spent = profile.getOffsetCycles(offset);
+            report.append(String.format(Locale.ROOT, "0x%06X %-16s %12d %12d %6.2f%% %8.2f%n", offset,
+                    names[profile.getOffsetOpcode(offset)], count, spent, percent(spent, cycles), (double) spent / count));
+        }
+        return report.toString();
+    }
+
+    /**
+     * Mnemonics by dispatch target, those of the reference set overridden by the
+     * {@code 0xNN NAME operands // comment} lines of {@code conf} when given.
+     */
+    static String[] names(Path conf) throws IOException {
+        String[] names = new String[IJVMProfile.OPCODES];
+        for (int target = 0; target < names.length; target++){
+            String name = IJVMOpcodes.name(target);
+            names[target] = name != null ? name : String.format(Locale.ROOT, "0x%02X", target);
+        }
+        if (conf == null)
+            return names;
+        for (String line : Files.readAllLines(conf, StandardCharsets.UTF_8)){
+            String[] fields = line.strip().split("\\s+");
+            if (fields.length < 2 || !fields[0].startsWith("0x"))
+                continue;
+            int opcode = Integer.parseInt(fields[0].substring(2), 16) & 0xFF;
+            names[opcode] = fields[1];
+            names[0x100 | opcode] = "WIDE " + fields[1];
+        }
+        return names;
+    }
+
+    private static double percent(long part, long whole){
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
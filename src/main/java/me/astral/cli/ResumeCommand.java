@@ -0,0 +1,135 @@
+package me.astral.cli;
+
+import me.astral.mal.MAL;
+import me.astral.mal.writer.MALWriter;
+import me.astral.mic.Checkpoint;
+import me.astral.mic.ControlStore;
+import me.astral.mic.ControlStoreRegistry;
+import me.astral.mic.EngineType;
+import me.astral.mic.MIC1Machine;
+import me.astral.mic.MIC1Runner;
+import me.astral.mic.MachineSnapshot;
+import me.astral.mic.ProgramImage;
+import me.astral.mic.RunOptions;
+import me.astral.mic.RunResult;
+import me.astral.mic.StopReason;
+import me.astral.mic.StreamIOModule;
+import picocli.CommandLine;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+
+/**
+ * Continues a run from a checkpoint written by {@code run --checkpoint-every}.
+ *
+ * The standard input, or the {@code --input} file, must be the one given to the interrupted
+ * run, the bytes the machine had already read are skipped. A run of an image is resumed with
+ * the image in place of the control store, its input included. Only the output following the checkpoint is written, with
+ * {@code --output} the file is first cut back to the length it had at the checkpoint.
+ */
+@CommandLine.Command(name = "resume")
+public class ResumeCommand implements Callable<Integer> {
+
+    @CommandLine.Parameters(paramLabel = "CHECKPOINT", description = "The checkpoint to continue from")
+    private File checkpoint;
+
+    @CommandLine.Parameters(paramLabel = "CONTROL_STORE", description = "The control store of the interrupted run, or the image it ran")
+    private File controlStore;
+
+    @CommandLine.Option(names = {"--text-mal", "-m"})
+    private boolean textualMAL;
+
+    @CommandLine.Option(names = {"--engine", "-e"}, description = "Execution engine (default: the one of the interrupted run)")
+    private EngineType engine;
+
+    @CommandLine.Option(names = {"--output", "-o"}, description = "Output file of the interrupted run, to continue")
+    private File output;
+
+    @CommandLine.Option(names = {"--input", "-i"}, description = "Input file of the interrupted run, memory mapped, to continue")
+    private File input;
+
+    @CommandLine.Option(names = {"--max-cycles"}, description = "Stop after this many more clocks")
+    private long maxCycles = Long.MAX_VALUE;
+
+    @CommandLine.Option(names = {"--timeout"}, description = "Stop after this many seconds")
+    private long timeout = -1;
+
+    @CommandLine.Option(names = {"--max-memory"}, description = "Stop when the memory allocated would exceed this many bytes")
+    private long maxMemory = -1;
+
+    @CommandLine.Option(names = {"--checkpoint-every"}, description = "Keep updating CHECKPOINT every this many clocks")
+    private long checkpointEvery = -1;
+
+    @CommandLine.Mixin
+    private OutputBufferOptions outputBuffer;
+
+    @Override
+    public Integer call() throws Exception {
+        ProgramImage packed = ProgramImage.isImage(controlStore.toPath()) ? ProgramImage.map(controlStore.toPath()) : null;
+        if (packed != null && textualMAL)
+            throw new CommandLine.ParameterException(new CommandLine(this), controlStore + " is an image, it holds its control store");
+        ControlStore store;
+        if (packed != null){
+            store = packed.getControlStore();
+        }else {
+            byte[] microCode = Files.readAllBytes(controlStore.toPath());
+            if (textualMAL){
+                microCode = new MALWriter(MAL.parse(new String(microCode, StandardCharsets.UTF_8))).write();
+            }
+            store = ControlStoreRegistry.shared().get(microCode);
+        }
+        MachineSnapshot snapshot = Checkpoint.read(checkpoint.toPath(), store);
+        ByteBuffer packedInput = packed == null || input != null ? null : packed.getInput();
+
+        if (input != null && Files.size(input.toPath()) < snapshot.getInputPosition())
+            throw new CommandLine.ParameterException(new CommandLine(this),
+                    input + " is shorter than the " + snapshot.getInputPosition() + " bytes read before the checkpoint");
+        if (packedInput != null && packedInput.remaining() < snapshot.getInputPosition())
+            throw new CommandLine.ParameterException(new CommandLine(this),
+                    controlStore + " holds less than the " + snapshot.getInputPosition() + " bytes read before the checkpoint");
+        if (input == null && packedInput == null)
+            System.in.skipNBytes(snapshot.getInputPosition());
+        OutputStream out = System.out;
+        if (output != null){
+            try (FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)){
+                if (channel.size() < snapshot.getOutputPosition())
+                    throw new CommandLine.ParameterException(new CommandLine(this),
+                            output + " is shorter than the " + snapshot.getOutputPosition() + " bytes written before the checkpoint");
+                channel.truncate(snapshot.getOutputPosition());
+            }
+            out = Files.newOutputStream(output.toPath(), StandardOpenOption.APPEND);
+        }
+
+        MIC1Machine machine = snapshot.newMachine(System.in, out);
+        outputBuffer.apply(machine.getMemory());
+        if (input != null)
+            ((StreamIOModule) machine.getMemory()).setInput(input.toPath(), snapshot.getInputPosition());
+        if (packedInput != null)
+            ((StreamIOModule) machine.getMemory()).setInput(packedInput.position(packedInput.position() + (int) snapshot.getInputPosition()));
+        if (engine != null)
+            machine.setEngine(engine);
+
+        RunOptions.RunOptionsBuilder options = RunOptions.builder().maxCycles(maxCycles).maxFootprint(maxMemory);
+        if (timeout >= 0)
+            options.timeout(Duration.ofSeconds(timeout));
+        if (checkpointEvery > 0)
+            options.checkpointEvery(checkpointEvery).checkpoint(RunCommand.checkpointer(checkpoint.toPath()));
+        RunResult result = MIC1Runner.run(machine, options.build());
+        if (out != System.out)
+            out.close();
+        if (result.fault() != null)
+            System.err.println(result.fault().getMessage());
+        if (result.reason() != StopReason.HALTED){
+            System.err.println("Stopped (" + result.reason() + ") after " + machine.getCycles() + " cycles");
+            return 1;
+        }
+        return 0;
+    }
+}
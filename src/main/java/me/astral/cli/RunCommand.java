@@ -2,36 +2,251 @@ package me.astral.cli;
 
 import me.astral.mal.MAL;
 import me.astral.mal.writer.MALWriter;
+import me.astral.mic.AsyncIOModule;
+import me.astral.mic.Checkpoint;
+import me.astral.mic.EngineType;
+import me.astral.mic.IOJournal;
+import me.astral.mic.IJVMProfile;
+import me.astral.mic.IOModule;
+import me.astral.mic.MIC1Machine;
+import me.astral.mic.MappedIOModule;
+import me.astral.mic.MicroProfile;
+import me.astral.mic.ProgramImage;
+import me.astral.mic.RegionIOModule;
 import me.astral.mic.MIC1Runner;
+import me.astral.mic.RunOptions;
+import me.astral.mic.RunResult;
+import me.astral.mic.StopReason;
+import me.astral.mic.StreamIOModule;
 import picocli.CommandLine;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 @CommandLine.Command(name = "run")
 public class RunCommand implements Callable<Integer> {
 
-    @CommandLine.Parameters(paramLabel = "PROGRAM", description = "The compiled IJVM program to execute (.ijvm)")
+    @CommandLine.Parameters(index = "0", paramLabel = "PROGRAM", description = "The compiled IJVM program to execute (.ijvm), or an image made by pack")
     private File program;
 
-    @CommandLine.Parameters(paramLabel = "CONTROL_STORE", description = "The compiled (or textual when --text-mal) control store to load")
+    @CommandLine.Parameters(index = "1", arity = "0..1", paramLabel = "CONTROL_STORE", description = "The compiled (or textual when --text-mal) control store to load, not with an image")
     private File controlStore;
 
     @CommandLine.Option(names = {"--text-mal", "-m"})
     private boolean textualMAL;
 
+    @CommandLine.Option(names = {"--engine", "-e"}, description = "Execution engine: ${COMPLETION-CANDIDATES} (default: ${DEFAULT-VALUE})")
+    private EngineType engine = EngineType.PACKED;
+
+    @CommandLine.Option(names = {"--max-cycles"}, description = "Stop after this many clocks")
+    private long maxCycles = Long.MAX_VALUE;
+
+    @CommandLine.Option(names = {"--timeout"}, description = "Stop after this many seconds")
+    private long timeout = -1;
+
+    @CommandLine.Option(names = {"--max-memory"}, description = "Stop when the memory allocated would exceed this many bytes")
+    private long maxMemory = -1;
+
+    @CommandLine.Option(names = {"--protect-memory"}, description = "Fault on writes to text, constant pool or outside the stack")
+    private boolean protectMemory;
+
+    @CommandLine.Option(names = {"--memory-image"}, description = "Keep the memory in this memory mapped image file")
+    private File memoryImage;
+
+    @CommandLine.Option(names = {"--checkpoint-every"}, description = "Write a checkpoint every this many clocks")
+    private long checkpointEvery = -1;
+
+    @CommandLine.Option(names = {"--checkpoint"}, description = "Checkpoint file (default: PROGRAM.checkpoint)")
+    private File checkpoint;
+
+    @CommandLine.Option(names = {"--input", "-i"}, description = "Read the program input from this file, memory mapped, instead of the standard input")
+    private File input;
+
+    @CommandLine.Option(names = {"--record"}, description = "Record the input and output of the run in this journal")
+    private File record;
+
+    @CommandLine.Option(names = {"--replay"}, description = "Feed the input recorded in this journal and check the output against it")
+    private File replay;
+
+    @CommandLine.Option(names = {"--async-io"}, description = "Read and write the console on separate threads")
+    private boolean asyncIO;
+
+    @CommandLine.Option(names = {"--profile"}, description = "Count every microinstruction run, on the PACKED engine, and print the hottest to the standard error")
+    private boolean profile;
+
+    @CommandLine.Option(names = {"--profile-ijvm"}, description = "Attribute every clock to the IJVM instruction it ran, on the PACKED engine, and print cycles per opcode and the hottest offsets to the standard error")
+    private boolean profileIJVM;
+
+    @CommandLine.Option(names = {"--profile-top"}, description = "Microinstructions or offsets listed by --profile and --profile-ijvm (default: ${DEFAULT-VALUE})")
+    private int profileTop = 20;
+
+    @CommandLine.Option(names = {"--ijvm-conf"}, description = "Opcode names for --profile-ijvm, from an assembler ijvm.conf")
+    private File ijvmConf;
+
+    @CommandLine.Mixin
+    private OutputBufferOptions outputBuffer;
+
     @Override
     public Integer call() throws Exception {
-        byte[] programBytes = Files.readAllBytes(program.toPath());
-        byte[] microCode = Files.readAllBytes(controlStore.toPath());
+        ProgramImage packed = ProgramImage.isImage(program.toPath()) ? ProgramImage.map(program.toPath()) : null;
+        if (packed == null && controlStore == null)
+            throw new CommandLine.ParameterException(new CommandLine(this), "Missing CONTROL_STORE");
+        if (packed != null && controlStore != null)
+            throw new CommandLine.ParameterException(new CommandLine(this), program + " is an image, it holds its control store");
+        ByteBuffer packedInput = packed == null || input != null || replay != null ? null : packed.getInput();
+
+        if (checkpointEvery > 0 && memoryImage != null)
+            throw new CommandLine.ParameterException(new CommandLine(this), "--checkpoint-every cannot be used with --memory-image");
+        if (protectMemory && memoryImage != null)
+            throw new CommandLine.ParameterException(new CommandLine(this), "--protect-memory cannot be used with --memory-image");
+
+        if (input != null && replay != null)
+            throw new CommandLine.ParameterException(new CommandLine(this), "--input cannot be used with --replay");
+        if (asyncIO && (input != null || replay != null || record != null || checkpointEvery > 0 || packedInput != null))
+            throw new CommandLine.ParameterException(new CommandLine(this), "--async-io cannot be used with --input, --replay, --record, --checkpoint-every or an image holding input");
+        IOJournal.Recording recording = replay == null ? null : IOJournal.read(replay.toPath());
+        ReplayCheck check = recording == null ? null : new ReplayCheck(recording.output(), System.out);
+        OutputStream out = check == null ? System.out : check;
 
-        if (textualMAL){
-            microCode = new MALWriter(MAL.parse(new String(microCode, StandardCharsets.UTF_8))).write();
+        MappedIOModule image = memoryImage == null ? null : new MappedIOModule(memoryImage.toPath(), System.in, out);
+        IOModule memory = image;
+        if (memory == null){
+            RegionIOModule regions = new RegionIOModule(System.in, out);
+            regions.setProtection(protectMemory);
+            memory = regions;
         }
+        outputBuffer.apply(memory);
+        if (input != null)
+            ((StreamIOModule) memory).setInput(input.toPath());
+        if (recording != null)
+            ((StreamIOModule) memory).setInput(ByteBuffer.wrap(recording.input()));
+        if (packedInput != null)
+            ((StreamIOModule) memory).setInput(packedInput);
+        AsyncIOModule async = asyncIO ? new AsyncIOModule(memory, System.in, out) : null;
+        if (async != null)
+            memory = async;
+        MIC1Machine machine;
+        byte[] microCode;
+        if (packed != null){
+            machine = packed.load(memory);
+            microCode = packed.getMicrocode();
+        }else {
+            microCode = Files.readAllBytes(controlStore.toPath());
+            if (textualMAL)
+                microCode = new MALWriter(MAL.parse(new String(microCode, StandardCharsets.UTF_8))).write();
+            machine = MIC1Runner.loadIJVM(Files.readAllBytes(program.toPath()), microCode, memory);
+        }
+        machine.setEngine(engine);
+        MicroProfile microProfile = profile ? new MicroProfile() : null;
+        machine.setProfile(microProfile);
+        IJVMProfile ijvmProfile = profileIJVM ? new IJVMProfile() : null;
+        machine.setProfile(ijvmProfile);
+        String[] opcodeNames = profileIJVM ? ProfileReport.names(ijvmConf == null ? null : ijvmConf.toPath()) : null;
+
+        RunOptions.RunOptionsBuilder options = RunOptions.builder().maxCycles(maxCycles).maxFootprint(maxMemory);
+        if (timeout >= 0)
+            options.timeout(Duration.ofSeconds(timeout));
+        if (checkpointEvery > 0)
+            options.checkpointEvery(checkpointEvery).checkpoint(checkpointer(
+                    checkpoint != null ? checkpoint.toPath() : Path.of(program.getPath() + ".checkpoint")));
+        IOJournal journal = record == null ? null : IOJournal.record(record.toPath());
+        options.journal(journal);
+        if (journal != null && engine.packedWithStops())
+            System.err.println("--record runs the " + engine + " engine as PACKED");
 
-        MIC1Runner.runIJVM(programBytes, microCode);
+        RunResult result;
+        try {
+            result = MIC1Runner.run(machine, options.build());
+        } finally {
+            if (journal != null)
+                journal.close();
+        }
+        if (async != null)
+            async.close();
+        if (image != null)
+            image.close();
+        if (microProfile != null)
+            System.err.print(ProfileReport.micro(microProfile, microCode, profileTop));
+        if (ijvmProfile != null)
+            System.err.print(ProfileReport.ijvm(ijvmProfile, opcodeNames, profileTop));
+        if (result.fault() != null)
+            System.err.println(result.fault().getMessage());
+        if (result.reason() != StopReason.HALTED){
+            System.err.println("Stopped (" + result.reason() + ") after " + result.cycles() + " cycles");
+            return 1;
+        }
+        if (check != null && !check.matches(recording, machine.getCycles()))
+            return 1;
         return 0;
     }
+
+    //Passes the output through, comparing it with a recording
+    private static final class ReplayCheck extends OutputStream {
+
+        private final byte[] expected;
+        private final OutputStream out;
+        private int position = 0;
+        private int mismatch = -1;
+
+        ReplayCheck(byte[] expected, OutputStream out){
+            this.expected = expected;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (mismatch < 0 && (position >= expected.length || expected[position] != (byte) b))
+                mismatch = position;
+            position++;
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = 0; i < len && mismatch < 0; i++)
+                if (position + i >= expected.length || expected[position + i] != b[off + i])
+                    mismatch = position + i;
+            position += len;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        boolean matches(IOJournal.Recording recording, long cycles){
+            if (mismatch < 0 && position < expected.length)
+                mismatch = position;
+            if (mismatch >= 0){
+                System.err.println("Replay diverged at output byte " + mismatch
+                        + (mismatch < expected.length ? ", recorded in cycle " + recording.outputCycles()[mismatch] : ""));
+                return false;
+            }
+            if (recording.endCycle() >= 0 && recording.endCycle() != cycles){
+                System.err.println("Replay halted after " + cycles + " cycles, recorded run after " + recording.endCycle());
+                return false;
+            }
+            return true;
+        }
+    }
+
+    static Consumer<MIC1Machine> checkpointer(Path file){
+        return machine -> {
+            try {
+                Checkpoint.write(machine.snapshot(), file);
+            } catch (IOException e){
+                throw new UncheckedIOException("Cannot write checkpoint " + file, e);
+            }
+        };
+    }
 }
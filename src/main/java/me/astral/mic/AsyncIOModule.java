@@ -0,0 +1,210 @@
+package me.astral.mic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Memory module moving the console I/O of any other module off the simulation thread.
+ *
+ * The memory itself is the one of the wrapped module. Output bytes go in a ring that a
+ * writer thread drains to the output stream at least every millisecond, and a reader thread, started by the first
+ * {@link #input()}, keeps an input ring filled ahead of the program. The simulation thread
+ * only waits when the program reads input that did not arrive yet, when the output ring is
+ * full, and on {@link #flush()} that returns once the output is written, so on halt too.
+ */
+public class AsyncIOModule implements IOModule, Closeable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    //Longest time output waits in the ring for the writer
+    private static final long OUTPUT_LINGER_NANOS = 1_000_000;
+
+    private final IOModule memory;
+    private final InputStream inputStream;
+    private final ByteRing output;
+    private final ByteRing input;
+    private final Thread writer;
+    private Thread reader;
+    private long bytesWritten = 0;
+    private long bytesRead = 0;
+
+    public AsyncIOModule(IOModule memory, InputStream inputStream, OutputStream outputStream){
+        this(memory, inputStream, outputStream, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity bytes each ring holds, a power of two
+     */
+    public AsyncIOModule(IOModule memory, InputStream inputStream, OutputStream outputStream, int capacity){
+        this.memory = memory;
+        this.inputStream = inputStream;
+        this.output = new ByteRing(capacity, OUTPUT_LINGER_NANOS);
+        this.input = new ByteRing(capacity);
+        this.writer = new Thread(() -> drain(outputStream), "mikel-output");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void output(int data) {
+        output.put(data);
+        bytesWritten++;
+    }
+
+    @Override
+    public int input() {
+        if (reader == null){
+            reader = new Thread(this::fill, "mikel-input");
+            reader.setDaemon(true);
+            reader.start();
+        }
+        int data = input.take();
+        if (data >= 0)
+            bytesRead++;
+        return data;
+    }
+
+    @Override
+    public void flush() {
+        output.awaitEmpty();
+    }
+
+    /**
+     * Writes out the pending output and stops the writer thread. The reader thread may stay
+     * blocked on its stream, it does not keep the JVM alive.
+     */
+    @Override
+    public void close() throws IOException {
+        output.close();
+        try {
+            writer.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int get32(int wordAddress) {
+        return memory.get32(wordAddress);
+    }
+
+    @Override
+    public void set32(int wordAddress, int value) {
+        memory.set32(wordAddress, value);
+    }
+
+    @Override
+    public byte get8(int byteAddress) {
+        return memory.get8(byteAddress);
+    }
+
+    @Override
+    public void set8(int byteAddress, byte value) {
+        memory.set8(byteAddress, value);
+    }
+
+    @Override
+    public void clear() {
+        memory.clear();
+    }
+
+    @Override
+    public void load(int origin, byte[] bytes) {
+        memory.load(origin, bytes);
+    }
+
+    @Override
+    public void load(int origin, ByteBuffer bytes) {
+        memory.load(origin, bytes);
+    }
+
+    @Override
+    public void read(int byteAddress, byte[] bytes, int offset, int length) {
+        memory.read(byteAddress, bytes, offset, length);
+    }
+
+    @Override
+    public void write(int byteAddress, byte[] bytes, int offset, int length) {
+        memory.write(byteAddress, bytes, offset, length);
+    }
+
+    @Override
+    public void read(int byteAddress, ByteBuffer buffer) {
+        memory.read(byteAddress, buffer);
+    }
+
+    @Override
+    public void write(int byteAddress, ByteBuffer buffer) {
+        memory.write(byteAddress, buffer);
+    }
+
+    @Override
+    public void fill(int byteAddress, int length, byte value) {
+        memory.fill(byteAddress, length, value);
+    }
+
+    @Override
+    public void readWords(int wordAddress, int[] words, int offset, int length) {
+        memory.readWords(wordAddress, words, offset, length);
+    }
+
+    @Override
+    public void writeWords(int wordAddress, int[] words, int offset, int length) {
+        memory.writeWords(wordAddress, words, offset, length);
+    }
+
+    @Override
+    public void copyWords(int from, int to, int length) {
+        memory.copyWords(from, to, length);
+    }
+
+    /**
+     * @return a fork of the wrapped module, doing its I/O on the calling thread
+     */
+    @Override
+    public IOModule fork(InputStream inputStream, OutputStream outputStream) {
+        flush();
+        return memory.fork(inputStream, outputStream);
+    }
+
+    @Override
+    public long getFootprint() {
+        return memory.getFootprint();
+    }
+
+    @Override
+    public void setFootprintLimit(long limit) {
+        memory.setFootprintLimit(limit);
+    }
+
+    private void drain(OutputStream out){
+        while (true){
+            try {
+                if (output.drainTo(out) < 0)
+                    return;
+            } catch (IOException e){
+                e.printStackTrace();
+                out = OutputStream.nullOutputStream();
+            }
+        }
+    }
+
+    private void fill(){
+        try {
+            while (input.fill(inputStream) >= 0);
+        } catch (IOException e){
+            e.printStackTrace();
+            input.close();
+        }
+    }
+}
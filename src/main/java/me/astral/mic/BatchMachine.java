@@ -0,0 +1,338 @@
+package me.astral.mic;
+
+import java.util.Arrays;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Many machines sharing one control store, run in lockstep.
+ *
+ * Lane state is kept as a structure of arrays: {@code registers[register][lane]}, plus one
+ * MPC, pending memory operations, flags and memory module per lane. Each clock the running
+ * lanes are grouped by MPC, so every word is decoded once for all the lanes sitting on it.
+ * A lane produces the same cycles, registers and output as a {@link MIC1Machine} running
+ * alone on its memory. A {@link MemoryException} only stops the lane making the access, left
+ * in the faulting clock as the machine would be, while the others go on.
+ */
+public class BatchMachine {
+
+    private final long[] words;
+    private final IOModule[] memories;
+    private final int lanes;
+
+    private final int[][] registers;
+    private final int[] mpc;
+    private final int[] pending;
+    private final int[] busC;
+    private final long[] cycles;
+    private final long[] retired;
+    private final boolean[] halted;
+    private final MemoryException[] faults;
+
+    private final int[] zero;
+    private long clocks;
+
+    //Running lanes, and the per clock grouping by MPC: group g holds order[groupStart[g]..]
+    private final int[] running;
+    private int runningCount;
+    private final int[] order;
+    private final int[] values;
+    private final int[] count = new int[512];
+    private final int[] groups = new int[512];
+    private final int[] groupStart = new int[512];
+
+    public BatchMachine(byte[] controlStore, IOModule... memories){
+        this.words = new PackedEngine(ControlStoreRegistry.shared().get(controlStore).instructions()).words;
+        this.memories = memories.clone();
+        this.lanes = memories.length;
+
+        this.registers = new int[MAR + 1][lanes];
+        this.mpc = new int[lanes];
+        this.pending = new int[lanes];
+        this.busC = new int[lanes];
+        this.cycles = new long[lanes];
+        this.retired = new long[lanes];
+        this.halted = new boolean[lanes];
+        this.faults = new MemoryException[lanes];
+        this.zero = new int[lanes];
+        this.running = new int[lanes];
+        this.order = new int[lanes];
+        this.values = new int[lanes];
+        reset();
+    }
+
+    public void reset(){
+        for (int[] register : registers)
+            Arrays.fill(register, 0);
+        Arrays.fill(registers[SP], BASE_SP);
+        Arrays.fill(registers[CPP], BASE_CPP);
+        Arrays.fill(registers[LV], BASE_LV);
+        Arrays.fill(registers[PC], -1);
+        Arrays.fill(mpc, 0);
+        Arrays.fill(pending, 0);
+        Arrays.fill(busC, 0);
+        Arrays.fill(cycles, 0);
+        Arrays.fill(retired, 0);
+        Arrays.fill(halted, false);
+        Arrays.fill(faults, null);
+        clocks = 0;
+        for (int lane = 0; lane < lanes; lane++)
+            running[lane] = lane;
+        runningCount = lanes;
+    }
+
+    /**
+     * Clocks every lane still running until all of them halt or fault, or {@code maxCycles}
+     * clocks went by.
+     * @return the clocks executed, lanes halting or faulting early stop counting theirs
+     */
+    public long run(long maxCycles){
+        long executed = 0;
+        while (runningCount > 0 && executed < maxCycles){
+            clock();
+            executed++;
+        }
+        return executed;
+    }
+
+    private void clock(){
+        final int[] running = this.running;
+        final int[] order = this.order;
+        final int[] count = this.count;
+        final int[] groups = this.groups;
+        final int[] values = this.values;
+
+        int groupCount = 0;
+        int stillRunning = 0;
+        boolean completed = false;
+        try {
+            //Counting sort of the running lanes by MPC
+            for (int i = 0; i < runningCount; i++){
+                int address = mpc[running[i]];
+                if (count[address]++ == 0)
+                    groups[groupCount++] = address;
+            }
+            for (int g = 0, offset = 0; g < groupCount; g++){
+                int address = groups[g];
+                int size = count[address];
+                groupStart[g] = offset;
+                count[address] = offset;
+                offset += size;
+            }
+            for (int i = 0; i < runningCount; i++){
+                int lane = running[i];
+                order[count[mpc[lane]]++] = lane;
+            }
+
+            final int[] h = registers[H];
+            final int[] mar = registers[MAR];
+            final int[] mdr = registers[MDR];
+            final int[] pc = registers[PC];
+            final int[] mbr = registers[MBR];
+            final int[] mbru = registers[MBRU];
+            clocks++;
+
+            for (int g = 0; g < groupCount; g++){
+                int address = groups[g];
+                int from = groupStart[g];
+                int to = count[address];
+
+                long word = words[address];
+                int bus = (int) (word >>> BUS_SHIFT) & 0xF;
+                int[] b = bus < 9 ? registers[bus] : zero;
+                int operation = (int) (word >>> ALU_SHIFT) & 0x3F;
+                int shift = (int) (word >>> SHIFTER_SHIFT) & 0x3;
+                int mask = (int) (word >>> WRITE_SHIFT) & 0x7FF;
+                int jam = (int) (word >>> JAM_SHIFT) & 0x3;
+                int nextAddress = (int) word & NEXT_MASK;
+
+                alu(operation, h, b, order, from, to, values);
+                if (shift == SHIFT_SLL8)
+                    for (int k = from; k < to; k++)
+                        values[k] <<= 8;
+                else if (shift == SHIFT_SRA1)
+                    for (int k = from; k < to; k++)
+                        values[k] >>= 1;
+
+                boolean faulted = false;
+                for (int k = from; k < to; k++){
+                    int lane = order[k];
+                    int resolve = pending[lane];
+                    if (resolve == 0)
+                        continue;
+                    IOModule memory = memories[lane];
+                    if ((resolve & PENDING_FETCH) != 0){
+                        byte fetched = memory.get8(pc[lane]);
+                        mbr[lane] = fetched;
+                        mbru[lane] = Byte.toUnsignedInt(fetched);
+                    }
+                    try {
+                        if ((resolve & PENDING_READ) != 0){
+                            int target = mar[lane];
+                            mdr[lane] = target < 0 ? memory.input() : memory.get32(target);
+                        }else if ((resolve & PENDING_WRITE) != 0){
+                            int target = mar[lane];
+                            if (target < 0)
+                                memory.output(mdr[lane]);
+                            else
+                                memory.set32(target, mdr[lane]);
+                        }
+                    } catch (MemoryException e){
+                        //Left in this clock, before its bus C writes
+                        e.setMPC(address);
+                        faults[lane] = e;
+                        cycles[lane] = clocks - 1;
+                        pending[lane] = resolve & ~PENDING_FETCH;
+                        memory.flush();
+                        order[k] = -1;
+                        faulted = true;
+                    }
+                }
+                if (faulted)
+                    to = dropFaulted(order, values, from, to);
+
+                for (int m = mask; m != 0; m &= m - 1){
+                    int[] register = registers[Integer.numberOfTrailingZeros(m)];
+                    for (int k = from; k < to; k++)
+                        register[order[k]] = values[k];
+                }
+
+                int memoryOperations = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                for (int k = from; k < to; k++){
+                    int lane = order[k];
+                    int value = values[k];
+                    int next = nextAddress;
+                    if (jam == JAM_PC)
+                        next |= mbru[lane];
+                    else if (jam == JAM_N ? value < 0 : jam == JAM_Z && value == 0)
+                        next += 256;
+                    busC[lane] = value;
+                    pending[lane] = memoryOperations;
+                    mpc[lane] = next;
+                    if (next == address){
+                        halted[lane] = true;
+                        cycles[lane] = clocks;
+                        memories[lane].flush();
+                    }else {
+                        running[stillRunning++] = lane;
+                    }
+                }
+                if (jam == JAM_PC)
+                    for (int k = from; k < to; k++)
+                        retired[order[k]]++;
+            }
+            completed = true;
+        } finally {
+            for (int g = 0; g < groupCount; g++)
+                count[groups[g]] = 0;
+            runningCount = completed ? stillRunning : requeue();
+        }
+    }
+
+    //Lanes neither halted nor faulted, back in running after an exception left a clock half done
+    private int requeue(){
+        int count = 0;
+        for (int lane = 0; lane < lanes; lane++){
+            if (!halted[lane] && faults[lane] == null)
+                running[count++] = lane;
+        }
+        return count;
+    }
+
+    //Removes the lanes marked -1 from order[from..to), with their values
+    private static int dropFaulted(int[] order, int[] values, int from, int to){
+        int kept = from;
+        for (int k = from; k < to; k++){
+            if (order[k] >= 0){
+                order[kept] = order[k];
+                values[kept++] = values[k];
+            }
+        }
+        return kept;
+    }
+
+    //One ALU operation over a group, values[k] for lane order[k]
+    private static void alu(int operation, int[] a, int[] b, int[] order, int from, int to, int[] values){
+        switch (operation){
+            case ALU_A -> { for (int k = from; k < to; k++) values[k] = a[order[k]]; }
+            case ALU_B -> { for (int k = from; k < to; k++) values[k] = b[order[k]]; }
+            case ALU_NOT_A -> { for (int k = from; k < to; k++) values[k] = ~a[order[k]]; }
+            case ALU_NOT_B -> { for (int k = from; k < to; k++) values[k] = ~b[order[k]]; }
+            case ALU_A_PLUS_B -> { for (int k = from; k < to; k++) values[k] = a[order[k]] + b[order[k]]; }
+            case ALU_A_PLUS_B_PLUS_1 -> { for (int k = from; k < to; k++) values[k] = a[order[k]] + b[order[k]] + 1; }
+            case ALU_A_PLUS_1 -> { for (int k = from; k < to; k++) values[k] = a[order[k]] + 1; }
+            case ALU_B_PLUS_1 -> { for (int k = from; k < to; k++) values[k] = b[order[k]] + 1; }
+            case ALU_B_MINUS_A -> { for (int k = from; k < to; k++) values[k] = b[order[k]] - a[order[k]]; }
+            case ALU_B_MINUS_1 -> { for (int k = from; k < to; k++) values[k] = b[order[k]] - 1; }
+            case ALU_MINUS_A -> { for (int k = from; k < to; k++) values[k] = -a[order[k]]; }
+            case ALU_A_AND_B -> { for (int k = from; k < to; k++) values[k] = a[order[k]] & b[order[k]]; }
+            case ALU_A_OR_B -> { for (int k = from; k < to; k++) values[k] = a[order[k]] | b[order[k]]; }
+            case ALU_ONE -> Arrays.fill(values, from, to, 1);
+            case ALU_MINUS_ONE -> Arrays.fill(values, from, to, -1);
+            default -> Arrays.fill(values, from, to, 0);
+        }
+    }
+
+    public int getLanes() {
+        return lanes;
+    }
+
+    public IOModule getMemory(int lane) {
+        return memories[lane];
+    }
+
+    /**
+     * @return whether every lane halted or faulted
+     */
+    public boolean isHalted() {
+        return runningCount == 0;
+    }
+
+    public boolean isHalted(int lane) {
+        return halted[lane];
+    }
+
+    /**
+     * @return the exception that stopped the lane, null while it runs or once it halted
+     */
+    public MemoryException getFault(int lane) {
+        return faults[lane];
+    }
+
+    public long getCycles(int lane) {
+        return halted[lane] || faults[lane] != null ? cycles[lane] : clocks;
+    }
+
+    public long getInstructionsRetired(int lane) {
+        return retired[lane];
+    }
+
+    public int getRegister(int lane, int index){
+        return registers[index][lane];
+    }
+
+    public int getMPC(int lane){
+        return mpc[lane];
+    }
+
+    public boolean isN(int lane) {
+        return getCycles(lane) > 0 && busC[lane] < 0;
+    }
+
+    public boolean isZ(int lane) {
+        return getCycles(lane) > 0 && busC[lane] == 0;
+    }
+
+    public boolean isToFetch(int lane) {
+        return (pending[lane] & PENDING_FETCH) != 0;
+    }
+
+    public boolean isToRead(int lane) {
+        return (pending[lane] & PENDING_READ) != 0;
+    }
+
+    public boolean isToWrite(int lane) {
+        return (pending[lane] & PENDING_WRITE) != 0;
+    }
+}
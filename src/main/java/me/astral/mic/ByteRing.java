@@ -0,0 +1,190 @@
+package me.astral.mic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock free ring of bytes between one producer and one consumer thread. Either side only
+ * parks when the ring is full or empty, and is woken by the other one.
+ *
+ * With a linger time the producer does not wake the consumer for every byte: the consumer
+ * polls at that interval and is only woken when the ring is half full or awaited empty.
+ */
+final class ByteRing {
+
+    private final byte[] buffer;
+    private final int mask;
+    private final long lingerNanos;
+
+    //Next index to read, written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    //Next index to write, written by the producer
+    private final AtomicLong tail = new AtomicLong();
+    private volatile boolean closed = false;
+    private volatile Thread parkedProducer;
+    private volatile Thread parkedConsumer;
+
+    //Producer side
+    private long writeIndex = 0;
+    private long headCache = 0;
+
+    //Consumer side
+    private long readIndex = 0;
+    private long tailCache = 0;
+
+    ByteRing(int capacity){
+        this(capacity, -1);
+    }
+
+    /**
+     * @param lingerNanos longest time a byte may wait for the consumer, negative to wake it
+     * on every byte
+     */
+    ByteRing(int capacity, long lingerNanos){
+        if (Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two, but found " + capacity);
+        this.buffer = new byte[capacity];
+        this.mask = capacity - 1;
+        this.lingerNanos = lingerNanos;
+    }
+
+    /**
+     * Adds a byte, waiting for room when full.
+     */
+    void put(int data){
+        long index = writeIndex;
+        if (index - headCache == buffer.length)
+            awaitRoom(index);
+        buffer[(int) index & mask] = (byte) data;
+        publish(index + 1);
+    }
+
+    /**
+     * Reads what {@code in} has into the free room, waiting for room when full.
+     * @return bytes read, -1 once the stream ended, which closes the ring
+     */
+    int fill(InputStream in) throws IOException {
+        long index = writeIndex;
+        if (index - headCache == buffer.length)
+            awaitRoom(index);
+        int offset = (int) index & mask;
+        int length = (int) Math.min(buffer.length - (index - headCache), buffer.length - offset);
+        int read = in.read(buffer, offset, length);
+        if (read < 0){
+            close();
+            return -1;
+        }
+        publish(index + read);
+        return read;
+    }
+
+    /**
+     * Waits until the consumer took every byte.
+     */
+    void awaitEmpty(){
+        while (head.get() != writeIndex){
+            wakeConsumer();
+            parkedProducer = Thread.currentThread();
+            if (head.get() != writeIndex)
+                LockSupport.park(this);
+            parkedProducer = null;
+        }
+    }
+
+    /**
+     * No more bytes will be put, the consumer gets -1 once it took the rest.
+     */
+    void close(){
+        closed = true;
+        wakeConsumer();
+    }
+
+    /**
+     * Takes a byte, waiting for one when empty.
+     * @return the byte, -1 when the ring is closed and empty
+     */
+    int take(){
+        long index = readIndex;
+        if (index == tailCache && !awaitData(index))
+            return -1;
+        int data = buffer[(int) index & mask] & 0xFF;
+        release(index + 1);
+        return data;
+    }
+
+    /**
+     * Writes every byte available to {@code out} and flushes it, waiting for some when empty.
+     * @return bytes written, -1 when the ring is closed and empty
+     */
+    int drainTo(OutputStream out) throws IOException {
+        long index = readIndex;
+        if (index == tailCache && !awaitData(index))
+            return -1;
+        int count = (int) (tailCache - index);
+        int offset = (int) index & mask;
+        int first = Math.min(count, buffer.length - offset);
+        out.write(buffer, offset, first);
+        if (first < count)
+            out.write(buffer, 0, count - first);
+        out.flush();
+        release(tailCache);
+        return count;
+    }
+
+    //Without a byte in the ring the producer might not be running, so it is not worth spinning
+    private boolean awaitData(long index){
+        tailCache = tail.get();
+        while (index == tailCache){
+            if (closed){
+                tailCache = tail.get();
+                return index != tailCache;
+            }
+            parkedConsumer = Thread.currentThread();
+            if (tail.get() == index && !closed){
+                if (lingerNanos < 0)
+                    LockSupport.park(this);
+                else
+                    LockSupport.parkNanos(this, lingerNanos);
+            }
+            parkedConsumer = null;
+            tailCache = tail.get();
+        }
+        return true;
+    }
+
+    private void awaitRoom(long index){
+        headCache = head.get();
+        while (index - headCache == buffer.length){
+            parkedProducer = Thread.currentThread();
+            if (index - head.get() == buffer.length)
+                LockSupport.park(this);
+            parkedProducer = null;
+            headCache = head.get();
+        }
+    }
+
+    private void publish(long index){
+        writeIndex = index;
+        tail.set(index);
+        if (lingerNanos < 0 || index - head.get() >= buffer.length >> 1)
+            wakeConsumer();
+    }
+
+    private void wakeConsumer(){
+        Thread consumer = parkedConsumer;
+        if (consumer != null)
+            LockSupport.unpark(consumer);
+    }
+
+    //A producer waiting for room is only woken once half of the ring is free
+    private void release(long index){
+        readIndex = index;
+        head.set(index);
+        Thread producer = parkedProducer;
+        if (producer != null && tailCache - index <= buffer.length >> 1)
+            LockSupport.unpark(producer);
+    }
+}
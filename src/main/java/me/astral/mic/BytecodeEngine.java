@@ -0,0 +1,83 @@
+package me.astral.mic;
+
+import me.astral.mic.jit.CompiledBlock;
+import me.astral.mic.jit.MicrocodeCompiler;
+
+import static me.astral.mic.jit.CompiledBlock.*;
+
+/**
+ * Engine running the control store as JVM bytecode. Regions are compiled the first time
+ * the machine enters them at a given MPC and then dispatched from {@code blocks[mpc]}.
+ */
+class BytecodeEngine implements MIC1Engine {
+
+    private final MIC1Instruction[] instructions;
+    private final boolean[] dispatches;
+    private final MicrocodeCompiler compiler;
+    private final CompiledBlock[] blocks;
+    private final PackedEngine packed;
+
+    BytecodeEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.dispatches = new boolean[instructions.length];
+        for (int i = 0; i < instructions.length; i++)
+            dispatches[i] = instructions[i] != null && instructions[i].jam() == JAM.JMPC;
+        this.compiler = new MicrocodeCompiler(instructions);
+        this.blocks = new CompiledBlock[instructions.length];
+        this.packed = new PackedEngine(instructions);
+    }
+
+    private CompiledBlock block(int mpc){
+        CompiledBlock block = blocks[mpc];
+        if (block == null){
+            block = compiler.compile(mpc);
+            blocks[mpc] = block;
+        }
+        return block;
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        int[] state = new int[STATE_SIZE];
+        state[MPC] = machine.MPC;
+        state[PENDING] = PackedEngine.pendingOf(machine);
+        //Any value giving back the current N and Z flags
+        state[BUS_C] = machine.N ? -1 : (machine.Z ? 0 : 1);
+
+        long executed = 0;
+        long retired = 0;
+        try {
+            while (executed < maxCycles){
+                long clocks = block(state[MPC]).run(machine.registers, state, machine.memory, Math.min(maxCycles - executed, Integer.MAX_VALUE));
+                executed += clocks;
+                //A JMPC always leaves the block, as its last word
+                if (clocks > 0 && dispatches[state[CURRENT]])
+                    retired++;
+                if (state[HALTED] != 0)
+                    break;
+            }
+        } catch (MemoryException e){
+            e.setMPC(state[CURRENT]);
+            e.addExecuted(executed + state[EXECUTED]);
+            PackedEngine.abort(machine, instructions, state[MPC], state[PENDING], state[BUS_C], executed + state[EXECUTED], retired);
+            throw e;
+        }
+
+        if (executed > 0){
+            machine.MPC = state[MPC];
+            machine.currentInstruction = instructions[state[CURRENT]];
+            machine.N = state[BUS_C] < 0;
+            machine.Z = state[BUS_C] == 0;
+            machine.halted = state[HALTED] != 0;
+            machine.retired += retired;
+            PackedEngine.setPending(machine, state[PENDING]);
+        }
+        return executed;
+    }
+
+    //Compiled blocks keep the registers in locals until they leave
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        return stops == null ? run(machine, maxCycles) : packed.run(machine, maxCycles, stops);
+    }
+}
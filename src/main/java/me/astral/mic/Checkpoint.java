@@ -0,0 +1,196 @@
+package me.astral.mic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Checkpoint files, a {@link MachineSnapshot} on disk.
+ *
+ * A checkpoint is a header followed by the non zero memory pages, big endian words at
+ * offsets aligned to {@value PagedIOModule#PAGE_BYTES} bytes so the file can be mapped and
+ * read page by page. The header holds, in order: magic, version, flags (N, Z, pending
+ * read, write and fetch, halted, memory protection), MPC, MIR address, registers, cycles,
+ * instructions retired, input and output positions, text and constant pool lengths,
+ * engine and control store hash, then the page count and the index of every page.
+ *
+ * The control store itself is not saved, {@link #read} checks the one given against the hash.
+ */
+public final class Checkpoint {
+
+    public static final int MAGIC = 0x4D494B43; //MIKC
+    public static final int VERSION = 1;
+
+    private static final int N = 1, Z = 2, READ = 4, WRITE = 8, FETCH = 16, HALTED = 32, PROTECTED = 64;
+
+    private Checkpoint(){}
+
+    /**
+     * Writes {@code snapshot} to {@code file}, replacing it atomically.
+     * @throws UnsupportedOperationException when the memory module cannot list its pages
+     */
+    public static void write(MachineSnapshot snapshot, Path file) throws IOException {
+        if (!(snapshot.memory instanceof PagedIOModule memory))
+            throw new UnsupportedOperationException(snapshot.memory.getClass().getSimpleName() + " cannot be checkpointed");
+        if (snapshot.controlStore == null)
+            throw new IllegalStateException("No control store loaded");
+
+        TreeSet<Integer> pages = new TreeSet<>();
+        int[] words = new int[PagedIOModule.PAGE_WORDS];
+        memory.forEachPage(page -> {
+            memory.readWords(page << PagedIOModule.PAGE_BITS, words, 0, words.length);
+            for (int word : words)
+                if (word != 0){
+                    pages.add(page);
+                    return;
+                }
+        });
+
+        byte[] engine = snapshot.engineType.name().getBytes(StandardCharsets.US_ASCII);
+        byte[] hash = snapshot.controlStore.getHash().getBytes(StandardCharsets.US_ASCII);
+        int headerLength = 6 * 4 + 4 * snapshot.registers.length + 8 * 4 + 4 * 2
+                + 2 + engine.length + 2 + hash.length + 4 + 4 * pages.size();
+        ByteBuffer header = ByteBuffer.allocate(align(headerLength));
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putInt((snapshot.n ? N : 0) | (snapshot.z ? Z : 0) | (snapshot.toRead ? READ : 0)
+                | (snapshot.toWrite ? WRITE : 0) | (snapshot.toFetch ? FETCH : 0) | (snapshot.halted ? HALTED : 0)
+                | (memory instanceof RegionIOModule regions && regions.isProtected() ? PROTECTED : 0));
+        header.putInt(snapshot.mpc).putInt(address(snapshot));
+        header.putInt(snapshot.registers.length);
+        for (int register : snapshot.registers)
+            header.putInt(register);
+        header.putLong(snapshot.cycles).putLong(snapshot.retired);
+        header.putLong(snapshot.getInputPosition()).putLong(snapshot.getOutputPosition());
+        if (memory instanceof RegionIOModule regions)
+            header.putInt(regions.getTextLength()).putInt(regions.getConstantPoolLength());
+        else
+            header.putInt(0).putInt(0);
+        header.putShort((short) engine.length).put(engine);
+        header.putShort((short) hash.length).put(hash);
+        header.putInt(pages.size());
+        for (int page : pages)
+            header.putInt(page);
+        header.rewind();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            while (header.hasRemaining())
+                channel.write(header);
+            ByteBuffer data = ByteBuffer.allocate(PagedIOModule.PAGE_BYTES);
+            for (int page : pages){
+                memory.readWords(page << PagedIOModule.PAGE_BITS, words, 0, words.length);
+                data.clear();
+                data.asIntBuffer().put(words);
+                while (data.hasRemaining())
+                    channel.write(data);
+            }
+            channel.force(false);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a checkpoint written for {@code controlStore}, its memory in a {@link RegionIOModule}.
+     * @throws IllegalArgumentException when the file is not a checkpoint of this version or
+     * was taken with another control store
+     */
+    public static MachineSnapshot read(Path file, ControlStore controlStore) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC)
+                throw new IllegalArgumentException(file + " is not a checkpoint");
+            int version = buffer.getInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException(file + " is a version " + version + " checkpoint, expected " + VERSION);
+
+            int flags = buffer.getInt();
+            int mpc = buffer.getInt();
+            int mir = buffer.getInt();
+            int[] registers = new int[buffer.getInt()];
+            for (int i = 0; i < registers.length; i++)
+                registers[i] = buffer.getInt();
+            long cycles = buffer.getLong();
+            long retired = buffer.getLong();
+            long inputPosition = buffer.getLong();
+            long outputPosition = buffer.getLong();
+            int textLength = buffer.getInt();
+            int constantPoolLength = buffer.getInt();
+            EngineType engine = EngineType.valueOf(string(buffer));
+            String hash = string(buffer);
+            if (!hash.equals(controlStore.getHash()))
+                throw new IllegalArgumentException(file + " was taken with control store " + hash + ", not " + controlStore.getHash());
+
+            int[] pages = new int[buffer.getInt()];
+            for (int i = 0; i < pages.length; i++)
+                pages[i] = buffer.getInt();
+            IntBuffer data = buffer.position(align(buffer.position())).slice().asIntBuffer();
+            Map<Integer, Integer> offsets = new HashMap<>();
+            for (int i = 0; i < pages.length; i++)
+                offsets.put(pages[i], i << PagedIOModule.PAGE_BITS);
+
+            RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+            memory.load(RegionIOModule.TEXT_ORIGIN, bytes(data, offsets, 0, textLength));
+            memory.load(RegionIOModule.CONSTANT_POOL_ORIGIN, bytes(data, offsets, MIC1Machine.BASE_CPP, constantPoolLength));
+            for (int i = 0; i < pages.length; i++){
+                int base = pages[i] << PagedIOModule.PAGE_BITS;
+                for (int w = 0; w < PagedIOModule.PAGE_WORDS; w++){
+                    int word = base + w;
+                    boolean loaded = word < textLength >> 2
+                            || (word >= MIC1Machine.BASE_CPP && word - MIC1Machine.BASE_CPP < constantPoolLength >> 2);
+                    int value = data.get((i << PagedIOModule.PAGE_BITS) + w);
+                    if (value != 0 && !loaded)
+                        memory.set32(word, value);
+                }
+            }
+            memory.setProtection((flags & PROTECTED) != 0);
+            memory.bytesRead = inputPosition;
+            memory.bytesWritten = outputPosition;
+
+            MIC1Instruction[] instructions = controlStore.instructions();
+            return new MachineSnapshot(registers, mpc, mir < 0 ? null : instructions[mir],
+                    (flags & N) != 0, (flags & Z) != 0, (flags & READ) != 0, (flags & WRITE) != 0,
+                    (flags & FETCH) != 0, (flags & HALTED) != 0, cycles, retired, engine, controlStore, memory);
+        }
+    }
+
+    private static int address(MachineSnapshot snapshot){
+        for (int i = 0; i < snapshot.instructions.length; i++)
+            if (snapshot.instructions[i] == snapshot.currentInstruction)
+                return i;
+        return -1;
+    }
+
+    private static byte[] bytes(IntBuffer data, Map<Integer, Integer> offsets, int wordAddress, int length){
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i += 4){
+            int word = wordAddress + (i >> 2);
+            Integer offset = offsets.get(word >>> PagedIOModule.PAGE_BITS);
+            int value = offset == null ? 0 : data.get(offset + (word & (PagedIOModule.PAGE_WORDS - 1)));
+            for (int b = 0; b < 4 && i + b < length; b++)
+                bytes[i + b] = (byte) (value >>> ((3 - b) << 3));
+        }
+        return bytes;
+    }
+
+    private static String string(ByteBuffer buffer){
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int align(int offset){
+        return (offset + PagedIOModule.PAGE_BYTES - 1) & -PagedIOModule.PAGE_BYTES;
+    }
+}
@@ -0,0 +1,245 @@
+package me.astral.mic;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Engine compiling every control store word into a closure when the microcode is loaded.
+ * Each closure only contains the work its word really does: an unused shifter, an empty
+ * bus C or a plain {@code goto} leave no test behind, so a clock is {@code ops[mpc].run(state)}.
+ */
+class ClosureEngine implements MIC1Engine {
+
+    interface MicroOp {
+        //Executes one clock and returns the next MPC
+        int run(State state);
+    }
+
+    interface BusC {
+        int compute(int[] registers);
+    }
+
+    interface Writeback {
+        void write(int[] registers, int value);
+    }
+
+    interface Successor {
+        int next(int[] registers, int busC);
+    }
+
+    static final class State {
+        final int[] registers;
+        final IOModule memory;
+        int pending;
+        int busC;
+
+        State(int[] registers, IOModule memory){
+            this.registers = registers;
+            this.memory = memory;
+        }
+
+        void resolvePending(){
+            if ((pending & PENDING_FETCH) != 0){
+                byte value = memory.get8(registers[PC]);
+                registers[MBR] = value;
+                registers[MBRU] = Byte.toUnsignedInt(value);
+            }
+            if ((pending & PENDING_READ) != 0){
+                int address = registers[MAR];
+                registers[MDR] = address < 0 ? memory.input() : memory.get32(address);
+            }else if ((pending & PENDING_WRITE) != 0){
+                int address = registers[MAR];
+                if (address < 0)
+                    memory.output(registers[MDR]);
+                else
+                    memory.set32(address, registers[MDR]);
+            }
+        }
+    }
+
+    private final MIC1Instruction[] instructions;
+    //1 for the JMPC words
+    private final int[] dispatches;
+    //Packed words, for the stop conditions
+    private final long[] words;
+    private final MicroOp[] ops;
+
+    ClosureEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.dispatches = new int[instructions.length];
+        for (int i = 0; i < instructions.length; i++)
+            dispatches[i] = instructions[i] != null && instructions[i].jam() == JAM.JMPC ? 1 : 0;
+        this.words = new long[instructions.length];
+        this.ops = new MicroOp[instructions.length];
+        for (int i = 0; i < instructions.length; i++){
+            words[i] = instructions[i] == null ? 0 : pack(instructions[i]);
+            ops[i] = compile(words[i]);
+        }
+    }
+
+    static MicroOp compile(long word){
+        BusC busC = compileBusC(word);
+        Writeback writeback = compileWriteback((int) (word >>> WRITE_SHIFT) & 0x7FF);
+        int pendingOut = (int) (word >>> MEMORY_SHIFT) & 0x7;
+        int nextAddress = (int) word & NEXT_MASK;
+        int jam = (int) (word >>> JAM_SHIFT) & 0x3;
+
+        if (jam == JAM_NONE){
+            if (writeback == null){
+                return state -> {
+                    int c = busC.compute(state.registers);
+                    if (state.pending != 0)
+                        state.resolvePending();
+                    state.busC = c;
+                    state.pending = pendingOut;
+                    return nextAddress;
+                };
+            }
+            return state -> {
+                int[] registers = state.registers;
+                int c = busC.compute(registers);
+                if (state.pending != 0)
+                    state.resolvePending();
+                writeback.write(registers, c);
+                state.busC = c;
+                state.pending = pendingOut;
+                return nextAddress;
+            };
+        }
+
+        Successor successor = switch (jam){
+            case JAM_PC -> (registers, c) -> nextAddress | registers[MBRU];
+            case JAM_N -> (registers, c) -> c < 0 ? nextAddress + 256 : nextAddress;
+            default -> (registers, c) -> c == 0 ? nextAddress + 256 : nextAddress;
+        };
+        Writeback write = writeback == null ? (registers, c) -> {} : writeback;
+        return state -> {
+            int[] registers = state.registers;
+            int c = busC.compute(registers);
+            if (state.pending != 0)
+                state.resolvePending();
+            write.write(registers, c);
+            state.busC = c;
+            state.pending = pendingOut;
+            return successor.next(registers, c);
+        };
+    }
+
+    private static BusC compileBusC(long word){
+        int operation = (int) (word >>> ALU_SHIFT) & 0x3F;
+        int bus = (int) (word >>> BUS_SHIFT) & 0xF;
+        int shifter = (int) (word >>> SHIFTER_SHIFT) & 0x3;
+
+        BusC alu = bus < 9 ? compileALU(operation, bus) : compileALU(withZeroB(operation), H);
+        return switch (shifter){
+            case SHIFT_SLL8 -> registers -> alu.compute(registers) << 8;
+            case SHIFT_SRA1 -> registers -> alu.compute(registers) >> 1;
+            default -> alu;
+        };
+    }
+
+    private static BusC compileALU(int operation, int b){
+        return switch (operation){
+            case ALU_A -> registers -> registers[H];
+            case ALU_B -> registers -> registers[b];
+            case ALU_NOT_A -> registers -> ~registers[H];
+            case ALU_NOT_B -> registers -> ~registers[b];
+            case ALU_A_PLUS_B -> registers -> registers[H] + registers[b];
+            case ALU_A_PLUS_B_PLUS_1 -> registers -> registers[H] + registers[b] + 1;
+            case ALU_A_PLUS_1 -> registers -> registers[H] + 1;
+            case ALU_B_PLUS_1 -> registers -> registers[b] + 1;
+            case ALU_B_MINUS_A -> registers -> registers[b] - registers[H];
+            case ALU_B_MINUS_1 -> registers -> registers[b] - 1;
+            case ALU_MINUS_A -> registers -> -registers[H];
+            case ALU_A_AND_B -> registers -> registers[H] & registers[b];
+            case ALU_A_OR_B -> registers -> registers[H] | registers[b];
+            case ALU_ONE -> registers -> 1;
+            case ALU_MINUS_ONE -> registers -> -1;
+            default -> registers -> 0;
+        };
+    }
+
+    //Bus B driven by no register reads as zero, fold it into an equivalent operation
+    private static int withZeroB(int operation){
+        return switch (operation){
+            case ALU_B, ALU_A_AND_B -> ALU_ZERO;
+            case ALU_NOT_B, ALU_B_MINUS_1 -> ALU_MINUS_ONE;
+            case ALU_A_PLUS_B, ALU_A_OR_B -> ALU_A;
+            case ALU_A_PLUS_B_PLUS_1 -> ALU_A_PLUS_1;
+            case ALU_B_PLUS_1 -> ALU_ONE;
+            case ALU_B_MINUS_A -> ALU_MINUS_A;
+            default -> operation;
+        };
+    }
+
+    private static Writeback compileWriteback(int mask){
+        if (mask == 0)
+            return null;
+        int first = Integer.numberOfTrailingZeros(mask);
+        int rest = mask & (mask - 1);
+        if (rest == 0)
+            return (registers, c) -> registers[first] = c;
+        int second = Integer.numberOfTrailingZeros(rest);
+        if ((rest & (rest - 1)) == 0)
+            return (registers, c) -> {
+                registers[first] = c;
+                registers[second] = c;
+            };
+        int[] targets = new int[Integer.bitCount(mask)];
+        for (int i = 0, m = mask; m != 0; i++, m &= m - 1){
+            targets[i] = Integer.numberOfTrailingZeros(m);
+        }
+        return (registers, c) -> {
+            for (int target : targets)
+                registers[target] = c;
+        };
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        return run(machine, maxCycles, null);
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        final MicroOp[] ops = this.ops;
+        State state = new State(machine.registers, machine.memory);
+        state.pending = pendingOf(machine);
+
+        int mpc = machine.MPC;
+        int current = mpc;
+        boolean halted = false;
+        long executed = 0;
+        long retired = 0;
+
+        try {
+            while (executed < maxCycles){
+                int resolved = state.pending;
+                int next = ops[mpc].run(state);
+                current = mpc;
+                halted = next == mpc;
+                retired += dispatches[mpc];
+                mpc = next;
+                executed++;
+                if (halted || (stops != null && stops.stopAfter(words[current], resolved, next, state.registers, state.memory)))
+                    break;
+            }
+        } catch (MemoryException e){
+            e.setMPC(mpc);
+            e.addExecuted(executed);
+            abort(machine, instructions, mpc, state.pending, state.busC, executed, retired);
+            throw e;
+        }
+
+        if (executed > 0){
+            machine.MPC = mpc;
+            machine.currentInstruction = instructions[current];
+            machine.N = state.busC < 0;
+            machine.Z = state.busC == 0;
+            machine.halted = halted;
+            machine.retired += retired;
+            setPending(machine, state.pending);
+        }
+        return executed;
+    }
+}
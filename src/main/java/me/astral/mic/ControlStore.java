@@ -0,0 +1,36 @@
+package me.astral.mic;
+
+/**
+ * A decoded control store, immutable and shared by every machine loading the same bytes
+ * through the {@link ControlStoreRegistry}.
+ */
+public final class ControlStore {
+
+    private final String hash;
+    private final MIC1Instruction[] instructions;
+
+    ControlStore(String hash, MIC1Instruction[] instructions){
+        this.hash = hash;
+        this.instructions = instructions;
+    }
+
+    //Shared table, engines only read it
+    MIC1Instruction[] instructions(){
+        return instructions;
+    }
+
+    public MIC1Instruction get(int address){
+        return instructions[address];
+    }
+
+    public int size(){
+        return instructions.length;
+    }
+
+    /**
+     * @return the SHA-256 of the encoded control store, in hex
+     */
+    public String getHash() {
+        return hash;
+    }
+}
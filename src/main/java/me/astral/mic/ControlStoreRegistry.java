@@ -0,0 +1,92 @@
+package me.astral.mic;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe cache of decoded control stores keyed by the SHA-256 of their bytes, so
+ * each distinct control store is decoded once however many machines load it.
+ *
+ * Control stores are held through soft references: one stays cached as long as a machine
+ * uses it, and unused ones are dropped when the JVM runs short of memory, then decoded
+ * again if they come back. A process loading a new control store with every program does
+ * not keep them all for its lifetime.
+ */
+public final class ControlStoreRegistry {
+
+    private static final ControlStoreRegistry SHARED = new ControlStoreRegistry();
+
+    private final Map<String, Entry> stores = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ControlStore> cleared = new ReferenceQueue<>();
+
+    private static final class Entry extends SoftReference<ControlStore> {
+        final String hash;
+
+        Entry(ControlStore store, ReferenceQueue<ControlStore> queue){
+            super(store, queue);
+            this.hash = store.getHash();
+        }
+    }
+
+    public static ControlStoreRegistry shared(){
+        return SHARED;
+    }
+
+    public ControlStore get(byte[] microcode){
+        return get(hash(microcode), microcode);
+    }
+
+    /**
+     * Looks a control store up by a hash computed beforehand, decoding {@code microcode}
+     * only when it is not cached yet.
+     */
+    ControlStore get(String hash, byte[] microcode){
+        Entry entry = stores.get(hash);
+        ControlStore store = entry == null ? null : entry.get();
+        if (store != null)
+            return store;
+
+        expunge();
+        ControlStore[] found = new ControlStore[1];
+        stores.compute(hash, (h, current) -> {
+            ControlStore cached = current == null ? null : current.get();
+            if (cached == null){
+                cached = new ControlStore(h, MIC1Machine.decode(microcode));
+                current = new Entry(cached, cleared);
+            }
+            found[0] = cached;
+            return current;
+        });
+        return found[0];
+    }
+
+    public int size(){
+        expunge();
+        return stores.size();
+    }
+
+    public void clear(){
+        stores.clear();
+    }
+
+    //Removes the entries whose control store was collected
+    private void expunge(){
+        for (Object reference; (reference = cleared.poll()) != null;){
+            Entry entry = (Entry) reference;
+            stores.remove(entry.hash, entry);
+        }
+    }
+
+    static String hash(byte[] microcode){
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(microcode));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,20 +1,18 @@
 package me.astral.mic;
 
-import lombok.RequiredArgsConstructor;
-
-import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
-@RequiredArgsConstructor
-public class DefaultIOModule implements IOModule {
+public class DefaultIOModule extends StreamIOModule {
 
     private Map<Integer, Byte> memory = new HashMap<>();
+    private long footprintLimit = -1;
 
-    private final InputStream inputStream;
-    private final OutputStream outputStream;
+    public DefaultIOModule(InputStream inputStream, OutputStream outputStream){
+        super(inputStream, outputStream);
+    }
 
     @Override
     public byte get8(int address) {
@@ -23,6 +21,8 @@ public class DefaultIOModule implements IOModule {
 
     @Override
     public void set8(int address, byte value) {
+        if (footprintLimit >= 0 && memory.size() >= footprintLimit && !memory.containsKey(address))
+            throw new MemoryQuotaExceededException(memory.size() + 1, footprintLimit);
         memory.put(address, value);
     }
 
@@ -32,22 +32,12 @@ public class DefaultIOModule implements IOModule {
     }
 
     @Override
-    public void output(int data) {
-        try{
-            this.outputStream.write(data & 0xFF);
-            this.outputStream.flush();
-        }catch (IOException e){
-            e.printStackTrace();
-        }
+    public long getFootprint() {
+        return memory.size();
     }
 
     @Override
-    public int input() {
-        try {
-            return this.inputStream.read();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return -1;
-        }
+    public void setFootprintLimit(long limit) {
+        this.footprintLimit = limit;
     }
 }
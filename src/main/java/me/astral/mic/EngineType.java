@@ -0,0 +1,98 @@
+package me.astral.mic;
+
+public enum EngineType {
+    INTERPRETER {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new InterpreterEngine();
+        }
+    },
+    PACKED {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new PackedEngine(controlStore);
+        }
+    },
+    CLOSURE {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new ClosureEngine(controlStore);
+        }
+    },
+    SUPERBLOCK {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new SuperblockEngine(controlStore);
+        }
+
+        @Override
+        public boolean packedWithStops() {
+            return true;
+        }
+    },
+    BYTECODE {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new BytecodeEngine(controlStore);
+        }
+
+        @Override
+        public boolean packedWithStops() {
+            return true;
+        }
+    },
+    /**
+     * Native IJVM execution, only when the reference microcode is loaded
+     * and the packed engine for any other control store
+     */
+    IJVM {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return ReferenceMicrocode.matches(controlStore) ? new IJVMEngine(controlStore) : new PackedEngine(controlStore);
+        }
+
+        @Override
+        public boolean packedWithStops() {
+            return true;
+        }
+    },
+    /**
+     * Opcode summaries derived from the loaded control store by symbolic execution
+     */
+    SYMBOLIC {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return new SymbolicEngine(controlStore);
+        }
+
+        @Override
+        public boolean packedWithStops() {
+            return true;
+        }
+    },
+    /**
+     * Microcode with hot IJVM loops compiled to JVM bytecode, only when the reference
+     * microcode is loaded and the packed engine for any other control store
+     */
+    TIERED {
+        @Override
+        public MIC1Engine create(MIC1Instruction[] controlStore) {
+            return ReferenceMicrocode.matches(controlStore) ? new TieredEngine(controlStore) : new PackedEngine(controlStore);
+        }
+
+        @Override
+        public boolean packedWithStops() {
+            return true;
+        }
+    };
+
+    public abstract MIC1Engine create(MIC1Instruction[] controlStore);
+
+    /**
+     * @return whether runs with stop conditions, a journal included, go through the packed
+     * engine, as this one could only check them between its blocks or instructions
+     */
+    public boolean packedWithStops() {
+        return false;
+    }
+}
@@ -0,0 +1,72 @@
+package me.astral.mic;
+
+import static me.astral.mic.IJVMOpcodes.*;
+
+/**
+ * Cycles each IJVM opcode takes in the reference microcode, from {@code Main1} to the next
+ * {@code Main1}, together with the last microinstruction of its routine. Branches have a
+ * taken and a not taken entry. The table is walked once from the control store.
+ */
+public final class IJVMCostTable {
+
+    static final int[] NATIVE = {NOP, BIPUSH, LDC_W, ILOAD, ISTORE, POP, DUP, SWAP, IADD, ISUB, IAND,
+            IINC, IFEQ, IFLT, IF_ICMPEQ, GOTO, IRETURN, IOR, INVOKEVIRTUAL, IN, OUT, WIDE_ILOAD, WIDE_ISTORE};
+
+    //Indexed by dispatch address, plus 512 for the taken side of a branch
+    private final int[] cost = new int[1024];
+    private final int[] lastWord = new int[1024];
+    private final int[] maxCost = new int[512];
+
+    private final MIC1Instruction[] instructions;
+    private final int main;
+
+    IJVMCostTable(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.main = instructions[NOP].nextAddress();
+
+        for (int entry : NATIVE){
+            //WIDE routines are entered after Main1 and wide1
+            int start = entry > 0xFF ? 1 : 0;
+            walk(entry, false, start);
+            walk(entry, true, start);
+            maxCost[entry] = Math.max(cost[entry], cost[entry | 512]);
+        }
+    }
+
+    private void walk(int entry, boolean taken, int extra){
+        int address = entry;
+        int cycles = 2 + extra; //Main1 and the first word
+        while (true){
+            MIC1Instruction instruction = instructions[address];
+            int next = switch (instruction.jam()){
+                case NONE -> instruction.nextAddress();
+                case JAMN, JAMZ -> instruction.nextAddress() + (taken ? 256 : 0);
+                case JMPC -> throw new IllegalStateException("Unexpected dispatch at " + address);
+            };
+            if (next == main)
+                break;
+            address = next;
+            cycles++;
+        }
+        int index = taken ? entry | 512 : entry;
+        cost[index] = cycles;
+        lastWord[index] = address;
+    }
+
+    public int main(){
+        return main;
+    }
+
+    public int cost(int entry, boolean taken){
+        return cost[taken ? entry | 512 : entry];
+    }
+
+    public int lastWord(int entry, boolean taken){
+        return lastWord[taken ? entry | 512 : entry];
+    }
+
+    //Worst case cost, zero when the opcode has no native implementation
+    public int maxCost(int entry){
+        return maxCost[entry];
+    }
+}
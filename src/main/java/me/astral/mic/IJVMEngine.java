@@ -0,0 +1,323 @@
+package me.astral.mic;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Engine executing IJVM opcodes directly when the reference control store is loaded.
+ *
+ * Whenever the machine sits at {@code Main1} the next opcode is run natively, leaving
+ * every register exactly as its microroutine would. The simulated cycle counter is kept
+ * with a per-opcode cost table, walked once from the reference microcode and split in
+ * taken and not taken for branches. Opcodes without a native version (HALT, ERR, unknown
+ * opcodes, WIDE with another opcode) and anything that does not fit in the remaining
+ * cycle budget go through the packed microcode engine until {@code Main1} is back.
+ * Memory operations left pending by a microroutine are retired before the next opcode,
+ * so at the end of a native run {@code toRead}, {@code toWrite} and {@code toFetch} are clear.
+ * A {@link MemoryException} in a native opcode takes the machine back to the start of the
+ * opcode, which then runs again through the microcode and faults on the same clock as the
+ * interpreter.
+ */
+class IJVMEngine implements MIC1Engine {
+
+    private final IJVMCostTable costs;
+    private final MIC1Instruction[] instructions;
+    private final MIC1Engine microcode;
+    private final int main;
+
+    IJVMEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.microcode = new PackedEngine(instructions);
+        this.costs = new IJVMCostTable(instructions);
+        this.main = costs.main();
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        long executed = 0;
+        try {
+            while (executed < maxCycles){
+                long cycles = machine.MPC == main ? runNative(machine, maxCycles - executed) : 0;
+                if (cycles == 0)
+                    cycles = microcode.run(machine, 1);
+                executed += cycles;
+                if (machine.halted)
+                    break;
+            }
+        } catch (MemoryException e){
+            e.addExecuted(executed);
+            throw e;
+        }
+        return executed;
+    }
+
+    //Native opcodes keep the registers in locals until the next Main1
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        return stops == null ? run(machine, maxCycles) : microcode.run(machine, maxCycles, stops);
+    }
+
+    private long runNative(MIC1Machine machine, long budget){
+        final IOModule memory = machine.memory;
+        final int[] registers = machine.registers;
+
+        int pending = pendingOf(machine);
+        int pc = registers[PC];
+        int sp = registers[SP];
+        int lv = registers[LV];
+        int cpp = registers[CPP];
+        int tos = registers[TOS];
+        int opc = registers[OPC];
+        int h = registers[H];
+        int mdr = registers[MDR];
+        int mar = registers[MAR];
+
+        int opcode = (pending & PENDING_FETCH) != 0 ? Byte.toUnsignedInt(memory.get8(pc)) : registers[MBRU];
+        long executed = 0;
+        long retired = 0;
+        int busC = 0;
+        int current = 0;
+
+        while (true){
+            int entry = opcode == WIDE ? 0x100 | Byte.toUnsignedInt(memory.get8(pc + 1)) : opcode;
+            int max = costs.maxCost(entry);
+            if (max == 0 || max > budget - executed)
+                break;
+
+            int pc0 = pc;
+            int sp0 = sp;
+            int lv0 = lv;
+            int tos0 = tos;
+            int opc0 = opc;
+            int h0 = h;
+            int mdr0 = mdr;
+            int mar0 = mar;
+            int busC0 = busC;
+            boolean taken = false;
+            try {
+                //What Main1 does with the memory operations of the previous routine
+                if ((pending & PENDING_READ) != 0)
+                    mdr = mar < 0 ? memory.input() : memory.get32(mar);
+                else if ((pending & PENDING_WRITE) != 0){
+                    if (mar < 0)
+                        memory.output(mdr);
+                    else
+                        memory.set32(mar, mdr);
+                }
+                pending = 0;
+
+                switch (entry){
+                    case NOP -> {
+                        pc = pc0 + 1;
+                        busC = 0;
+                    }
+                    case BIPUSH -> {
+                        sp = mar = sp + 1;
+                        mdr = tos = memory.get8(pc0 + 1);
+                        memory.set32(sp, mdr);
+                        pc = pc0 + 2;
+                        busC = tos;
+                    }
+                    case DUP -> {
+                        sp = mar = sp + 1;
+                        mdr = tos;
+                        memory.set32(sp, mdr);
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                    case POP -> {
+                        sp = mar = sp - 1;
+                        mdr = tos = memory.get32(sp);
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                    case SWAP -> {
+                        int second = memory.get32(sp - 1);
+                        memory.set32(sp, second);
+                        memory.set32(sp - 1, tos);
+                        mdr = tos;
+                        mar = sp - 1;
+                        h = tos = second;
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                    case IADD, ISUB, IAND, IOR -> {
+                        sp = mar = sp - 1;
+                        h = tos;
+                        int second = memory.get32(sp);
+                        mdr = tos = switch (entry){
+                            case IADD -> second + h;
+                            case ISUB -> second - h;
+                            case IAND -> second & h;
+                            default -> second | h;
+                        };
+                        memory.set32(sp, mdr);
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                    case ILOAD, WIDE_ILOAD, LDC_W -> {
+                        int index;
+                        if (entry == ILOAD){
+                            index = Byte.toUnsignedInt(memory.get8(pc0 + 1));
+                            h = lv;
+                            pc = pc0 + 2;
+                        }else {
+                            int offset = entry == WIDE_ILOAD ? 2 : 1;
+                            index = (Byte.toUnsignedInt(memory.get8(pc0 + offset)) << 8) | Byte.toUnsignedInt(memory.get8(pc0 + offset + 1));
+                            h = index;
+                            pc = pc0 + offset + 2;
+                        }
+                        mdr = tos = memory.get32((entry == LDC_W ? cpp : lv) + index);
+                        sp = mar = sp + 1;
+                        memory.set32(sp, mdr);
+                        busC = tos;
+                    }
+                    case ISTORE, WIDE_ISTORE -> {
+                        int index;
+                        if (entry == ISTORE){
+                            index = Byte.toUnsignedInt(memory.get8(pc0 + 1));
+                            h = lv;
+                            pc = pc0 + 2;
+                        }else {
+                            index = (Byte.toUnsignedInt(memory.get8(pc0 + 2)) << 8) | Byte.toUnsignedInt(memory.get8(pc0 + 3));
+                            h = index;
+                            pc = pc0 + 4;
+                        }
+                        memory.set32(lv + index, tos);
+                        sp = mar = sp - 1;
+                        mdr = tos = memory.get32(sp);
+                        busC = tos;
+                    }
+                    case IINC -> {
+                        mar = lv + Byte.toUnsignedInt(memory.get8(pc0 + 1));
+                        h = memory.get32(mar);
+                        mdr = h + memory.get8(pc0 + 2);
+                        memory.set32(mar, mdr);
+                        pc = pc0 + 3;
+                        busC = mdr;
+                    }
+                    case GOTO -> {
+                        opc = pc0;
+                        h = branchOffset(memory, pc0);
+                        pc = pc0 + h;
+                        busC = 0;
+                    }
+                    case IFEQ, IFLT, IF_ICMPEQ -> {
+                        int value = tos;
+                        if (entry == IF_ICMPEQ){
+                            h = memory.get32(sp - 1);
+                            sp = mar = sp - 2;
+                            taken = value == h;
+                        }else {
+                            sp = mar = sp - 1;
+                            taken = entry == IFEQ ? value == 0 : value < 0;
+                        }
+                        mdr = tos = memory.get32(sp);
+                        opc = value;
+                        if (taken){
+                            opc = pc0;
+                            h = branchOffset(memory, pc0);
+                            pc = pc0 + h;
+                        }else {
+                            pc = pc0 + 3;
+                        }
+                        busC = 0;
+                    }
+                    case INVOKEVIRTUAL -> {
+                        int index = (Byte.toUnsignedInt(memory.get8(pc0 + 1)) << 8) | Byte.toUnsignedInt(memory.get8(pc0 + 2));
+                        int method = memory.get32(cpp + index);
+                        int parameters = (Byte.toUnsignedInt(memory.get8(method)) << 8) | Byte.toUnsignedInt(memory.get8(method + 1));
+                        int locals = (Byte.toUnsignedInt(memory.get8(method + 2)) << 8) | Byte.toUnsignedInt(memory.get8(method + 3));
+                        int frame = sp - parameters + 1;
+                        int link = sp + locals + 1;
+                        memory.set32(frame, link);
+                        memory.set32(link, pc0 + 3);
+                        memory.set32(link + 1, lv);
+                        mdr = lv;
+                        sp = mar = link + 1;
+                        opc = pc0 + 3;
+                        h = locals;
+                        tos = lv = frame;
+                        pc = method + 4;
+                        busC = lv;
+                    }
+                    case IRETURN -> {
+                        int link = memory.get32(lv);
+                        sp = lv;
+                        mar = sp;
+                        pc = memory.get32(link);
+                        lv = memory.get32(link + 1);
+                        mdr = tos;
+                        memory.set32(sp, tos);
+                        busC = mdr;
+                    }
+                    case OUT -> {
+                        h = -1;
+                        opc = -2;
+                        memory.output(tos);
+                        sp = mar = sp - 1;
+                        mdr = tos = memory.get32(sp);
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                    case IN -> {
+                        //Faults on the push before the input is read, the microcode reads it
+                        memory.set32(sp + 1, tos);
+                        h = -1;
+                        opc = -2;
+                        mdr = tos = memory.input();
+                        sp = mar = sp + 1;
+                        memory.set32(sp, mdr);
+                        pc = pc0 + 1;
+                        busC = tos;
+                    }
+                }
+            } catch (MemoryException e){
+                //Back to the start of the opcode, the microcode runs it again and faults on the same clock
+                pc = pc0;
+                sp = sp0;
+                lv = lv0;
+                tos = tos0;
+                opc = opc0;
+                h = h0;
+                mdr = mdr0;
+                mar = mar0;
+                busC = busC0;
+                break;
+            }
+
+            executed += costs.cost(entry, taken);
+            retired += entry > 0xFF ? 2 : 1;
+            current = costs.lastWord(entry, taken);
+            opcode = Byte.toUnsignedInt(memory.get8(pc));
+        }
+
+        if (executed > 0){
+            registers[PC] = pc;
+            registers[SP] = sp;
+            registers[LV] = lv;
+            registers[CPP] = cpp;
+            registers[TOS] = tos;
+            registers[OPC] = opc;
+            registers[H] = h;
+            registers[MDR] = mdr;
+            registers[MAR] = mar;
+            registers[MBR] = (byte) opcode;
+            registers[MBRU] = opcode;
+            machine.MPC = main;
+            machine.currentInstruction = instructions[current];
+            machine.N = busC < 0;
+            machine.Z = busC == 0;
+            machine.halted = false;
+            machine.retired += retired;
+            setPending(machine, 0);
+        }
+        return executed;
+    }
+
+    //16 bit signed offset following the opcode at pc
+    private static int branchOffset(IOModule memory, int pc){
+        return (memory.get8(pc + 1) << 8) | Byte.toUnsignedInt(memory.get8(pc + 2));
+    }
+}
@@ -0,0 +1,83 @@
+package me.astral.mic;
+
+/**
+ * Opcodes of the reference IJVM instruction set. WIDE variants are given by the
+ * control store address they dispatch to.
+ */
+public final class IJVMOpcodes {
+
+    public static final int NOP = 0x00;
+    public static final int BIPUSH = 0x10;
+    public static final int LDC_W = 0x13;
+    public static final int ILOAD = 0x15;
+    public static final int ISTORE = 0x36;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int SWAP = 0x5F;
+    public static final int IADD = 0x60;
+    public static final int ISUB = 0x64;
+    public static final int IAND = 0x7E;
+    public static final int IINC = 0x84;
+    public static final int IFEQ = 0x99;
+    public static final int IFLT = 0x9B;
+    public static final int IF_ICMPEQ = 0x9F;
+    public static final int GOTO = 0xA7;
+    public static final int IRETURN = 0xAC;
+    public static final int IOR = 0xB0;
+    public static final int INVOKEVIRTUAL = 0xB6;
+    public static final int WIDE = 0xC4;
+    public static final int IN = 0xFC;
+    public static final int OUT = 0xFD;
+    public static final int ERR = 0xFE;
+    public static final int HALT = 0xFF;
+    public static final int WIDE_ILOAD = 0x100 | ILOAD;
+    public static final int WIDE_ISTORE = 0x100 | ISTORE;
+
+    private IJVMOpcodes(){}
+
+    //Size in bytes of the instruction, opcode and operands, -1 when unknown
+    public static int length(int opcode){
+        return switch (opcode){
+            case NOP, POP, DUP, SWAP, IADD, ISUB, IAND, IOR, IRETURN, IN, OUT, ERR, HALT -> 1;
+            case BIPUSH, ILOAD, ISTORE -> 2;
+            case LDC_W, IINC, IFEQ, IFLT, IF_ICMPEQ, GOTO, INVOKEVIRTUAL -> 3;
+            case WIDE_ILOAD, WIDE_ISTORE -> 4;
+            default -> -1;
+        };
+    }
+
+    //Mnemonic of the instruction dispatched to, null when not in the reference set
+    public static String name(int opcode){
+        if (opcode >= 0x100){
+            String name = name(opcode & 0xFF);
+            return name == null ? null : "WIDE " + name;
+        }
+        return switch (opcode){
+            case NOP -> "NOP";
+            case BIPUSH -> "BIPUSH";
+            case LDC_W -> "LDC_W";
+            case ILOAD -> "ILOAD";
+            case ISTORE -> "ISTORE";
+            case POP -> "POP";
+            case DUP -> "DUP";
+            case SWAP -> "SWAP";
+            case IADD -> "IADD";
+            case ISUB -> "ISUB";
+            case IAND -> "IAND";
+            case IINC -> "IINC";
+            case IFEQ -> "IFEQ";
+            case IFLT -> "IFLT";
+            case IF_ICMPEQ -> "IF_ICMPEQ";
+            case GOTO -> "GOTO";
+            case IRETURN -> "IRETURN";
+            case IOR -> "IOR";
+            case INVOKEVIRTUAL -> "INVOKEVIRTUAL";
+            case WIDE -> "WIDE";
+            case IN -> "IN";
+            case OUT -> "OUT";
+            case ERR -> "ERR";
+            case HALT -> "HALT";
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,154 @@
+package me.astral.mic;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Clocks spent in every IJVM instruction, filled by a machine {@link MIC1Machine#setProfile(IJVMProfile)
+ * profiling} its runs. Each JMPC dispatch starts an instruction, which runs until the next
+ * one: its dispatch clock included, the clocks of the dispatch ending it excluded.
+ *
+ * Instructions are keyed by the control store address they dispatch to, the opcode with
+ * the reference microcode, WIDE variants at 0x100 | opcode, and by the text offset PC held
+ * when they were dispatched, the offset of the opcode with the reference microcode.
+ * Clocks before the first dispatch are not attributed.
+ */
+public final class IJVMProfile {
+
+    public static final int OPCODES = 512;
+
+    //Text offsets above are not counted
+    private static final int MAX_OFFSET = 1 << 24;
+
+    private final long[] counts = new long[OPCODES];
+    private final long[] cycles = new long[OPCODES];
+    private long[] offsetCounts = new long[0];
+    private long[] offsetCycles = new long[0];
+    private int[] offsetOpcodes = new int[0];
+
+    //Instruction running, -1 before the first dispatch
+    private int opcode = -1;
+    private int offset = -1;
+    private long start;
+
+    /**
+     * Ends the instruction running and starts {@code target} at text {@code offset}, on clock {@code cycle}.
+     */
+    void dispatch(int target, int offset, long cycle){
+        close(cycle);
+        opcode = target;
+        this.offset = offset >= 0 && offset < MAX_OFFSET ? offset : -1;
+        start = cycle;
+        counts[target]++;
+        if (this.offset >= 0){
+            grow(this.offset);
+            offsetCounts[this.offset]++;
+            offsetOpcodes[this.offset] = target;
+        }
+    }
+
+    /**
+     * Attributes the clocks run up to {@code cycle} to the instruction running.
+     */
+    void end(long cycle){
+        close(cycle);
+        start = cycle;
+    }
+
+    private void close(long cycle){
+        if (opcode < 0)
+            return;
+        long spent = cycle - start;
+        cycles[opcode] += spent;
+        if (offset >= 0)
+            offsetCycles[offset] += spent;
+    }
+
+    private void grow(int offset){
+        if (offset < offsetCounts.length)
+            return;
+        int length = Math.max(offset + 1, offsetCounts.length * 2);
+        offsetCounts = Arrays.copyOf(offsetCounts, length);
+        offsetCycles = Arrays.copyOf(offsetCycles, length);
+        offsetOpcodes = Arrays.copyOf(offsetOpcodes, length);
+    }
+
+    /**
+     * @return how many times the instruction dispatched to {@code opcode} ran
+     */
+    public long getCount(int opcode){
+        return counts[opcode];
+    }
+
+    public long getCycles(int opcode){
+        return cycles[opcode];
+    }
+
+    /**
+     * @return the mean clocks per run of {@code opcode}, zero when it never ran
+     */
+    public double getCPI(int opcode){
+        return counts[opcode] == 0 ? 0 : (double) cycles[opcode] / counts[opcode];
+    }
+
+    /**
+     * @return the clocks attributed to all instructions
+     */
+    public long getCycles(){
+        return Arrays.stream(cycles).sum();
+    }
+
+    public long getInstructions(){
+        return Arrays.stream(counts).sum();
+    }
+
+    /**
+     * @return the opcodes that ran, most clocks first
+     */
+    public int[] getOpcodes(){
+        return IntStream.range(0, OPCODES)
+                .filter(op -> counts[op] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(cycles[b], cycles[a]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public long getOffsetCount(int offset){
+        return offset < offsetCounts.length ? offsetCounts[offset] : 0;
+    }
+
+    public long getOffsetCycles(int offset){
+        return offset < offsetCycles.length ? offsetCycles[offset] : 0;
+    }
+
+    /**
+     * @return the opcode last dispatched at text {@code offset}
+     */
+    public int getOffsetOpcode(int offset){
+        return offset < offsetOpcodes.length ? offsetOpcodes[offset] : 0;
+    }
+
+    /**
+     * @return up to {@code limit} text offsets that ran, most clocks first
+     */
+    public int[] getHottestOffsets(int limit){
+        return IntStream.range(0, offsetCounts.length)
+                .filter(offset -> offsetCounts[offset] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(offsetCycles[b], offsetCycles[a]))
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public void clear(){
+        Arrays.fill(counts, 0);
+        Arrays.fill(cycles, 0);
+        offsetCounts = new long[0];
+        offsetCycles = new long[0];
+        offsetOpcodes = new int[0];
+        opcode = -1;
+        offset = -1;
+    }
+}
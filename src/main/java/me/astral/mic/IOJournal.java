@@ -0,0 +1,170 @@
+package me.astral.mic;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Journal of the input and output of a run, each event with the cycle it happened in.
+ *
+ * Set as {@link RunOptions#getJournal()}, the run stops the engine after every clock that
+ * reads or writes the I/O address to learn its cycle, so recording is slower than a plain
+ * run. A {@link Recording} read back gives the whole input at once, to replay the run from
+ * a preloaded input at full speed, and the output to check it against.
+ *
+ * The file is the magic and version followed by the events, a tag byte, the cycles since
+ * the previous event as a varint and, for input and output, the byte. A run that halts
+ * ends with an {@code END} event.
+ */
+public final class IOJournal implements Closeable {
+
+    public static final int MAGIC = 0x4D494B4A; //MIKJ
+    public static final int VERSION = 1;
+
+    private static final int END = 0, INPUT = 1, EOF = 2, OUTPUT = 3;
+
+    private final DataOutputStream stream;
+    private long lastCycle = 0;
+    //Events of the current clock, waiting for its cycle
+    private int[] pending = new int[4];
+    private int pendingCount = 0;
+
+    private IOJournal(DataOutputStream stream){
+        this.stream = stream;
+    }
+
+    /**
+     * Starts a journal in {@code file}, replacing it.
+     */
+    public static IOJournal record(Path file) throws IOException {
+        DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        stream.writeInt(MAGIC);
+        stream.writeInt(VERSION);
+        return new IOJournal(stream);
+    }
+
+    void input(int data){
+        add(data < 0 ? EOF << 8 : INPUT << 8 | data);
+    }
+
+    void output(int data){
+        add(OUTPUT << 8 | (data & 0xFF));
+    }
+
+    boolean hasPending(){
+        return pendingCount > 0;
+    }
+
+    /**
+     * Writes the events seen since the last call as happening at {@code cycle}.
+     */
+    void stamp(long cycle){
+        try {
+            for (int i = 0; i < pendingCount; i++)
+                write(pending[i] >>> 8, cycle, pending[i] & 0xFF);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        pendingCount = 0;
+    }
+
+    /**
+     * Marks the halt of the machine at {@code cycle}.
+     */
+    void end(long cycle){
+        try {
+            write(END, cycle, -1);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stream.close();
+    }
+
+    private void add(int event){
+        if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pending.length * 2);
+        pending[pendingCount++] = event;
+    }
+
+    private void write(int tag, long cycle, int data) throws IOException {
+        stream.writeByte(tag);
+        long delta = cycle - lastCycle;
+        lastCycle = cycle;
+        while ((delta & ~0x7FL) != 0){
+            stream.writeByte((int) (delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        stream.writeByte((int) delta);
+        if (tag == INPUT || tag == OUTPUT)
+            stream.writeByte(data);
+    }
+
+    /**
+     * Reads back a journal.
+     * @throws IllegalArgumentException when the file is not a journal of this version
+     */
+    public static Recording read(Path file) throws IOException {
+        try (DataInputStream stream = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+            if (stream.readInt() != MAGIC)
+                throw new IllegalArgumentException(file + " is not an I/O journal");
+            int version = stream.readInt();
+            if (version != VERSION)
+                throw new IllegalArgumentException(file + " is a version " + version + " journal, expected " + VERSION);
+
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            long[] outputCycles = new long[64];
+            long cycle = 0;
+            long endCycle = -1;
+            int tag;
+            while (endCycle < 0 && (tag = stream.read()) >= 0){
+                long delta = 0;
+                int b, shift = 0;
+                do {
+                    b = stream.readUnsignedByte();
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                cycle += delta;
+                switch (tag){
+                    case INPUT -> input.write(stream.readUnsignedByte());
+                    case EOF -> {}
+                    case OUTPUT -> {
+                        if (output.size() == outputCycles.length)
+                            outputCycles = Arrays.copyOf(outputCycles, outputCycles.length * 2);
+                        outputCycles[output.size()] = cycle;
+                        output.write(stream.readUnsignedByte());
+                    }
+                    case END -> endCycle = cycle;
+                    default -> throw new IOException(file + " has an unknown event " + tag);
+                }
+            }
+            return new Recording(input.toByteArray(), output.toByteArray(), Arrays.copyOf(outputCycles, output.size()), endCycle);
+        } catch (EOFException e){
+            throw new IOException(file + " ends in the middle of an event", e);
+        }
+    }
+
+    /**
+     * A journal read back.
+     * @param input every byte the program read
+     * @param output every byte the program wrote
+     * @param outputCycles the cycle each output byte was written in
+     * @param endCycle the cycle the machine halted in, -1 if the recorded run did not halt
+     */
+    public record Recording(byte[] input, byte[] output, long[] outputCycles, long endCycle){
+    }
+}
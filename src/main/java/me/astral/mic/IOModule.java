@@ -2,9 +2,13 @@ package me.astral.mic;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public interface IOModule {
 
+    //Bytes staged at once by the bulk operations on buffers without an array
+    int BULK_CHUNK = 1 << 16;
+
     void output(int data);
     int input();
 
@@ -29,10 +33,147 @@ public interface IOModule {
 
     void clear();
 
+    /**
+     * Zeroes the memory and forgets the I/O of the last run, to run another program. Unlike
+     * {@link #clear()}, a module may keep what it allocated to reuse it.
+     */
+    default void reset(){
+        clear();
+    }
+
     default int get8Unsigned(int byteAddress){
         return Byte.toUnsignedInt(get8(byteAddress));
     };
 
+    /**
+     * Writes out output the module holds back, if any.
+     */
+    default void flush(){
+    }
+
+    /**
+     * Copies a program segment starting at byte address {@code origin}.
+     */
+    default void load(int origin, byte[] bytes){
+        write(origin, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Copies a program segment, the remaining bytes of {@code bytes}, starting at byte
+     * address {@code origin}.
+     */
+    default void load(int origin, ByteBuffer bytes){
+        write(origin, bytes);
+    }
+
+    /**
+     * Reads {@code length} bytes from byte address {@code byteAddress} on into {@code bytes}.
+     */
+    default void read(int byteAddress, byte[] bytes, int offset, int length){
+        for (int i = 0; i < length; i++)
+            bytes[offset + i] = get8(byteAddress + i);
+    }
+
+    default void write(int byteAddress, byte[] bytes, int offset, int length){
+        for (int i = 0; i < length; i++)
+            set8(byteAddress + i, bytes[offset + i]);
+    }
+
+    /**
+     * Reads the remaining bytes of {@code buffer} from byte address {@code byteAddress} on.
+     */
+    default void read(int byteAddress, ByteBuffer buffer){
+        int length = buffer.remaining();
+        if (buffer.hasArray()){
+            read(byteAddress, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(length, BULK_CHUNK)];
+        for (int done = 0; done < length; done += chunk.length){
+            int n = Math.min(chunk.length, length - done);
+            read(byteAddress + done, chunk, 0, n);
+            buffer.put(chunk, 0, n);
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of {@code buffer} from byte address {@code byteAddress} on.
+     */
+    default void write(int byteAddress, ByteBuffer buffer){
+        int length = buffer.remaining();
+        if (buffer.hasArray()){
+            write(byteAddress, buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            buffer.position(buffer.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(length, BULK_CHUNK)];
+        for (int done = 0; done < length; done += chunk.length){
+            int n = Math.min(chunk.length, length - done);
+            buffer.get(chunk, 0, n);
+            write(byteAddress + done, chunk, 0, n);
+        }
+    }
+
+    default void fill(int byteAddress, int length, byte value){
+        for (int i = 0; i < length; i++)
+            set8(byteAddress + i, value);
+    }
+
+    /**
+     * Reads {@code length} words from word address {@code wordAddress} on into {@code words}.
+     */
+    default void readWords(int wordAddress, int[] words, int offset, int length){
+        for (int i = 0; i < length; i++)
+            words[offset + i] = get32(wordAddress + i);
+    }
+
+    default void writeWords(int wordAddress, int[] words, int offset, int length){
+        for (int i = 0; i < length; i++)
+            set32(wordAddress + i, words[offset + i]);
+    }
+
+    /**
+     * Copies {@code length} words from word address {@code from} to {@code to}, the ranges
+     * may overlap.
+     */
+    default void copyWords(int from, int to, int length){
+        int[] words = new int[length];
+        readWords(from, words, 0, length);
+        writeWords(to, words, 0, length);
+    }
+
+    /**
+     * Copy of this module reading from and writing to the given streams. Modules sharing
+     * storage copy on write so the fork is cheap whatever memory was touched.
+     */
+    default IOModule fork(InputStream inputStream, OutputStream outputStream){
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be forked");
+    }
+
+    /**
+     * @return bytes of storage allocated for the address space, in the module's own unit of
+     * allocation (pages, segments or single bytes)
+     */
+    default long getFootprint(){
+        return 0;
+    }
+
+    /**
+     * Makes writes needing storage beyond {@code limit} bytes throw a
+     * {@link MemoryQuotaExceededException}, a negative limit removes it.
+     */
+    default void setFootprintLimit(long limit){
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " has no footprint accounting");
+    }
+
+    /**
+     * @return the limit given to {@link #setFootprintLimit(long)}, negative when there is none
+     */
+    default long getFootprintLimit(){
+        return -1;
+    }
+
 
 
 }
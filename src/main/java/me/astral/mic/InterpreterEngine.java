@@ -0,0 +1,22 @@
+package me.astral.mic;
+
+class InterpreterEngine implements MIC1Engine {
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        long executed = 0;
+        try {
+            while (executed < maxCycles){
+                machine.step();
+                executed++;
+                if (machine.halted)
+                    break;
+            }
+        } catch (MemoryException e){
+            e.setMPC(machine.MPC);
+            e.addExecuted(executed);
+            throw e;
+        }
+        return executed;
+    }
+}
@@ -0,0 +1,39 @@
+package me.astral.mic;
+
+public interface MIC1Engine {
+
+    /**
+     * Clocks the machine until it halts or {@code maxCycles} clocks went by. A
+     * {@link MemoryException} leaves the machine in the aborted clock, as the interpreter
+     * does, with the clocks run before it added.
+     * @return the number of clocks executed
+     */
+    long run(MIC1Machine machine, long maxCycles);
+
+    /**
+     * Same as {@link #run(MIC1Machine, long)}, also stopping after a clock that meets one of
+     * the {@code stops}. Clocks one at a time unless the engine knows better: the microcode
+     * engines check the stops in their own loop, those running compiled code or whole IJVM
+     * instructions hand the run to a {@link PackedEngine}, see {@link EngineType#packedWithStops()}.
+     */
+    default long run(MIC1Machine machine, long maxCycles, StopConditions stops){
+        long executed = 0;
+        try {
+            while (executed < maxCycles){
+                executed += run(machine, 1);
+                if (machine.halted || stops.stopAfterClock(machine))
+                    break;
+            }
+        } catch (MemoryException e){
+            e.addExecuted(executed);
+            throw e;
+        }
+        return executed;
+    }
+
+    /**
+     * Drops what the engine derived from the program run so far, before the machine is
+     * {@link MIC1Machine#reset() reset} to run another. Microcode derived state is kept.
+     */
+    default void reset(){}
+}
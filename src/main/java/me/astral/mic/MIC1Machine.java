@@ -3,16 +3,26 @@ package me.astral.mic;
 import me.astral.mic.model.ALU;
 import me.astral.mic.model.BusCControl;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.BitSet;
 
 public class MIC1Machine {
 
-    private final MIC1Instruction[] instructions = new MIC1Instruction[512];
-    private final IOModule memory;
+    MIC1Instruction[] instructions = new MIC1Instruction[512];
+    private ControlStore controlStore;
+    IOModule memory;
 
-    private int MPC = 0;
-    private MIC1Instruction currentInstruction; //MIR
+    int MPC = 0;
+    MIC1Instruction currentInstruction; //MIR
+
+    private EngineType engineType = EngineType.INTERPRETER;
+    private MIC1Engine engine = engineType.create(instructions);
+    private MicroProfile profile;
+    private IJVMProfile ijvmProfile;
+    private long cycles = 0;
+    long retired = 0;
 
     private final ALU alu = new ALU();
 
@@ -32,17 +42,17 @@ public class MIC1Machine {
     public static final int H = 9;
     public static final int MAR = 10;
 
-    private final int[] registers = new int[11];
+    final int[] registers = new int[11];
 
     private int busC = 0;
-    private boolean N = false;
-    private boolean Z = false;
+    boolean N = false;
+    boolean Z = false;
 
-    private boolean toRead = false;
-    private boolean toWrite = false;
-    private boolean toFetch = false;
+    boolean toRead = false;
+    boolean toWrite = false;
+    boolean toFetch = false;
 
-    private boolean halted = false;
+    boolean halted = false;
 
     public MIC1Machine(IOModule module){
         this.memory = module;
@@ -50,10 +60,24 @@ public class MIC1Machine {
     }
 
     public MIC1Machine(){
-        this(new DefaultIOModule(System.in, System.out));
+        this(new PagedIOModule(System.in, System.out));
     }
 
     public void loadMicrocode(byte[] microcode){
+        loadMicrocode(ControlStoreRegistry.shared().get(microcode));
+    }
+
+    public void loadMicrocode(ControlStore controlStore){
+        this.controlStore = controlStore;
+        this.instructions = controlStore.instructions();
+        engine = createEngine();
+    }
+
+    public ControlStore getControlStore() {
+        return controlStore;
+    }
+
+    public static MIC1Instruction[] decode(byte[] microcode){
         BitSet bitSet = BitSet.valueOf(microcode);
 
         for (int i = 0; i < 512 * 36 / 8; i++){
@@ -67,13 +91,66 @@ public class MIC1Machine {
             }
         }
 
+        MIC1Instruction[] instructions = new MIC1Instruction[512];
         for (int i = 0; i < 512; i++){
             instructions[i] = MIC1Instruction.fromBytes(bitSet, i);
         }
+        return instructions;
+    }
+
+    public void setEngine(EngineType engineType){
+        this.engineType = engineType;
+        this.engine = createEngine();
+    }
+
+    /**
+     * Counts every microinstruction run into {@code profile}, on a profiling packed engine
+     * whatever the engine set, until set back to null.
+     */
+    public void setProfile(MicroProfile profile){
+        this.profile = profile;
+        this.engine = createEngine();
+    }
+
+    public MicroProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Attributes every clock run to the IJVM instruction dispatched last into {@code profile},
+     * on a profiling packed engine whatever the engine set, until set back to null.
+     */
+    public void setProfile(IJVMProfile profile){
+        this.ijvmProfile = profile;
+        this.engine = createEngine();
+    }
+
+    public IJVMProfile getIJVMProfile() {
+        return ijvmProfile;
+    }
+
+    private MIC1Engine createEngine(){
+        return profile == null && ijvmProfile == null ? engineType.create(instructions)
+                : new ProfilingEngine(instructions, profile, ijvmProfile);
+    }
+
+    public EngineType getEngine() {
+        return engineType;
     }
 
+    /**
+     * Brings registers, flags, counters and the engine back to power on. The memory is left
+     * alone, see {@link IOModule#reset()}.
+     */
     public void reset(){
+        engine.reset();
         Arrays.fill(registers, 0);
+        MPC = 0;
+        currentInstruction = null;
+        busC = 0;
+        halted = false;
+        cycles = 0;
+        retired = 0;
 
         registers[SP] = BASE_SP;
         registers[CPP] = BASE_CPP;
@@ -87,7 +164,106 @@ public class MIC1Machine {
         N = false;
     }
 
+    /**
+     * Captures the whole machine state, memory included, sharing pages copy on write.
+     */
+    public MachineSnapshot snapshot(){
+        memory.flush();
+        return new MachineSnapshot(this);
+    }
+
+    /**
+     * Brings the machine back to {@code snapshot}, keeping its input and output streams.
+     */
+    public void restore(MachineSnapshot snapshot){
+        memory.flush();
+        StreamIOModule streams = memory instanceof StreamIOModule stream ? stream : null;
+        memory = snapshot.memory.fork(
+                streams == null ? InputStream.nullInputStream() : streams.inputStream,
+                streams == null ? OutputStream.nullOutputStream() : streams.outputStream);
+        restoreState(snapshot);
+    }
+
+    /**
+     * @return a copy of this machine sharing its memory copy on write and its streams
+     */
+    public MIC1Machine fork(){
+        StreamIOModule streams = memory instanceof StreamIOModule stream ? stream : null;
+        return fork(streams == null ? InputStream.nullInputStream() : streams.inputStream,
+                streams == null ? OutputStream.nullOutputStream() : streams.outputStream);
+    }
+
+    /**
+     * @return a copy of this machine sharing its memory copy on write, reading from and
+     * writing to the given streams
+     */
+    public MIC1Machine fork(InputStream inputStream, OutputStream outputStream){
+        memory.flush();
+        return new MachineSnapshot(this).newMachine(inputStream, outputStream);
+    }
+
+    void restoreState(MachineSnapshot snapshot){
+        System.arraycopy(snapshot.registers, 0, registers, 0, registers.length);
+        MPC = snapshot.mpc;
+        currentInstruction = snapshot.currentInstruction;
+        N = snapshot.n;
+        Z = snapshot.z;
+        toRead = snapshot.toRead;
+        toWrite = snapshot.toWrite;
+        toFetch = snapshot.toFetch;
+        halted = snapshot.halted;
+        cycles = snapshot.cycles;
+        retired = snapshot.retired;
+        controlStore = snapshot.controlStore;
+        instructions = snapshot.instructions;
+        setEngine(snapshot.engineType);
+    }
+
     public void clock(){
+        run(1);
+    }
+
+    /**
+     * Clocks the machine until it halts or {@code maxCycles} clocks went by,
+     * returning how many clocks were executed. On a {@link MemoryException} the clocks
+     * run before the aborted one are counted all the same, and an engine that did not
+     * tag it leaves the MPC it stopped at.
+     */
+    public long run(long maxCycles){
+        long executed;
+        try {
+            executed = engine.run(this, maxCycles);
+        } catch (MemoryException e){
+            e.setMPC(MPC);
+            cycles += e.getExecuted();
+            throw e;
+        }
+        cycles += executed;
+        if (halted)
+            memory.flush();
+        return executed;
+    }
+
+    /**
+     * Same as {@link #run(long)}, also stopping after a clock that meets one of the {@code stops}.
+     */
+    public long run(long maxCycles, StopConditions stops){
+        long executed;
+        try {
+            executed = engine.run(this, maxCycles, stops);
+        } catch (MemoryException e){
+            e.setMPC(MPC);
+            cycles += e.getExecuted();
+            throw e;
+        }
+        cycles += executed;
+        if (halted)
+            memory.flush();
+        return executed;
+    }
+
+    //Record based interpreter, one clock
+    void step(){
         //Subcycle 1 - Load MIR
 
         currentInstruction = instructions[MPC];
@@ -110,6 +286,8 @@ public class MIC1Machine {
 
         updateMPC();
         initializeMemoryIO();
+        if (currentInstruction.jam() == JAM.JMPC)
+            retired++;
     }
 
 
@@ -223,6 +401,24 @@ public class MIC1Machine {
         return halted;
     }
 
+    public long getCycles() {
+        return cycles;
+    }
+
+    //JMPC dispatches so far, IJVM instructions with the reference microcode
+    public long getInstructionsRetired() {
+        return retired;
+    }
+
+    public IOModule getMemory() {
+        return memory;
+    }
+
+    //Bytes of storage the memory module allocated
+    public long getMemoryFootprint() {
+        return memory.getFootprint();
+    }
+
     public int getRegister(int index){
         return registers[index];
     }
@@ -257,8 +453,10 @@ public class MIC1Machine {
 
     public void printStack(){
         StringBuilder stack = new StringBuilder("[");
-        for (int i = BASE_SP; i < registers[SP]; i++){
-            stack.append(memory.get32(i));
+        int[] words = new int[Math.max(0, registers[SP] - BASE_SP)];
+        memory.readWords(BASE_SP, words, 0, words.length);
+        for (int word : words){
+            stack.append(word);
             stack.append(", ");
         }
         if (stack.length() > 1)
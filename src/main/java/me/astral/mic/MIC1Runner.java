@@ -3,6 +3,7 @@ package me.astral.mic;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.util.Arrays;
 
@@ -18,8 +19,87 @@ public class MIC1Runner {
 
     public static void run(MIC1Machine machine){
         while(!machine.isHalted()){
-            machine.clock();
+            machine.run(Long.MAX_VALUE);
+        }
+    }
+
+    private static final long SLICE = 1 << 20;
+
+    /**
+     * Runs until the machine halts or the options stop it. The timeout is checked between
+     * slices of {@value #SLICE} clocks. When the memory quota is exceeded or a memory fault
+     * stops the run, the clocks run before the aborted one are counted.
+     */
+    public static RunResult run(MIC1Machine machine, RunOptions options){
+        long start = System.nanoTime();
+        long timeout = options.getTimeout() == null ? -1 : options.getTimeout().toNanos();
+        long retired = machine.getInstructionsRetired();
+        StopConditions stops = StopConditions.compile(options, machine);
+        long every = options.getCheckpoint() == null ? -1 : options.getCheckpointEvery();
+        IOJournal journal = options.getJournal();
+        IOJournal previousJournal = null;
+        if (journal != null){
+            if (!(machine.memory instanceof StreamIOModule streams))
+                throw new IllegalArgumentException("A journal needs a stream backed memory module");
+            previousJournal = streams.journal;
+            streams.journal = journal;
+        }
+        boolean limited = options.getMaxFootprint() >= 0;
+        long previousLimit = limited ? machine.memory.getFootprintLimit() : -1;
+        if (limited)
+            machine.memory.setFootprintLimit(options.getMaxFootprint());
+
+        long executed = 0;
+        StopReason reason = null;
+        MemoryFaultException fault = null;
+        try {
+            while (reason == null){
+                if (machine.isHalted())
+                    reason = StopReason.HALTED;
+                else if (executed >= options.getMaxCycles())
+                    reason = StopReason.MAX_CYCLES;
+                else if (timeout >= 0 && System.nanoTime() - start >= timeout)
+                    reason = StopReason.TIMEOUT;
+                else {
+                    long slice = Math.min(SLICE, options.getMaxCycles() - executed);
+                    if (every > 0)
+                        slice = Math.min(slice, every - machine.getCycles() % every);
+                    try {
+                        executed += stops == null ? machine.run(slice) : machine.run(slice, stops);
+                    } catch (MemoryQuotaExceededException e){
+                        executed += e.getExecuted();
+                        reason = StopReason.MEMORY_QUOTA;
+                        break;
+                    } catch (MemoryFaultException e){
+                        executed += e.getExecuted();
+                        reason = StopReason.MEMORY_FAULT;
+                        fault = e;
+                        break;
+                    }
+                    if (journal != null)
+                        journal.stamp(machine.getCycles());
+                    if (stops != null && stops.getReason() != null)
+                        reason = stops.getReason();
+                    if (machine.memory instanceof StreamIOModule streams)
+                        streams.flushIfDue();
+                    if (every > 0 && machine.getCycles() % every == 0 && !machine.isHalted())
+                        options.getCheckpoint().accept(machine);
+                }
+            }
+            machine.memory.flush();
+            if (journal != null){
+                journal.stamp(machine.getCycles());
+                if (reason == StopReason.HALTED)
+                    journal.end(machine.getCycles());
+            }
+        } finally {
+            //The journal and quota only hold for this run
+            if (journal != null)
+                ((StreamIOModule) machine.memory).journal = previousJournal;
+            if (limited)
+                machine.memory.setFootprintLimit(previousLimit);
         }
+        return new RunResult(executed, reason, machine.getInstructionsRetired() - retired, System.nanoTime() - start, fault);
     }
 
     public static void runIJVM(byte[] program, byte[] controlStore){
@@ -28,23 +108,60 @@ public class MIC1Runner {
     }
 
     public static MIC1Machine loadIJVM(byte[] program, byte[] controlStore){
-        DefaultIOModule memoryModule = new DefaultIOModule(System.in, System.out);
-        loadProgram(program, memoryModule);
-        MIC1Machine machine = new MIC1Machine(memoryModule);
-        machine.loadMicrocode(controlStore);
-        return machine;
+        return loadIJVM(program, controlStore, new RegionIOModule(System.in, System.out));
     }
 
     public static MIC1Machine loadIJVM(byte[] program, byte[] controlStore, InputStream is, OutputStream os){
-        DefaultIOModule memoryModule = new DefaultIOModule(is, os);
+        return loadIJVM(program, controlStore, new RegionIOModule(is, os));
+    }
+
+    public static MIC1Machine loadIJVM(byte[] program, byte[] controlStore, IOModule memoryModule){
+        return loadIJVM(ByteBuffer.wrap(program), controlStore, memoryModule);
+    }
+
+    /**
+     * Loads a program from a buffer, for instance a mapped .ijvm file, copying its segments
+     * straight into the memory.
+     */
+    public static MIC1Machine loadIJVM(ByteBuffer program, byte[] controlStore, IOModule memoryModule){
         loadProgram(program, memoryModule);
         MIC1Machine machine = new MIC1Machine(memoryModule);
         machine.loadMicrocode(controlStore);
         return machine;
     }
 
-    private static void loadProgram(byte[] ijvmProgram, DefaultIOModule memoryModule){
-        ByteBuffer buffer = ByteBuffer.wrap(ijvmProgram);
+    /**
+     * Loads the program once per lane, lane {@code i} reading from {@code inputs[i]} and
+     * writing to {@code outputs[i]}.
+     */
+    public static BatchMachine loadBatch(byte[] program, byte[] controlStore, InputStream[] inputs, OutputStream[] outputs){
+        if (inputs.length != outputs.length)
+            throw new IllegalArgumentException("Expected as many outputs as inputs, but found " + outputs.length + " and " + inputs.length);
+        IOModule[] memories = new IOModule[inputs.length];
+        for (int i = 0; i < memories.length; i++){
+            memories[i] = new RegionIOModule(inputs[i], outputs[i]);
+            loadProgram(ByteBuffer.wrap(program), memories[i]);
+        }
+        return new BatchMachine(controlStore, memories);
+    }
+
+    public static void run(BatchMachine machine){
+        while(!machine.isHalted()){
+            machine.run(Long.MAX_VALUE);
+        }
+    }
+
+    static void loadProgram(ByteBuffer ijvmProgram, IOModule memoryModule){
+        ByteBuffer[] segments = segments(ijvmProgram);
+        memoryModule.load(RegionIOModule.CONSTANT_POOL_ORIGIN, segments[0]);
+        memoryModule.load(RegionIOModule.TEXT_ORIGIN, segments[1]);
+    }
+
+    /**
+     * Checks an IJVM binary and slices it, without copying, in its constant pool and text.
+     */
+    static ByteBuffer[] segments(ByteBuffer ijvmProgram){
+        ByteBuffer buffer = ijvmProgram.duplicate().order(ByteOrder.BIG_ENDIAN);
         int magicNumber = buffer.getInt();
         if (magicNumber != 0x1DEADFAD)
             throw new IllegalArgumentException("Program is not IJVM binary");
@@ -53,19 +170,20 @@ public class MIC1Runner {
         if (constantPoolOrigin != 0x00010000)
             throw new IllegalArgumentException("Constant Pool Origin must be 0x00010000, but found " + constantPoolOrigin);
 
-        int constantPoolSize = buffer.getInt();
-        for (int i = 0; i < constantPoolSize; i++){
-            memoryModule.set8(constantPoolOrigin + i, buffer.get());
-        }
+        ByteBuffer constantPool = segment(buffer);
 
         int textOrigin = buffer.getInt();
         if (textOrigin != 0)
             throw new IllegalArgumentException("Text Origin must be 0, but found " + textOrigin);
 
-        int textSize = buffer.getInt();
-        for (int i = 0; i < textSize; i++){
-            memoryModule.set8(textOrigin + i, buffer.get());
-        }
+        return new ByteBuffer[]{constantPool, segment(buffer)};
+    }
+
+    private static ByteBuffer segment(ByteBuffer buffer){
+        int length = buffer.getInt();
+        ByteBuffer segment = buffer.slice(buffer.position(), length);
+        buffer.position(buffer.position() + length);
+        return segment;
     }
 
 }
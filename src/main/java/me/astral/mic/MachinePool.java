@@ -0,0 +1,73 @@
+package me.astral.mic;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Machines and memory modules reused from run to run, for batches of short programs.
+ *
+ * A machine {@link #acquire acquired} has its registers and {@link RegionIOModule} memory
+ * {@link IOModule#reset() reset}, in time proportional to what its last run wrote, and the
+ * program loaded into the arrays of the last one when it has the same size. Its engine is
+ * kept while the control store stays the same, {@link MIC1Engine#reset() reset} of what it
+ * derived from the last program. Safe to share between threads, each machine being used
+ * by one thread at a time.
+ */
+public class MachinePool {
+
+    private final ConcurrentLinkedDeque<MIC1Machine> idle = new ConcurrentLinkedDeque<>();
+    private final EngineType engine;
+
+    public MachinePool(EngineType engine){
+        this.engine = engine;
+    }
+
+    /**
+     * @return a machine ready to run {@code program}, to give back with {@link #release}
+     */
+    public MIC1Machine acquire(ByteBuffer program, byte[] controlStore, InputStream input, OutputStream output){
+        MIC1Machine machine = idle.pollFirst();
+        if (machine == null){
+            machine = new MIC1Machine(new RegionIOModule(input, output));
+        }else if (machine.memory instanceof StreamIOModule memory){
+            memory.reset(input, output);
+            memory.setFootprintLimit(-1);
+            machine.reset();
+        }else {
+            machine.memory = new RegionIOModule(input, output);
+            machine.reset();
+        }
+        MIC1Runner.loadProgram(program, machine.memory);
+
+        ControlStore store = ControlStoreRegistry.shared().get(controlStore);
+        if (machine.getControlStore() != store)
+            machine.loadMicrocode(store);
+        if (machine.getEngine() != engine)
+            machine.setEngine(engine);
+        return machine;
+    }
+
+    /**
+     * Same as {@link #acquire(ByteBuffer, byte[], InputStream, OutputStream)}, the program
+     * reading {@code input} from its position on.
+     */
+    public MIC1Machine acquire(ByteBuffer program, byte[] controlStore, ByteBuffer input, OutputStream output){
+        MIC1Machine machine = acquire(program, controlStore, InputStream.nullInputStream(), output);
+        ((StreamIOModule) machine.memory).setInput(input);
+        return machine;
+    }
+
+    /**
+     * Takes {@code machine} back, flushing its output. It must not be used afterwards.
+     */
+    public void release(MIC1Machine machine){
+        machine.memory.flush();
+        idle.offerFirst(machine);
+    }
+
+    public int getIdle(){
+        return idle.size();
+    }
+}
@@ -0,0 +1,110 @@
+package me.astral.mic;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * State of a {@link MIC1Machine} at one clock: registers, MPC, MIR, N/Z, pending memory
+ * operations, counters and memory. The memory is a fork that is never written, so taking
+ * a snapshot costs a copy of the page tables, and it can be restored or turned into new
+ * machines any number of times.
+ */
+public final class MachineSnapshot {
+
+    final int[] registers;
+    final int mpc;
+    final MIC1Instruction currentInstruction;
+    final boolean n;
+    final boolean z;
+    final boolean toRead;
+    final boolean toWrite;
+    final boolean toFetch;
+    final boolean halted;
+    final long cycles;
+    final long retired;
+    final EngineType engineType;
+    final ControlStore controlStore;
+    final MIC1Instruction[] instructions;
+    final IOModule memory;
+
+    MachineSnapshot(MIC1Machine machine){
+        this.registers = machine.registers.clone();
+        this.mpc = machine.MPC;
+        this.currentInstruction = machine.currentInstruction;
+        this.n = machine.N;
+        this.z = machine.Z;
+        this.toRead = machine.toRead;
+        this.toWrite = machine.toWrite;
+        this.toFetch = machine.toFetch;
+        this.halted = machine.halted;
+        this.cycles = machine.getCycles();
+        this.retired = machine.retired;
+        this.engineType = machine.getEngine();
+        this.controlStore = machine.getControlStore();
+        this.instructions = machine.instructions;
+        this.memory = machine.memory.fork(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+    }
+
+    MachineSnapshot(int[] registers, int mpc, MIC1Instruction currentInstruction, boolean n, boolean z,
+                    boolean toRead, boolean toWrite, boolean toFetch, boolean halted, long cycles, long retired,
+                    EngineType engineType, ControlStore controlStore, IOModule memory){
+        this.registers = registers;
+        this.mpc = mpc;
+        this.currentInstruction = currentInstruction;
+        this.n = n;
+        this.z = z;
+        this.toRead = toRead;
+        this.toWrite = toWrite;
+        this.toFetch = toFetch;
+        this.halted = halted;
+        this.cycles = cycles;
+        this.retired = retired;
+        this.engineType = engineType;
+        this.controlStore = controlStore;
+        this.instructions = controlStore.instructions();
+        this.memory = memory;
+    }
+
+    /**
+     * @return a new machine in this state, with its own copy on write memory
+     */
+    public MIC1Machine newMachine(InputStream inputStream, OutputStream outputStream){
+        MIC1Machine machine = new MIC1Machine(memory.fork(inputStream, outputStream));
+        machine.restoreState(this);
+        return machine;
+    }
+
+    public long getCycles() {
+        return cycles;
+    }
+
+    public int getMPC() {
+        return mpc;
+    }
+
+    public int getRegister(int index) {
+        return registers[index];
+    }
+
+    public EngineType getEngine() {
+        return engineType;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * @return bytes the machine had read from its input
+     */
+    public long getInputPosition() {
+        return memory instanceof StreamIOModule streams ? streams.bytesRead : 0;
+    }
+
+    /**
+     * @return bytes the machine had written to its output
+     */
+    public long getOutputPosition() {
+        return memory instanceof StreamIOModule streams ? streams.bytesWritten : 0;
+    }
+}
@@ -0,0 +1,187 @@
+package me.astral.mic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory module keeping the address space outside the Java heap, either in direct buffers
+ * or in a sparse memory mapped image file.
+ *
+ * Byte address {@code b} sits at offset {@code b} (unsigned) of the 4 GiB image, so words
+ * are stored big endian at {@code 4 * wordAddress}, the layout of {@link IOModule#get32(int)}.
+ * The image is split in segments of {@value #SEGMENT_BYTES} bytes, allocated or mapped
+ * on first write. An image file is left in place and can be opened again or inspected
+ * once the machine is done.
+ */
+public class MappedIOModule extends StreamIOModule implements Closeable {
+
+    public static final int SEGMENT_BITS = 20;
+    public static final int SEGMENT_BYTES = 1 << SEGMENT_BITS;
+    private static final int SEGMENT_MASK = SEGMENT_BYTES - 1;
+    private static final int SEGMENTS = 1 << (32 - SEGMENT_BITS);
+
+    private static final int WORD_MASK = 0x3FFFFFFF;
+
+    private final FileChannel channel;
+    private final ByteBuffer[] segments = new ByteBuffer[SEGMENTS];
+    private long imageSize;
+    //Image content below this offset is stale unless already mapped
+    private long clearedSize;
+    private int allocated;
+    private long footprintLimit = -1;
+
+    /**
+     * Address space in direct buffers, released with the module.
+     */
+    public MappedIOModule(InputStream inputStream, OutputStream outputStream){
+        super(inputStream, outputStream);
+        this.channel = null;
+    }
+
+    /**
+     * Address space mapped from {@code image}, created when missing. Its current content is
+     * the initial memory.
+     */
+    public MappedIOModule(Path image, InputStream inputStream, OutputStream outputStream) throws IOException {
+        super(inputStream, outputStream);
+        this.channel = FileChannel.open(image, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.imageSize = channel.size();
+    }
+
+    @Override
+    public int get32(int wordAddress) {
+        long offset = (long) (wordAddress & WORD_MASK) << 2;
+        ByteBuffer segment = segment(offset, false);
+        return segment == null ? 0 : segment.getInt((int) offset & SEGMENT_MASK);
+    }
+
+    @Override
+    public void set32(int wordAddress, int value) {
+        long offset = (long) (wordAddress & WORD_MASK) << 2;
+        segment(offset, true).putInt((int) offset & SEGMENT_MASK, value);
+    }
+
+    @Override
+    public byte get8(int byteAddress) {
+        long offset = Integer.toUnsignedLong(byteAddress);
+        ByteBuffer segment = segment(offset, false);
+        return segment == null ? 0 : segment.get((int) offset & SEGMENT_MASK);
+    }
+
+    @Override
+    public void set8(int byteAddress, byte value) {
+        long offset = Integer.toUnsignedLong(byteAddress);
+        segment(offset, true).put((int) offset & SEGMENT_MASK, value);
+    }
+
+    @Override
+    public void read(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            long address = Integer.toUnsignedLong(byteAddress + done);
+            int n = Math.min(length - done, SEGMENT_BYTES - ((int) address & SEGMENT_MASK));
+            ByteBuffer segment = segment(address, false);
+            if (segment == null)
+                Arrays.fill(bytes, offset + done, offset + done + n, (byte) 0);
+            else
+                segment.get((int) address & SEGMENT_MASK, bytes, offset + done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            long address = Integer.toUnsignedLong(byteAddress + done);
+            int n = Math.min(length - done, SEGMENT_BYTES - ((int) address & SEGMENT_MASK));
+            segment(address, true).put((int) address & SEGMENT_MASK, bytes, offset + done, n);
+            done += n;
+        }
+    }
+
+    /**
+     * Zeroes the address space. Mapped segments are zeroed in place, the rest of the image
+     * is zeroed when mapped again.
+     */
+    @Override
+    public void clear() {
+        if (channel == null){
+            Arrays.fill(segments, null);
+            allocated = 0;
+            return;
+        }
+        byte[] zeros = new byte[SEGMENT_BYTES];
+        for (ByteBuffer segment : segments)
+            if (segment != null)
+                segment.put(0, zeros);
+        clearedSize = imageSize;
+    }
+
+    @Override
+    public long getFootprint() {
+        return (long) allocated * SEGMENT_BYTES;
+    }
+
+    @Override
+    public void setFootprintLimit(long limit) {
+        this.footprintLimit = limit;
+    }
+
+    @Override
+    public long getFootprintLimit() {
+        return footprintLimit;
+    }
+
+    /**
+     * Writes the mapped segments back to the image file.
+     */
+    public void force(){
+        for (ByteBuffer segment : segments)
+            if (segment instanceof MappedByteBuffer mapped)
+                mapped.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null){
+            force();
+            channel.close();
+        }
+    }
+
+    private ByteBuffer segment(long offset, boolean create){
+        int index = (int) (offset >>> SEGMENT_BITS);
+        ByteBuffer segment = segments[index];
+        if (segment != null)
+            return segment;
+
+        long start = (long) index << SEGMENT_BITS;
+        if (!create && (channel == null || start >= imageSize || start < clearedSize))
+            return null;
+        if (footprintLimit >= 0 && (long) (allocated + 1) * SEGMENT_BYTES > footprintLimit)
+            throw new MemoryQuotaExceededException((long) (allocated + 1) * SEGMENT_BYTES, footprintLimit);
+        if (channel == null){
+            segment = ByteBuffer.allocateDirect(SEGMENT_BYTES);
+        }else {
+            try {
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_BYTES);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (start < clearedSize)
+                segment.put(0, new byte[SEGMENT_BYTES]);
+            imageSize = Math.max(imageSize, start + SEGMENT_BYTES);
+        }
+        segments[index] = segment;
+        allocated++;
+        return segment;
+    }
+}
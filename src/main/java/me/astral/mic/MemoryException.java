@@ -0,0 +1,40 @@
+package me.astral.mic;
+
+/**
+ * Thrown by a memory module on an access it refuses, aborting the clock making it.
+ * Engines leave the machine in that clock, add the clocks they ran before it on the way out,
+ * so the machine still counts them, and tag it with the word whose clock made the access.
+ */
+public class MemoryException extends RuntimeException {
+
+    private long executed;
+    private int mpc = -1;
+
+    public MemoryException(String message){
+        super(message);
+    }
+
+    /**
+     * @return the clocks run by the aborted engine call before the one making the access
+     */
+    public long getExecuted() {
+        return executed;
+    }
+
+    void addExecuted(long clocks) {
+        executed += clocks;
+    }
+
+    /**
+     * @return the word whose clock made the access, -1 when the exception did not go through an engine
+     */
+    public int getMPC() {
+        return mpc;
+    }
+
+    //The innermost engine knows best
+    void setMPC(int mpc) {
+        if (this.mpc < 0)
+            this.mpc = mpc;
+    }
+}
@@ -0,0 +1,30 @@
+package me.astral.mic;
+
+/**
+ * Thrown by a memory module on an access its protection or bounds forbid.
+ */
+public class MemoryFaultException extends MemoryException {
+
+    private final int byteAddress;
+    private final boolean write;
+
+    public MemoryFaultException(String reason, int byteAddress, boolean write){
+        super(reason);
+        this.byteAddress = byteAddress;
+        this.write = write;
+    }
+
+    public int getByteAddress() {
+        return byteAddress;
+    }
+
+    public boolean isWrite() {
+        return write;
+    }
+
+    @Override
+    public String getMessage() {
+        return String.format("%s on %s of byte 0x%08X%s", super.getMessage(), write ? "write" : "read", byteAddress,
+                getMPC() < 0 ? "" : String.format(" at MPC 0x%03X", getMPC()));
+    }
+}
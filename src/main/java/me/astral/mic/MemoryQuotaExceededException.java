@@ -0,0 +1,24 @@
+package me.astral.mic;
+
+/**
+ * Thrown by a memory module asked to allocate storage beyond its footprint limit.
+ */
+public class MemoryQuotaExceededException extends MemoryException {
+
+    private final long footprint;
+    private final long limit;
+
+    public MemoryQuotaExceededException(long footprint, long limit){
+        super("Memory footprint would reach " + footprint + " bytes, over the limit of " + limit);
+        this.footprint = footprint;
+        this.limit = limit;
+    }
+
+    public long getFootprint() {
+        return footprint;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,67 @@
+package me.astral.mic;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Execution counts of a control store, filled by a machine {@link MIC1Machine#setProfile
+ * profiling} its runs: how many times every MPC to MPC transition was taken, so JAMN and
+ * JAMZ outcomes and JMPC targets show up as separate edges.
+ */
+public final class MicroProfile {
+
+    public static final int ADDRESSES = 512;
+
+    //Taken count of every edge, at from * ADDRESSES + to
+    final long[] edges = new long[ADDRESSES * ADDRESSES];
+
+    public long getEdge(int from, int to){
+        return edges[from * ADDRESSES + to];
+    }
+
+    /**
+     * @return how many times the word at {@code address} ran
+     */
+    public long getCount(int address){
+        long count = 0;
+        for (int to = 0; to < ADDRESSES; to++)
+            count += edges[address * ADDRESSES + to];
+        return count;
+    }
+
+    public long getCycles(){
+        return Arrays.stream(edges).sum();
+    }
+
+    /**
+     * @return up to {@code limit} addresses that ran, most run first
+     */
+    public int[] getHottest(int limit){
+        long[] counts = new long[ADDRESSES];
+        for (int address = 0; address < ADDRESSES; address++)
+            counts[address] = getCount(address);
+        return IntStream.range(0, ADDRESSES)
+                .filter(address -> counts[address] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(counts[b], counts[a]))
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    /**
+     * @return the addresses run right after {@code from}, most taken first
+     */
+    public int[] getSuccessors(int from){
+        return IntStream.range(0, ADDRESSES)
+                .filter(to -> getEdge(from, to) > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(getEdge(from, b), getEdge(from, a)))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public void clear(){
+        Arrays.fill(edges, 0);
+    }
+}
@@ -0,0 +1,350 @@
+package me.astral.mic;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.OpcodeSummary.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Symbolic execution of a control store, one opcode at a time.
+ *
+ * Starting at {@code Main1} with a known opcode and known pending memory operations, every
+ * word is executed on value slots instead of integers, with the same clock order as the
+ * engines: ALU, pending memory operations, bus C writes, next address. Moves and constants
+ * are folded, a JAMN or JAMZ on a value only known at run time splits the summary in two,
+ * and the walk stops when the routine is back at {@code Main1}. A second JMPC on a runtime
+ * value, a halt, a memory write after input or output, or a routine longer than
+ * {@link #MAX_WORDS} words leaves the opcode without summary.
+ *
+ * An instruction can also be analysed where it is in the program text: PC is then a constant,
+ * so are the bytes fetched at constant addresses, and with them operands and branch targets.
+ */
+public final class MicrocodeAnalyzer {
+
+    static final int MAX_WORDS = 256;
+
+    private static final int SLOT_ZERO = MAR + 1;
+
+    private final long[] words;
+    private final int main;
+
+    MicrocodeAnalyzer(MIC1Instruction[] instructions){
+        this.words = new PackedEngine(instructions).words;
+        this.main = findMain(instructions);
+    }
+
+    /**
+     * Finds {@code Main1}, the only word dispatching on MBR without an offset.
+     * @return its address, -1 when there is none or more than one
+     */
+    static int findMain(MIC1Instruction[] instructions){
+        int main = -1;
+        for (int i = 0; i < instructions.length; i++){
+            MIC1Instruction instruction = instructions[i];
+            if (instruction != null && instruction.jam() == JAM.JMPC && instruction.nextAddress() == 0){
+                if (main >= 0)
+                    return -1;
+                main = i;
+            }
+        }
+        return main;
+    }
+
+    int main(){
+        return main;
+    }
+
+    /**
+     * @param pending memory operations pending when the machine is at {@code Main1}
+     * @return the summary, null when the opcode cannot be summarised
+     */
+    OpcodeSummary analyze(int opcode, int pending){
+        return analyze(new Walk(opcode, null), -1, pending);
+    }
+
+    /**
+     * Analyses the instruction at {@code pc}, reading the bytes fetched from {@code text}.
+     * @param pending memory operations pending when the machine is at {@code Main1}, MBRU must hold
+     *                the opcode at {@code pc} unless a fetch is
+     * @return the summary, null when the instruction cannot be summarised
+     */
+    public OpcodeSummary analyze(IOModule text, int pc, int pending){
+        return analyze(new Walk(Byte.toUnsignedInt(text.get8(pc)), text), pc, pending);
+    }
+
+    private OpcodeSummary analyze(Walk walk, int pc, int pending){
+        if (main < 0)
+            return null;
+        int[] registers = new int[MAR + 1];
+        for (int r = 0; r <= MAR; r++)
+            registers[r] = r;
+        if (walk.text != null)
+            registers[PC] = walk.constant(pc);
+        try {
+            OpcodeSummary.Block root = walk.explore(registers, main, pending, 0, 0, SLOT_ZERO, main);
+            walk.eliminateDeadCode(root, new HashSet<>());
+            return new OpcodeSummary(root, walk.template(), walk.constants());
+        } catch (Unresolved e) {
+            return null;
+        }
+    }
+
+    private static final class Unresolved extends Exception {
+        Unresolved(){
+            super(null, null, false, false);
+        }
+    }
+
+    private final class Walk {
+        final int opcode;
+        //Program text, null when PC is not known
+        final IOModule text;
+        final Map<Integer, Integer> constants = new HashMap<>();
+        final Map<Integer, Integer> constantOf = new HashMap<>();
+        int slots = SLOT_ZERO;
+        int visited = 0;
+        //Input or output done on the path explored
+        boolean io = false;
+
+        Walk(int opcode, IOModule text){
+            this.opcode = opcode;
+            this.text = text;
+            constant(0);
+        }
+
+        int constant(int value){
+            Integer slot = constants.get(value);
+            if (slot == null){
+                slot = slots++;
+                constants.put(value, slot);
+                constantOf.put(slot, value);
+            }
+            return slot;
+        }
+
+        int[] template(){
+            int[] template = new int[slots];
+            for (Map.Entry<Integer, Integer> constant : constantOf.entrySet())
+                template[constant.getKey()] = constant.getValue();
+            return template;
+        }
+
+        BitSet constants(){
+            BitSet constants = new BitSet(slots);
+            for (int slot : constantOf.keySet())
+                constants.set(slot);
+            return constants;
+        }
+
+        OpcodeSummary.Block explore(int[] registers, int mpc, int pending, int cycles, int dispatches, int busC, int last) throws Unresolved {
+            OpcodeSummary.Block block = new OpcodeSummary.Block();
+            List<int[]> ops = new ArrayList<>();
+
+            while (true){
+                if (cycles > 0 && mpc == main){
+                    block.registers = registers;
+                    block.busC = busC;
+                    block.last = last;
+                    block.pending = pending;
+                    block.cycles = cycles;
+                    block.dispatches = dispatches;
+                    block.ops = flatten(ops);
+                    return block;
+                }
+                if (++visited > MAX_WORDS)
+                    throw new Unresolved();
+
+                long word = words[mpc];
+                int bus = (int) (word >>> BUS_SHIFT) & 0xF;
+                busC = alu(ops, (int) (word >>> ALU_SHIFT) & 0x3F, (int) (word >>> SHIFTER_SHIFT) & 0x3,
+                        registers[H], bus < 9 ? registers[bus] : constant(0));
+
+                if ((pending & PENDING_FETCH) != 0 && !fold(registers)){
+                    int signed = slots++;
+                    int unsigned = slots++;
+                    ops.add(new int[]{OP_FETCH, signed, unsigned, registers[PC], 0});
+                    registers[MBR] = signed;
+                    registers[MBRU] = unsigned;
+                }
+                if ((pending & PENDING_READ) != 0){
+                    int value = slots++;
+                    io |= inputOutput(registers[MAR]);
+                    ops.add(new int[]{OP_READ, value, registers[MAR], 0, 0});
+                    registers[MDR] = value;
+                }else if ((pending & PENDING_WRITE) != 0){
+                    //A write faulting after I/O would have the packed engine do the I/O again
+                    if (io)
+                        throw new Unresolved();
+                    io = inputOutput(registers[MAR]);
+                    ops.add(new int[]{OP_WRITE, registers[MAR], registers[MDR], 0, 0});
+                }
+
+                int mask = (int) (word >>> WRITE_SHIFT) & 0x7FF;
+                while (mask != 0){
+                    registers[Integer.numberOfTrailingZeros(mask)] = busC;
+                    mask &= mask - 1;
+                }
+
+                int next = (int) word & NEXT_MASK;
+                int jam = (int) (word >>> JAM_SHIFT) & 0x3;
+                pending = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                cycles++;
+                last = mpc;
+
+                if (jam == JAM_PC){
+                    dispatches++;
+                    if (mpc == main && cycles == 1)
+                        next |= opcode;
+                    else if (constantOf.containsKey(registers[MBRU]))
+                        next |= constantOf.get(registers[MBRU]);
+                    else
+                        throw new Unresolved();
+                }else if (jam != JAM_NONE){
+                    Integer value = constantOf.get(busC);
+                    if (value == null){
+                        block.ops = flatten(ops);
+                        block.branch = jam == JAM_N ? BRANCH_N : BRANCH_Z;
+                        block.condition = busC;
+                        boolean io = this.io;
+                        block.taken = explore(registers.clone(), next + 256, pending, cycles, dispatches, busC, last);
+                        this.io = io;
+                        block.notTaken = explore(registers.clone(), next, pending, cycles, dispatches, busC, last);
+                        return block;
+                    }
+                    if (jam == JAM_N ? value < 0 : value == 0)
+                        next += 256;
+                }
+
+                if (next == mpc)
+                    throw new Unresolved();
+                mpc = next;
+            }
+        }
+
+        //Fetch from the program text at a constant PC
+        private boolean fold(int[] registers){
+            Integer address = text != null ? constantOf.get(registers[PC]) : null;
+            if (address == null)
+                return false;
+            byte value;
+            try {
+                value = text.get8(address);
+            } catch (MemoryException e){
+                return false;
+            }
+            registers[MBR] = constant(value);
+            registers[MBRU] = constant(Byte.toUnsignedInt(value));
+            return true;
+        }
+
+        private boolean inputOutput(int address){
+            return constantOf.getOrDefault(address, 0) < 0;
+        }
+
+        private int alu(List<int[]> ops, int operation, int shift, int a, int b){
+            if (shift == SHIFT_NONE && operation == ALU_A)
+                return a;
+            if (shift == SHIFT_NONE && operation == ALU_B)
+                return b;
+            boolean knownA = !readsA(operation) || constantOf.containsKey(a);
+            boolean knownB = !readsB(operation) || constantOf.containsKey(b);
+            if (knownA && knownB){
+                int value = PackedEngine.alu(operation, constantOf.getOrDefault(a, 0), constantOf.getOrDefault(b, 0));
+                return constant(OpcodeSummary.shift(shift, value));
+            }
+            int result = slots++;
+            ops.add(new int[]{OP_ALU, result, operation | shift << 8, a, b});
+            return result;
+        }
+
+        private int[] flatten(List<int[]> ops){
+            int[] flat = new int[ops.size() * OP_SIZE];
+            for (int i = 0; i < ops.size(); i++)
+                System.arraycopy(ops.get(i), 0, flat, i * OP_SIZE, OP_SIZE);
+            return flat;
+        }
+
+        /**
+         * Drops ALU operations and fetches whose result is never used.
+         * @param live slots used after the block
+         */
+        void eliminateDeadCode(OpcodeSummary.Block block, Set<Integer> live){
+            if (block.branch == BRANCH_NONE){
+                for (int slot : block.registers)
+                    live.add(slot);
+                live.add(block.busC);
+            }else {
+                Set<Integer> notTaken = new HashSet<>(live);
+                eliminateDeadCode(block.taken, live);
+                eliminateDeadCode(block.notTaken, notTaken);
+                live.addAll(notTaken);
+                live.add(block.condition);
+            }
+
+            int[] ops = block.ops;
+            boolean[] keep = new boolean[ops.length / OP_SIZE];
+            for (int i = keep.length - 1; i >= 0; i--){
+                int op = i * OP_SIZE;
+                switch (ops[op]){
+                    case OP_ALU -> {
+                        keep[i] = live.contains(ops[op + 1]);
+                        if (keep[i]){
+                            live.add(ops[op + 3]);
+                            live.add(ops[op + 4]);
+                        }
+                    }
+                    case OP_FETCH -> {
+                        keep[i] = live.contains(ops[op + 1]) || live.contains(ops[op + 2]);
+                        if (keep[i])
+                            live.add(ops[op + 3]);
+                    }
+                    case OP_READ -> {
+                        keep[i] = true;
+                        live.add(ops[op + 2]);
+                    }
+                    case OP_WRITE -> {
+                        keep[i] = true;
+                        live.add(ops[op + 1]);
+                        live.add(ops[op + 2]);
+                    }
+                }
+            }
+
+            int count = 0;
+            for (boolean k : keep)
+                if (k)
+                    count++;
+            int[] kept = new int[count * OP_SIZE];
+            for (int i = 0, j = 0; i < keep.length; i++){
+                if (keep[i]){
+                    System.arraycopy(ops, i * OP_SIZE, kept, j, OP_SIZE);
+                    j += OP_SIZE;
+                }
+            }
+            block.ops = kept;
+        }
+    }
+
+    private static boolean readsA(int operation){
+        return switch (operation){
+            case ALU_A, ALU_NOT_A, ALU_A_PLUS_B, ALU_A_PLUS_B_PLUS_1, ALU_A_PLUS_1,
+                    ALU_B_MINUS_A, ALU_MINUS_A, ALU_A_AND_B, ALU_A_OR_B -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean readsB(int operation){
+        return switch (operation){
+            case ALU_B, ALU_NOT_B, ALU_A_PLUS_B, ALU_A_PLUS_B_PLUS_1, ALU_B_PLUS_1,
+                    ALU_B_MINUS_A, ALU_B_MINUS_1, ALU_A_AND_B, ALU_A_OR_B -> true;
+            default -> false;
+        };
+    }
+}
@@ -0,0 +1,173 @@
+package me.astral.mic;
+
+import java.util.BitSet;
+
+import static me.astral.mic.MIC1Machine.*;
+
+/**
+ * Effect of one opcode, from {@code Main1} back to {@code Main1}, as found by the
+ * {@link MicrocodeAnalyzer}.
+ *
+ * The summary is a tree of blocks, one per JAMN or JAMZ decision left open by the
+ * analysis. A block is a list of operations on value slots: slots 0 to 10 hold the
+ * registers at {@code Main1}, the others constants or results. A leaf gives the slot
+ * each register ends up with, together with what the machine needs to resume.
+ * Summaries are also compiled by the {@link me.astral.mic.jit.LoopCompiler}.
+ */
+public final class OpcodeSummary {
+
+    //Operations, five ints each: kind, then operands
+    public static final int OP_ALU = 0;    //dst, operation | shift << 8, a, b
+    public static final int OP_READ = 1;   //dst, address
+    public static final int OP_WRITE = 2;  //address, value
+    public static final int OP_FETCH = 3;  //dst, unsigned dst, address
+    public static final int OP_SIZE = 5;
+
+    public static final int BRANCH_NONE = 0;
+    public static final int BRANCH_N = 1;
+    public static final int BRANCH_Z = 2;
+
+    public static final int SHIFT_SLL8 = PackedEngine.SHIFT_SLL8;
+    public static final int SHIFT_SRA1 = PackedEngine.SHIFT_SRA1;
+
+    public static final class Block {
+        public int[] ops;
+        public int branch = BRANCH_NONE;
+        public int condition;
+        public Block taken;
+        public Block notTaken;
+
+        //Leaves only
+        public int[] registers;
+        public int busC;
+        public int last;
+        public int pending;
+        public int cycles;
+        public int dispatches;
+    }
+
+    public final Block root;
+    public final int maxCycles;
+    private final int[] template;
+    private final BitSet constants;
+    private final int[] values;
+
+    OpcodeSummary(Block root, int[] template, BitSet constants){
+        this.root = root;
+        this.template = template;
+        this.constants = constants;
+        this.values = new int[template.length];
+        this.maxCycles = maxCycles(root);
+    }
+
+    public int slots(){
+        return template.length;
+    }
+
+    /**
+     * @return true when the slot holds a constant, given by {@link #constant(int)}
+     */
+    public boolean isConstant(int slot){
+        return constants.get(slot);
+    }
+
+    public int constant(int slot){
+        return template[slot];
+    }
+
+    private static int maxCycles(Block block){
+        if (block.branch == BRANCH_NONE)
+            return block.cycles;
+        return Math.max(maxCycles(block.taken), maxCycles(block.notTaken));
+    }
+
+    /**
+     * Applies the summary to the registers.
+     * @return the leaf reached, its bus C value is given by {@link #busC(Block)}
+     */
+    Block apply(int[] registers, IOModule memory){
+        final int[] values = this.values;
+        System.arraycopy(template, 0, values, 0, template.length);
+        System.arraycopy(registers, 0, values, 0, MAR + 1);
+
+        Block block = root;
+        while (true){
+            execute(block.ops, values, memory);
+            if (block.branch == BRANCH_NONE)
+                break;
+            int value = values[block.condition];
+            boolean taken = block.branch == BRANCH_N ? value < 0 : value == 0;
+            block = taken ? block.taken : block.notTaken;
+        }
+
+        int[] slots = block.registers;
+        for (int r = 0; r <= MAR; r++)
+            registers[r] = values[slots[r]];
+        return block;
+    }
+
+    int busC(Block leaf){
+        return values[leaf.busC];
+    }
+
+    private static void execute(int[] ops, int[] values, IOModule memory){
+        for (int i = 0; i < ops.length; i += OP_SIZE){
+            switch (ops[i]){
+                case OP_ALU -> {
+                    int control = ops[i + 2];
+                    int value = PackedEngine.alu(control & 0xFF, values[ops[i + 3]], values[ops[i + 4]]);
+                    values[ops[i + 1]] = shift(control >>> 8, value);
+                }
+                case OP_READ -> {
+                    int address = values[ops[i + 2]];
+                    values[ops[i + 1]] = address < 0 ? memory.input() : memory.get32(address);
+                }
+                case OP_WRITE -> {
+                    int address = values[ops[i + 1]];
+                    if (address < 0)
+                        memory.output(values[ops[i + 2]]);
+                    else
+                        memory.set32(address, values[ops[i + 2]]);
+                }
+                case OP_FETCH -> {
+                    byte value = memory.get8(values[ops[i + 3]]);
+                    values[ops[i + 1]] = value;
+                    values[ops[i + 2]] = Byte.toUnsignedInt(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the MIC-1 function code, as given by {@link me.astral.mic.model.ALU#functionCode},
+     * of the operation in the control operand of an {@link #OP_ALU}
+     */
+    public static int function(int control){
+        return switch (control & 0xFF){
+            case PackedEngine.ALU_A -> 0b01_10_00;
+            case PackedEngine.ALU_B -> 0b01_01_00;
+            case PackedEngine.ALU_NOT_A -> 0b01_10_10;
+            case PackedEngine.ALU_NOT_B -> 0b10_11_00;
+            case PackedEngine.ALU_A_PLUS_B -> 0b11_11_00;
+            case PackedEngine.ALU_A_PLUS_B_PLUS_1 -> 0b11_11_01;
+            case PackedEngine.ALU_A_PLUS_1 -> 0b11_10_01;
+            case PackedEngine.ALU_B_PLUS_1 -> 0b11_01_01;
+            case PackedEngine.ALU_B_MINUS_A -> 0b11_11_11;
+            case PackedEngine.ALU_B_MINUS_1 -> 0b11_01_11;
+            case PackedEngine.ALU_MINUS_A -> 0b11_10_11;
+            case PackedEngine.ALU_A_AND_B -> 0b00_11_00;
+            case PackedEngine.ALU_A_OR_B -> 0b01_11_00;
+            case PackedEngine.ALU_ONE -> 0b01_00_01;
+            case PackedEngine.ALU_MINUS_ONE -> 0b01_00_10;
+            default -> 0b01_00_00;
+        };
+    }
+
+    static int shift(int shift, int value){
+        return switch (shift){
+            case PackedEngine.SHIFT_SLL8 -> value << 8;
+            case PackedEngine.SHIFT_SRA1 -> value >> 1;
+            default -> value;
+        };
+    }
+}
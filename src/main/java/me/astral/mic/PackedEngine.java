@@ -0,0 +1,275 @@
+package me.astral.mic;
+
+import me.astral.mic.model.ALU;
+
+import static me.astral.mic.MIC1Machine.*;
+
+/**
+ * Engine running a control store decoded once into one packed {@code long} per word,
+ * so a clock is a few shifts, one switch on the ALU function and a register write mask.
+ */
+class PackedEngine implements MIC1Engine {
+
+    //Word layout
+    static final int NEXT_MASK = 0x1FF;
+    static final int JAM_SHIFT = 9;
+    static final int SHIFTER_SHIFT = 11;
+    static final int ALU_SHIFT = 13;
+    static final int WRITE_SHIFT = 19;
+    static final int MEMORY_SHIFT = 30;
+    static final int BUS_SHIFT = 33;
+
+    static final int JAM_NONE = 0;
+    static final int JAM_N = 1;
+    static final int JAM_Z = 2;
+    static final int JAM_PC = 3;
+
+    static final int SHIFT_NONE = 0;
+    static final int SHIFT_SLL8 = 1;
+    static final int SHIFT_SRA1 = 2;
+
+    static final int ALU_ZERO = 0;
+    static final int ALU_A = 1;
+    static final int ALU_B = 2;
+    static final int ALU_NOT_A = 3;
+    static final int ALU_NOT_B = 4;
+    static final int ALU_A_PLUS_B = 5;
+    static final int ALU_A_PLUS_B_PLUS_1 = 6;
+    static final int ALU_A_PLUS_1 = 7;
+    static final int ALU_B_PLUS_1 = 8;
+    static final int ALU_B_MINUS_A = 9;
+    static final int ALU_B_MINUS_1 = 10;
+    static final int ALU_MINUS_A = 11;
+    static final int ALU_A_AND_B = 12;
+    static final int ALU_A_OR_B = 13;
+    static final int ALU_ONE = 14;
+    static final int ALU_MINUS_ONE = 15;
+
+    //Pending memory operations, same encoding as the MEMORY field
+    static final int PENDING_READ = 1;
+    static final int PENDING_WRITE = 2;
+    static final int PENDING_FETCH = 4;
+
+    final MIC1Instruction[] instructions;
+    final long[] words;
+
+    PackedEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.words = new long[instructions.length];
+        for (int i = 0; i < instructions.length; i++){
+            words[i] = instructions[i] == null ? 0 : pack(instructions[i]);
+        }
+    }
+
+    static long pack(MIC1Instruction instruction){
+        long word = instruction.nextAddress() & NEXT_MASK;
+
+        word |= (long) switch (instruction.jam()){
+            case NONE -> JAM_NONE;
+            case JAMN -> JAM_N;
+            case JAMZ -> JAM_Z;
+            case JMPC -> JAM_PC;
+        } << JAM_SHIFT;
+
+        if (instruction.shifterControl().ssl8())
+            word |= (long) SHIFT_SLL8 << SHIFTER_SHIFT;
+        else if (instruction.shifterControl().sra1())
+            word |= (long) SHIFT_SRA1 << SHIFTER_SHIFT;
+
+        word |= (long) aluOperation(ALU.functionCode(instruction.aluControl())) << ALU_SHIFT;
+        word |= (long) instruction.busCControl().writeMask() << WRITE_SHIFT;
+
+        int memory = switch (instruction.memory()){
+            case READ -> PENDING_READ;
+            case WRITE -> PENDING_WRITE;
+            case NONE -> 0;
+        };
+        if (instruction.fetch())
+            memory |= PENDING_FETCH;
+        word |= (long) memory << MEMORY_SHIFT;
+
+        word |= (long) (instruction.bus() & 0xF) << BUS_SHIFT;
+        return word;
+    }
+
+    //Dense renumbering of the ALU functions so the dispatch compiles to a table switch
+    static int aluOperation(int func){
+        return switch (func){
+            case 0b01_10_00 -> ALU_A;
+            case 0b01_01_00 -> ALU_B;
+            case 0b01_10_10 -> ALU_NOT_A;
+            case 0b10_11_00 -> ALU_NOT_B;
+            case 0b11_11_00 -> ALU_A_PLUS_B;
+            case 0b11_11_01 -> ALU_A_PLUS_B_PLUS_1;
+            case 0b11_10_01 -> ALU_A_PLUS_1;
+            case 0b11_01_01 -> ALU_B_PLUS_1;
+            case 0b11_11_11 -> ALU_B_MINUS_A;
+            case 0b11_01_11 -> ALU_B_MINUS_1;
+            case 0b11_10_11 -> ALU_MINUS_A;
+            case 0b00_11_00 -> ALU_A_AND_B;
+            case 0b01_11_00 -> ALU_A_OR_B;
+            case 0b01_00_01 -> ALU_ONE;
+            case 0b01_00_10 -> ALU_MINUS_ONE;
+            default -> ALU_ZERO;
+        };
+    }
+
+    static int alu(int operation, int a, int b){
+        return switch (operation){
+            case ALU_A -> a;
+            case ALU_B -> b;
+            case ALU_NOT_A -> ~a;
+            case ALU_NOT_B -> ~b;
+            case ALU_A_PLUS_B -> a + b;
+            case ALU_A_PLUS_B_PLUS_1 -> a + b + 1;
+            case ALU_A_PLUS_1 -> a + 1;
+            case ALU_B_PLUS_1 -> b + 1;
+            case ALU_B_MINUS_A -> b - a;
+            case ALU_B_MINUS_1 -> b - 1;
+            case ALU_MINUS_A -> -a;
+            case ALU_A_AND_B -> a & b;
+            case ALU_A_OR_B -> a | b;
+            case ALU_ONE -> 1;
+            case ALU_MINUS_ONE -> -1;
+            default -> 0;
+        };
+    }
+
+    static int pendingOf(MIC1Machine machine){
+        int pending = 0;
+        if (machine.toRead)
+            pending |= PENDING_READ;
+        if (machine.toWrite)
+            pending |= PENDING_WRITE;
+        if (machine.toFetch)
+            pending |= PENDING_FETCH;
+        return pending;
+    }
+
+    static void setPending(MIC1Machine machine, int pending){
+        machine.toRead = (pending & PENDING_READ) != 0;
+        machine.toWrite = (pending & PENDING_WRITE) != 0;
+        machine.toFetch = (pending & PENDING_FETCH) != 0;
+    }
+
+    /**
+     * Leaves the machine where the interpreter stops on a {@link MemoryException}: in the
+     * clock of word {@code mpc}, with its fetch done and its read or write still pending.
+     * @param busC value on bus C in the clock before, only used when {@code executed > 0}
+     */
+    static void abort(MIC1Machine machine, MIC1Instruction[] instructions, int mpc, int pending, int busC, long executed, long retired){
+        machine.MPC = mpc;
+        machine.currentInstruction = instructions[mpc];
+        if (executed > 0){
+            machine.N = busC < 0;
+            machine.Z = busC == 0;
+        }
+        machine.halted = false;
+        machine.retired += retired;
+        setPending(machine, pending & ~PENDING_FETCH);
+    }
+
+    /**
+     * Executes one word: ALU and shifter, then the memory operations left pending by the
+     * previous word, then the bus C writes.
+     * @return the value on bus C
+     */
+    static int execute(long word, int[] registers, IOModule memory, int pending){
+        int bus = (int) (word >>> BUS_SHIFT) & 0xF;
+        int busC = alu((int) (word >>> ALU_SHIFT) & 0x3F, registers[H], bus < 9 ? registers[bus] : 0);
+        switch ((int) (word >>> SHIFTER_SHIFT) & 0x3){
+            case SHIFT_SLL8 -> busC = busC << 8;
+            case SHIFT_SRA1 -> busC = busC >> 1;
+        }
+
+        if (pending != 0){
+            if ((pending & PENDING_FETCH) != 0){
+                byte value = memory.get8(registers[PC]);
+                registers[MBR] = value;
+                registers[MBRU] = Byte.toUnsignedInt(value);
+            }
+            if ((pending & PENDING_READ) != 0){
+                int address = registers[MAR];
+                registers[MDR] = address < 0 ? memory.input() : memory.get32(address);
+            }else if ((pending & PENDING_WRITE) != 0){
+                int address = registers[MAR];
+                if (address < 0)
+                    memory.output(registers[MDR]);
+                else
+                    memory.set32(address, registers[MDR]);
+            }
+        }
+
+        int mask = (int) (word >>> WRITE_SHIFT) & 0x7FF;
+        while (mask != 0){
+            registers[Integer.numberOfTrailingZeros(mask)] = busC;
+            mask &= mask - 1;
+        }
+        return busC;
+    }
+
+    static int next(long word, int[] registers, int busC){
+        int next = (int) word & NEXT_MASK;
+        switch ((int) (word >>> JAM_SHIFT) & 0x3){
+            case JAM_PC -> next |= registers[MBRU];
+            case JAM_N -> next += busC < 0 ? 256 : 0;
+            case JAM_Z -> next += busC == 0 ? 256 : 0;
+        }
+        return next;
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        return run(machine, maxCycles, null);
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        final long[] words = this.words;
+        final int[] registers = machine.registers;
+        final IOModule memory = machine.memory;
+
+        int mpc = machine.MPC;
+        int current = mpc;
+        int pending = pendingOf(machine);
+        int busC = 0;
+        int resolved = 0;
+        boolean halted = false;
+        long executed = 0;
+        long retired = 0;
+
+        try {
+            while (executed < maxCycles){
+                long word = words[mpc];
+                resolved = pending;
+                busC = execute(word, registers, memory, pending);
+                int next = next(word, registers, busC);
+
+                pending = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                current = mpc;
+                halted = next == mpc;
+                mpc = next;
+                executed++;
+                retired += ((int) (word >>> JAM_SHIFT) & 0x3) == JAM_PC ? 1 : 0;
+                if (halted || (stops != null && stops.stopAfter(word, resolved, next, registers, memory)))
+                    break;
+            }
+        } catch (MemoryException e){
+            e.setMPC(mpc);
+            e.addExecuted(executed);
+            abort(machine, instructions, mpc, resolved, busC, executed, retired);
+            throw e;
+        }
+
+        if (executed > 0){
+            machine.MPC = mpc;
+            machine.currentInstruction = instructions[current];
+            machine.N = busC < 0;
+            machine.Z = busC == 0;
+            machine.halted = halted;
+            machine.retired += retired;
+            setPending(machine, pending);
+        }
+        return executed;
+    }
+}
@@ -0,0 +1,300 @@
+package me.astral.mic;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Memory module storing the address space as lazily allocated pages of words.
+ * A byte address {@code b} lives in word {@code b >>> 2}, big endian, exactly as
+ * {@link IOModule#get32(int)} lays it out, so the 2^30 words are split in a
+ * two level table: 1024 tables of 1024 pages of 1024 words (4 KiB).
+ *
+ * Tables and pages are shared copy on write with the modules made by {@link #fork}, a
+ * module copies a table or page the first time it writes to one it does not own.
+ *
+ * The module remembers the pages it took ownership of, so {@link #reset} zeroes only those
+ * and keeps them, with their tables, to reuse for the next run.
+ */
+public class PagedIOModule extends StreamIOModule {
+
+    public static final int PAGE_BITS = 10;
+    public static final int PAGE_WORDS = 1 << PAGE_BITS;
+    public static final int PAGE_BYTES = PAGE_WORDS << 2;
+    private static final int PAGE_MASK = PAGE_WORDS - 1;
+
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    private static final int WORD_MASK = 0x3FFFFFFF;
+
+    private int[][][] directory = new int[TABLE_SIZE][][];
+    //owned[t][p] when page p of table t is not shared, owned[t] null when table t is shared
+    private boolean[][] owned = new boolean[TABLE_SIZE][];
+    private long pages = 0;
+    private long footprintLimit = -1;
+    //Pages owned since the last reset, as word index >>> PAGE_BITS
+    private int[] dirty = new int[16];
+    private int dirtyCount = 0;
+    //Whether tables or pages may be shared with a fork
+    private boolean shared = false;
+    private final ArrayDeque<int[]> spare = new ArrayDeque<>();
+
+    public PagedIOModule(InputStream inputStream, OutputStream outputStream){
+        super(inputStream, outputStream);
+    }
+
+    @Override
+    public int get32(int wordAddress) {
+        int index = wordAddress & WORD_MASK;
+        int[][] table = directory[index >>> (PAGE_BITS + TABLE_BITS)];
+        if (table == null)
+            return 0;
+        int[] page = table[(index >>> PAGE_BITS) & TABLE_MASK];
+        if (page == null)
+            return 0;
+        return page[index & PAGE_MASK];
+    }
+
+    @Override
+    public void set32(int wordAddress, int value) {
+        int index = wordAddress & WORD_MASK;
+        pageFor(index)[index & PAGE_MASK] = value;
+    }
+
+    @Override
+    public byte get8(int byteAddress) {
+        int word = get32(byteAddress >>> 2);
+        return (byte) (word >>> byteShift(byteAddress));
+    }
+
+    @Override
+    public void set8(int byteAddress, byte value) {
+        int index = byteAddress >>> 2;
+        int shift = byteShift(byteAddress);
+        int[] page = pageFor(index);
+        int offset = index & PAGE_MASK;
+        page[offset] = (page[offset] & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+    }
+
+    @Override
+    public void readWords(int wordAddress, int[] words, int offset, int length) {
+        for (int done = 0; done < length;){
+            int index = (wordAddress + done) & WORD_MASK;
+            int n = Math.min(length - done, PAGE_WORDS - (index & PAGE_MASK));
+            int[] page = page(index);
+            if (page == null)
+                Arrays.fill(words, offset + done, offset + done + n, 0);
+            else
+                System.arraycopy(page, index & PAGE_MASK, words, offset + done, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void writeWords(int wordAddress, int[] words, int offset, int length) {
+        for (int done = 0; done < length;){
+            int index = (wordAddress + done) & WORD_MASK;
+            int n = Math.min(length - done, PAGE_WORDS - (index & PAGE_MASK));
+            System.arraycopy(words, offset + done, pageFor(index), index & PAGE_MASK, n);
+            done += n;
+        }
+    }
+
+    @Override
+    public void read(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int n = Math.min(length - done, PAGE_BYTES - (address & (PAGE_BYTES - 1)));
+            int[] page = page(address >>> 2);
+            if (page == null){
+                Arrays.fill(bytes, offset + done, offset + done + n, (byte) 0);
+            }else {
+                for (int i = 0; i < n; i++, address++)
+                    bytes[offset + done + i] = (byte) (page[(address >>> 2) & PAGE_MASK] >>> byteShift(address));
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int n = Math.min(length - done, PAGE_BYTES - (address & (PAGE_BYTES - 1)));
+            int[] page = pageFor(address >>> 2);
+            int from = offset + done;
+            int i = 0;
+            for (; i < n && (address & 3) != 0; i++, address++)
+                setByte(page, address, bytes[from + i]);
+            for (; i + 4 <= n; i += 4, address += 4)
+                page[(address >>> 2) & PAGE_MASK] = (bytes[from + i] & 0xFF) << 24 | (bytes[from + i + 1] & 0xFF) << 16
+                        | (bytes[from + i + 2] & 0xFF) << 8 | (bytes[from + i + 3] & 0xFF);
+            for (; i < n; i++, address++)
+                setByte(page, address, bytes[from + i]);
+            done += n;
+        }
+    }
+
+    /**
+     * Fills the range page by page, without allocating pages for zeros where there are none.
+     */
+    @Override
+    public void fill(int byteAddress, int length, byte value) {
+        int word = (value & 0xFF) * 0x01010101;
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int n = Math.min(length - done, PAGE_BYTES - (address & (PAGE_BYTES - 1)));
+            done += n;
+            if (value == 0 && page(address >>> 2) == null)
+                continue;
+            int[] page = pageFor(address >>> 2);
+            int i = 0;
+            for (; i < n && (address & 3) != 0; i++, address++)
+                setByte(page, address, value);
+            int words = (n - i) >> 2;
+            Arrays.fill(page, (address >>> 2) & PAGE_MASK, ((address >>> 2) & PAGE_MASK) + words, word);
+            i += words << 2;
+            address += words << 2;
+            for (; i < n; i++, address++)
+                setByte(page, address, value);
+        }
+    }
+
+    @Override
+    public void clear() {
+        this.directory = new int[TABLE_SIZE][][];
+        this.owned = new boolean[TABLE_SIZE][];
+        this.pages = 0;
+        this.dirtyCount = 0;
+        this.shared = false;
+    }
+
+    /**
+     * Zeroes the pages written since the last reset and keeps them for reuse, in time
+     * proportional to their number. Once pages are shared with a fork, falls back to {@link #clear}.
+     */
+    @Override
+    public void reset() {
+        resetStreams();
+        if (shared){
+            clear();
+            return;
+        }
+        for (int i = 0; i < dirtyCount; i++){
+            int tableIndex = dirty[i] >>> TABLE_BITS;
+            int pageIndex = dirty[i] & TABLE_MASK;
+            int[] page = directory[tableIndex][pageIndex];
+            Arrays.fill(page, 0);
+            spare.push(page);
+            directory[tableIndex][pageIndex] = null;
+            owned[tableIndex][pageIndex] = false;
+        }
+        pages = 0;
+        dirtyCount = 0;
+    }
+
+    @Override
+    public PagedIOModule fork(InputStream inputStream, OutputStream outputStream) {
+        PagedIOModule copy = new PagedIOModule(inputStream, outputStream);
+        shareWith(copy);
+        return copy;
+    }
+
+    /**
+     * Gives {@code copy} the same tables and pages, owned by neither module from now on.
+     */
+    protected void shareWith(PagedIOModule copy){
+        copy.directory = directory.clone();
+        copy.pages = pages;
+        copy.footprintLimit = footprintLimit;
+        copyStreamState(copy);
+        owned = new boolean[TABLE_SIZE][];
+        dirtyCount = 0;
+        shared = copy.shared = true;
+    }
+
+    /**
+     * Passes the index ({@code wordAddress >>> PAGE_BITS}) of every page that may hold a
+     * non zero word, in no particular order and possibly more than once.
+     */
+    void forEachPage(IntConsumer action){
+        for (int t = 0; t < TABLE_SIZE; t++){
+            int[][] table = directory[t];
+            if (table == null)
+                continue;
+            for (int p = 0; p < TABLE_SIZE; p++)
+                if (table[p] != null)
+                    action.accept(t << TABLE_BITS | p);
+        }
+    }
+
+    @Override
+    public long getFootprint() {
+        return pages * PAGE_BYTES;
+    }
+
+    @Override
+    public void setFootprintLimit(long limit) {
+        this.footprintLimit = limit;
+    }
+
+    @Override
+    public long getFootprintLimit() {
+        return footprintLimit;
+    }
+
+    //Page holding word index for reading, null when never written
+    private int[] page(int index){
+        int[][] table = directory[(index & WORD_MASK) >>> (PAGE_BITS + TABLE_BITS)];
+        return table == null ? null : table[(index >>> PAGE_BITS) & TABLE_MASK];
+    }
+
+    private static void setByte(int[] page, int byteAddress, byte value){
+        int offset = (byteAddress >>> 2) & PAGE_MASK;
+        int shift = byteShift(byteAddress);
+        page[offset] = (page[offset] & ~(0xFF << shift)) | ((value & 0xFF) << shift);
+    }
+
+    private int[] pageFor(int index){
+        int tableIndex = index >>> (PAGE_BITS + TABLE_BITS);
+        int pageIndex = (index >>> PAGE_BITS) & TABLE_MASK;
+        boolean[] ownedPages = owned[tableIndex];
+        if (ownedPages != null && ownedPages[pageIndex])
+            return directory[tableIndex][pageIndex];
+        return ownPage(tableIndex, pageIndex);
+    }
+
+    private int[] ownPage(int tableIndex, int pageIndex){
+        int[][] table = directory[tableIndex];
+        if (owned[tableIndex] == null){
+            table = table == null ? new int[TABLE_SIZE][] : table.clone();
+            directory[tableIndex] = table;
+            owned[tableIndex] = new boolean[TABLE_SIZE];
+        }
+        int[] page = table[pageIndex];
+        if (page == null){
+            if (footprintLimit >= 0 && getFootprint() + PAGE_BYTES > footprintLimit)
+                throw new MemoryQuotaExceededException(getFootprint() + PAGE_BYTES, footprintLimit);
+            pages++;
+            page = spare.isEmpty() ? new int[PAGE_WORDS] : spare.pop();
+        }else {
+            page = page.clone();
+        }
+        table[pageIndex] = page;
+        owned[tableIndex][pageIndex] = true;
+        if (!shared){
+            if (dirtyCount == dirty.length)
+                dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+            dirty[dirtyCount++] = tableIndex << TABLE_BITS | pageIndex;
+        }
+        return page;
+    }
+
+    private static int byteShift(int byteAddress){
+        return (3 - (byteAddress & 3)) << 3;
+    }
+}
@@ -0,0 +1,81 @@
+package me.astral.mic;
+
+import static me.astral.mic.MIC1Machine.*;
+
+/**
+ * The packed engine counting every transition it takes in a {@link MicroProfile}, one
+ * array increment per clock, and every JMPC dispatch in an {@link IJVMProfile}.
+ */
+class ProfilingEngine extends PackedEngine {
+
+    private final long[] edges;
+    private final IJVMProfile ijvm;
+
+    //Either profile may be null
+    ProfilingEngine(MIC1Instruction[] instructions, MicroProfile profile, IJVMProfile ijvm){
+        super(instructions);
+        this.edges = profile == null ? null : profile.edges;
+        this.ijvm = ijvm;
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        final long[] words = this.words;
+        final long[] edges = this.edges;
+        final IJVMProfile ijvm = this.ijvm;
+        final long base = machine.getCycles();
+        final int[] registers = machine.registers;
+        final IOModule memory = machine.memory;
+
+        int mpc = machine.MPC;
+        int current = mpc;
+        int pending = pendingOf(machine);
+        int busC = 0;
+        int resolved = 0;
+        boolean halted = false;
+        long executed = 0;
+        long retired = 0;
+
+        try {
+            while (executed < maxCycles){
+                long word = words[mpc];
+                resolved = pending;
+                int pc = registers[PC];
+                busC = execute(word, registers, memory, pending);
+                int next = next(word, registers, busC);
+                if (edges != null)
+                    edges[mpc * MicroProfile.ADDRESSES + next]++;
+                if (ijvm != null && ((int) (word >>> JAM_SHIFT) & 0x3) == JAM_PC)
+                    ijvm.dispatch(next, pc, base + executed);
+
+                pending = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                current = mpc;
+                halted = next == mpc;
+                mpc = next;
+                executed++;
+                retired += ((int) (word >>> JAM_SHIFT) & 0x3) == JAM_PC ? 1 : 0;
+                if (halted || (stops != null && stops.stopAfter(word, resolved, next, registers, memory)))
+                    break;
+            }
+        } catch (MemoryException e){
+            e.setMPC(mpc);
+            e.addExecuted(executed);
+            abort(machine, instructions, mpc, resolved, busC, executed, retired);
+            throw e;
+        } finally {
+            if (ijvm != null)
+                ijvm.end(base + executed);
+        }
+
+        if (executed > 0){
+            machine.MPC = mpc;
+            machine.currentInstruction = instructions[current];
+            machine.N = busC < 0;
+            machine.Z = busC == 0;
+            machine.halted = halted;
+            machine.retired += retired;
+            setPending(machine, pending);
+        }
+        return executed;
+    }
+}
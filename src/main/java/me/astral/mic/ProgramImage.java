@@ -0,0 +1,197 @@
+package me.astral.mic;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Executable images ({@value #EXTENSION}), a program with its assembled control store in
+ * one file that is mapped and run without parsing or assembling anything.
+ *
+ * The file starts with a header: magic, version, the SHA-256 of the control store as 64
+ * hex digits, checked when the image is mapped, then offset and length of the control store, constant pool, text, initial
+ * input and metadata sections, as longs. Every section starts at an offset aligned to
+ * {@value #ALIGNMENT} bytes, is stored as is and is read as a slice of the mapped file.
+ * The metadata is UTF-8 {@code key=value} lines.
+ */
+public final class ProgramImage {
+
+    public static final int MAGIC = 0x4D494B49; //MIKI
+    public static final int VERSION = 1;
+    public static final String EXTENSION = ".mikimg";
+
+    private static final int ALIGNMENT = 4096;
+    private static final int HASH_LENGTH = 64;
+    private static final int CONTROL_STORE = 0, CONSTANT_POOL = 1, TEXT = 2, INPUT = 3, METADATA = 4, SECTIONS = 5;
+    private static final int HEADER_LENGTH = 8 + HASH_LENGTH + SECTIONS * 16;
+
+    private final String hash;
+    private final ByteBuffer[] sections;
+    private final boolean hasInput;
+    private final Map<String, String> metadata;
+
+    private ProgramImage(String hash, ByteBuffer[] sections, boolean hasInput, Map<String, String> metadata){
+        this.hash = hash;
+        this.sections = sections;
+        this.hasInput = hasInput;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Packs the IJVM binary {@code program} and the assembled {@code controlStore} in
+     * {@code file}, replacing it atomically.
+     * @param input bytes the program reads instead of the standard input, null for none
+     */
+    public static void write(Path file, byte[] program, byte[] controlStore, byte[] input, Map<String, String> metadata) throws IOException {
+        ByteBuffer[] segments = MIC1Runner.segments(ByteBuffer.wrap(program));
+        StringBuilder text = new StringBuilder();
+        metadata.forEach((key, value) -> {
+            if (key.indexOf('=') >= 0 || key.indexOf('\n') >= 0 || value.indexOf('\n') >= 0)
+                throw new IllegalArgumentException("Metadata key or value cannot hold '=' or a newline: " + key);
+            text.append(key).append('=').append(value).append('\n');
+        });
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        sections[CONTROL_STORE] = ByteBuffer.wrap(controlStore);
+        sections[CONSTANT_POOL] = segments[0];
+        sections[TEXT] = segments[1];
+        sections[INPUT] = input == null ? null : ByteBuffer.wrap(input);
+        sections[METADATA] = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.put(ControlStoreRegistry.hash(controlStore).getBytes(StandardCharsets.US_ASCII));
+        long offset = align(HEADER_LENGTH);
+        for (ByteBuffer section : sections){
+            long length = section == null ? -1 : section.remaining();
+            header.putLong(section == null ? 0 : offset).putLong(length);
+            if (section != null)
+                offset = align(offset + length);
+        }
+        header.flip();
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            while (header.hasRemaining())
+                channel.write(header);
+            offset = align(HEADER_LENGTH);
+            for (ByteBuffer section : sections){
+                if (section == null)
+                    continue;
+                long end = offset + section.remaining();
+                while (section.hasRemaining())
+                    channel.write(section, end - section.remaining());
+                offset = align(end);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps an image, the sections but the control store are read lazily from the file.
+     * @throws IllegalArgumentException when the file is not an image of this version, or its
+     * control store does not match the hash in the header
+     */
+    public static ProgramImage map(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.remaining() < HEADER_LENGTH || buffer.getInt() != MAGIC)
+            throw new IllegalArgumentException(file + " is not a program image");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new IllegalArgumentException(file + " is a version " + version + " image, expected " + VERSION);
+        byte[] hash = new byte[HASH_LENGTH];
+        buffer.get(hash);
+
+        ByteBuffer[] sections = new ByteBuffer[SECTIONS];
+        boolean hasInput = false;
+        for (int i = 0; i < SECTIONS; i++){
+            long offset = buffer.getLong();
+            long length = buffer.getLong();
+            if (i == INPUT)
+                hasInput = length >= 0;
+            if (length <= 0){
+                sections[i] = ByteBuffer.allocate(0);
+                continue;
+            }
+            if (offset < 0 || offset + length > buffer.capacity())
+                throw new IllegalArgumentException(file + " is truncated");
+            sections[i] = buffer.slice((int) offset, (int) length);
+        }
+
+        String stored = new String(hash, StandardCharsets.US_ASCII);
+        byte[] microcode = new byte[sections[CONTROL_STORE].remaining()];
+        sections[CONTROL_STORE].duplicate().get(microcode);
+        if (!ControlStoreRegistry.hash(microcode).equals(stored))
+            throw new IllegalArgumentException(file + " holds a control store not matching its hash");
+
+        Map<String, String> metadata = new LinkedHashMap<>();
+        for (String line : StandardCharsets.UTF_8.decode(sections[METADATA].duplicate()).toString().split("\n")){
+            int separator = line.indexOf('=');
+            if (separator > 0)
+                metadata.put(line.substring(0, separator), line.substring(separator + 1));
+        }
+        return new ProgramImage(stored, sections, hasInput, Collections.unmodifiableMap(metadata));
+    }
+
+    /**
+     * @return whether {@code file} starts like an image
+     */
+    public static boolean isImage(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0);
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Loads the program segments straight from the mapped file into {@code memory}.
+     */
+    public MIC1Machine load(IOModule memory){
+        memory.load(RegionIOModule.CONSTANT_POOL_ORIGIN, sections[CONSTANT_POOL].duplicate());
+        memory.load(RegionIOModule.TEXT_ORIGIN, sections[TEXT].duplicate());
+        MIC1Machine machine = new MIC1Machine(memory);
+        machine.loadMicrocode(getControlStore());
+        return machine;
+    }
+
+    public ControlStore getControlStore(){
+        return ControlStoreRegistry.shared().get(hash, getMicrocode());
+    }
+
+    /**
+     * @return the binary control store, as a .mic1 file holds it
+     */
+    public byte[] getMicrocode(){
+        ByteBuffer section = sections[CONTROL_STORE].duplicate();
+        byte[] microcode = new byte[section.remaining()];
+        section.get(microcode);
+        return microcode;
+    }
+
+    /**
+     * @return the initial input, null when the image has none
+     */
+    public ByteBuffer getInput(){
+        return hasInput ? sections[INPUT].duplicate() : null;
+    }
+
+    public Map<String, String> getMetadata(){
+        return metadata;
+    }
+
+    private static long align(long offset){
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+}
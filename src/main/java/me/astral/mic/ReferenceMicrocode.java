@@ -0,0 +1,32 @@
+package me.astral.mic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * The Tanenbaum control store bundled as {@code default.mic1}, the one IJVM semantics
+ * can be hardcoded for.
+ */
+public final class ReferenceMicrocode {
+
+    private static final MIC1Instruction[] INSTRUCTIONS = load();
+
+    private ReferenceMicrocode(){}
+
+    private static MIC1Instruction[] load(){
+        try (InputStream is = ReferenceMicrocode.class.getClassLoader().getResourceAsStream("default.mic1")){
+            if (is == null)
+                throw new IllegalStateException("Missing default.mic1 resource");
+            return ControlStoreRegistry.shared().get(is.readAllBytes()).instructions();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Machines loading default.mic1 through the registry share INSTRUCTIONS, compared by identity first
+    public static boolean matches(MIC1Instruction[] controlStore){
+        return Arrays.equals(INSTRUCTIONS, controlStore);
+    }
+}
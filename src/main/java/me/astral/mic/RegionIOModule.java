@@ -0,0 +1,498 @@
+package me.astral.mic;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Memory module splitting the address space in the regions an IJVM program uses, each
+ * stored in a plain array: the text at byte 0, the constant pool at word {@code BASE_CPP}
+ * (byte {@value #CONSTANT_POOL_ORIGIN}) and the stack and locals growing up from word
+ * {@code BASE_SP}. Everything else falls back to the pages of {@link PagedIOModule}.
+ *
+ * With protection on, text and constant pool are read only and writes outside the stack
+ * region are refused, both with a {@link MemoryFaultException}.
+ *
+ * A {@link #fork} shares the stack page by page and text and constant pool as a whole,
+ * copying them on the first write.
+ *
+ * A {@link #reset} keeps the stack pages and the text and constant pool arrays, and the
+ * next {@link #load} of a program of the same size copies into them.
+ */
+public class RegionIOModule extends PagedIOModule {
+
+    public static final int TEXT_ORIGIN = 0;
+    public static final int CONSTANT_POOL_ORIGIN = MIC1Machine.BASE_CPP << 2;
+    public static final int DEFAULT_STACK_LIMIT = 1 << 20;
+
+    private static final int CONSTANT_POOL_WORD = MIC1Machine.BASE_CPP;
+    private static final int STACK_WORD = MIC1Machine.BASE_SP;
+    private static final int STACK_PAGE_MASK = PAGE_WORDS - 1;
+    private static final int WORD_MASK = 0x3FFFFFFF;
+
+    private static final byte[] NO_TEXT = new byte[0];
+    private static final int[] NO_CONSTANTS = new int[0];
+    //Stack page never written, shared by every module
+    private static final int[] ZERO_PAGE = new int[PAGE_WORDS];
+
+    private byte[] text = NO_TEXT;
+    private boolean textShared = false;
+    private int[] constants = NO_CONSTANTS;
+    private boolean constantsShared = false;
+    //Arrays of the last program, kept by reset for the next load
+    private byte[] spareText;
+    private int[] spareConstants;
+
+    //Stack region as pages below stackWords, ZERO_PAGE until written, the array itself grows by doubling
+    private int[][] stack = new int[0][];
+    private boolean[] stackOwned = new boolean[0];
+    private int stackWords = 0;
+    //Pages written, what the stack counts in the footprint
+    private int stackPages = 0;
+    //Zeroed pages of the last program, kept by reset for the next load
+    private final ArrayDeque<int[]> sparePages = new ArrayDeque<>();
+    private int stackLimit = DEFAULT_STACK_LIMIT;
+    private boolean protection = false;
+
+    public RegionIOModule(InputStream inputStream, OutputStream outputStream){
+        super(inputStream, outputStream);
+    }
+
+    /**
+     * Turns on read only text and constant pool, and faults on writes outside the stack.
+     */
+    public void setProtection(boolean protection) {
+        this.protection = protection;
+    }
+
+    /**
+     * @param words size the stack region may grow to, from word {@code BASE_SP}
+     */
+    public void setStackLimit(int words) {
+        if (words < stackWords)
+            throw new IllegalArgumentException("Stack already holds " + stackWords + " words");
+        this.stackLimit = words;
+    }
+
+    @Override
+    public void load(int origin, byte[] bytes) {
+        load(origin, ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void load(int origin, ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (origin == TEXT_ORIGIN && length <= CONSTANT_POOL_ORIGIN){
+            int size = (length + 3) & ~3;
+            if (textShared || text.length != size)
+                text = spareText != null && spareText.length == size ? spareText : new byte[size];
+            spareText = null;
+            textShared = false;
+            bytes.get(text, 0, length);
+            Arrays.fill(text, length, size, (byte) 0);
+        }else if (origin == CONSTANT_POOL_ORIGIN && length <= (STACK_WORD - CONSTANT_POOL_WORD) << 2){
+            int size = (length + 3) >> 2;
+            if (constantsShared || constants.length != size)
+                constants = spareConstants != null && spareConstants.length == size ? spareConstants : new int[size];
+            spareConstants = null;
+            constantsShared = false;
+            bytes.slice().order(ByteOrder.BIG_ENDIAN).asIntBuffer().get(constants, 0, length >> 2);
+            if ((length & 3) != 0)
+                constants[length >> 2] = 0;
+            for (int i = length & ~3; i < length; i++)
+                constants[i >> 2] |= (bytes.get(bytes.position() + i) & 0xFF) << ((3 - (i & 3)) << 3);
+            bytes.position(bytes.limit());
+        }else {
+            super.load(origin, bytes);
+        }
+    }
+
+    @Override
+    public byte get8(int byteAddress) {
+        if (byteAddress >= 0 && byteAddress < text.length)
+            return text[byteAddress];
+        return get8Outside(byteAddress);
+    }
+
+    private byte get8Outside(int byteAddress){
+        int index = byteAddress >>> 2;
+        if (inConstantPool(index))
+            return byteOf(constants[index - CONSTANT_POOL_WORD], byteAddress);
+        if (inStack(index)){
+            int i = index - STACK_WORD;
+            return i < stackWords ? byteOf(stack[i >>> PAGE_BITS][i & STACK_PAGE_MASK], byteAddress) : 0;
+        }
+        return super.get8(byteAddress);
+    }
+
+    @Override
+    public void set8(int byteAddress, byte value) {
+        if (byteAddress >= 0 && byteAddress < text.length){
+            if (protection)
+                throw new MemoryFaultException("Read only text", byteAddress, true);
+            ownText()[byteAddress] = value;
+            return;
+        }
+        int index = byteAddress >>> 2;
+        int shift = (3 - (byteAddress & 3)) << 3;
+        int mask = ~(0xFF << shift);
+        if (inConstantPool(index)){
+            if (protection)
+                throw new MemoryFaultException("Read only constant pool", byteAddress, true);
+            int i = index - CONSTANT_POOL_WORD;
+            int[] constants = ownConstants();
+            constants[i] = (constants[i] & mask) | ((value & 0xFF) << shift);
+        }else if (inStack(index)){
+            int i = (index - STACK_WORD) & STACK_PAGE_MASK;
+            int[] page = stackPage(index - STACK_WORD);
+            page[i] = (page[i] & mask) | ((value & 0xFF) << shift);
+        }else {
+            if (protection)
+                throw new MemoryFaultException("Outside of the stack", byteAddress, true);
+            super.set8(byteAddress, value);
+        }
+    }
+
+    @Override
+    public int get32(int wordAddress) {
+        int i = (wordAddress & WORD_MASK) - STACK_WORD;
+        if (i >= 0 && i < stackWords)
+            return stack[i >>> PAGE_BITS][i & STACK_PAGE_MASK];
+        return get32Outside(wordAddress);
+    }
+
+    private int get32Outside(int wordAddress){
+        int index = wordAddress & WORD_MASK;
+        if (inStack(index))
+            return 0;
+        if (inConstantPool(index))
+            return constants[index - CONSTANT_POOL_WORD];
+        if (index < text.length >> 2){
+            int b = index << 2;
+            return (text[b] & 0xFF) << 24 | (text[b + 1] & 0xFF) << 16 | (text[b + 2] & 0xFF) << 8 | (text[b + 3] & 0xFF);
+        }
+        return super.get32(wordAddress);
+    }
+
+    @Override
+    public void set32(int wordAddress, int value) {
+        int i = (wordAddress & WORD_MASK) - STACK_WORD;
+        if (i >= 0 && i < stackWords && stackOwned[i >>> PAGE_BITS])
+            stack[i >>> PAGE_BITS][i & STACK_PAGE_MASK] = value;
+        else
+            set32Outside(wordAddress, value);
+    }
+
+    private void set32Outside(int wordAddress, int value){
+        int index = wordAddress & WORD_MASK;
+        int i = index - STACK_WORD;
+        if (inStack(index)){
+            stackPage(i)[i & STACK_PAGE_MASK] = value;
+        }else if (inConstantPool(index)){
+            if (protection)
+                throw new MemoryFaultException("Read only constant pool", index << 2, true);
+            ownConstants()[index - CONSTANT_POOL_WORD] = value;
+        }else if (index < text.length >> 2){
+            if (protection)
+                throw new MemoryFaultException("Read only text", index << 2, true);
+            byte[] text = ownText();
+            int b = index << 2;
+            text[b] = (byte) (value >>> 24);
+            text[b + 1] = (byte) (value >>> 16);
+            text[b + 2] = (byte) (value >>> 8);
+            text[b + 3] = (byte) value;
+        }else {
+            if (protection)
+                throw new MemoryFaultException("Outside of the stack", index << 2, true);
+            super.set32(wordAddress, value);
+        }
+    }
+
+    @Override
+    public void readWords(int wordAddress, int[] words, int offset, int length) {
+        for (int done = 0; done < length;){
+            int index = (wordAddress + done) & WORD_MASK;
+            int to = offset + done;
+            int n;
+            if (index < text.length >> 2){
+                n = Math.min(length - done, (text.length >> 2) - index);
+                ByteBuffer.wrap(text, index << 2, n << 2).asIntBuffer().get(words, to, n);
+            }else if (inConstantPool(index)){
+                n = Math.min(length - done, constants.length - (index - CONSTANT_POOL_WORD));
+                System.arraycopy(constants, index - CONSTANT_POOL_WORD, words, to, n);
+            }else if (inStack(index)){
+                int i = index - STACK_WORD;
+                n = Math.min(Math.min(length - done, PAGE_WORDS - (i & STACK_PAGE_MASK)), stackLimit - i);
+                if (i < stackWords)
+                    System.arraycopy(stack[i >>> PAGE_BITS], i & STACK_PAGE_MASK, words, to, n);
+                else
+                    Arrays.fill(words, to, to + n, 0);
+            }else {
+                n = Math.min(length - done, wordsToRegion(index));
+                super.readWords(index, words, to, n);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void writeWords(int wordAddress, int[] words, int offset, int length) {
+        for (int done = 0; done < length;){
+            int index = (wordAddress + done) & WORD_MASK;
+            int from = offset + done;
+            int n;
+            if (inStack(index)){
+                int i = index - STACK_WORD;
+                n = Math.min(Math.min(length - done, PAGE_WORDS - (i & STACK_PAGE_MASK)), stackLimit - i);
+                System.arraycopy(words, from, stackPage(i), i & STACK_PAGE_MASK, n);
+            }else if (inConstantPool(index)){
+                if (protection)
+                    throw new MemoryFaultException("Read only constant pool", index << 2, true);
+                n = Math.min(length - done, constants.length - (index - CONSTANT_POOL_WORD));
+                System.arraycopy(words, from, ownConstants(), index - CONSTANT_POOL_WORD, n);
+            }else if (index < text.length >> 2){
+                if (protection)
+                    throw new MemoryFaultException("Read only text", index << 2, true);
+                n = Math.min(length - done, (text.length >> 2) - index);
+                ByteBuffer.wrap(ownText(), index << 2, n << 2).asIntBuffer().put(words, from, n);
+            }else {
+                if (protection)
+                    throw new MemoryFaultException("Outside of the stack", index << 2, true);
+                n = Math.min(length - done, wordsToRegion(index));
+                super.writeWords(index, words, from, n);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void read(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int index = address >>> 2;
+            int n;
+            if (address >= 0 && address < text.length){
+                n = Math.min(length - done, text.length - address);
+                System.arraycopy(text, address, bytes, offset + done, n);
+            }else if (inConstantPool(index) || inStack(index)){
+                n = Math.min(length - done, 4 - (address & 3));
+                for (int i = 0; i < n; i++)
+                    bytes[offset + done + i] = get8(address + i);
+            }else {
+                n = (int) Math.min(length - done, ((long) wordsToRegion(index) << 2) - (address & 3));
+                super.read(address, bytes, offset + done, n);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void write(int byteAddress, byte[] bytes, int offset, int length) {
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int index = address >>> 2;
+            int n;
+            if (address >= 0 && address < text.length){
+                if (protection)
+                    throw new MemoryFaultException("Read only text", address, true);
+                n = Math.min(length - done, text.length - address);
+                System.arraycopy(bytes, offset + done, ownText(), address, n);
+            }else if (inConstantPool(index) || inStack(index)){
+                n = Math.min(length - done, 4 - (address & 3));
+                for (int i = 0; i < n; i++)
+                    set8(address + i, bytes[offset + done + i]);
+            }else {
+                if (protection)
+                    throw new MemoryFaultException("Outside of the stack", address, true);
+                n = (int) Math.min(length - done, ((long) wordsToRegion(index) << 2) - (address & 3));
+                super.write(address, bytes, offset + done, n);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void fill(int byteAddress, int length, byte value) {
+        for (int done = 0; done < length;){
+            int address = byteAddress + done;
+            int index = address >>> 2;
+            int n;
+            if (address >= 0 && address < text.length){
+                if (protection)
+                    throw new MemoryFaultException("Read only text", address, true);
+                n = Math.min(length - done, text.length - address);
+                Arrays.fill(ownText(), address, address + n, value);
+            }else if (inConstantPool(index) || inStack(index)){
+                n = Math.min(length - done, 4 - (address & 3));
+                for (int i = 0; i < n; i++)
+                    set8(address + i, value);
+            }else {
+                if (protection)
+                    throw new MemoryFaultException("Outside of the stack", address, true);
+                n = (int) Math.min(length - done, ((long) wordsToRegion(index) << 2) - (address & 3));
+                super.fill(address, n, value);
+            }
+            done += n;
+        }
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        text = NO_TEXT;
+        constants = NO_CONSTANTS;
+        stack = new int[0][];
+        stackOwned = new boolean[0];
+        stackWords = 0;
+        stackPages = 0;
+        sparePages.clear();
+    }
+
+    /**
+     * Zeroes the stack pages in use and keeps them with the program arrays for reuse, then
+     * resets the rest of the memory like {@link PagedIOModule#reset}.
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        if (!textShared)
+            spareText = text;
+        if (!constantsShared)
+            spareConstants = constants;
+        text = NO_TEXT;
+        constants = NO_CONSTANTS;
+        textShared = constantsShared = false;
+        for (int p = 0; p < stackWords >>> PAGE_BITS; p++){
+            if (stackOwned[p]){
+                Arrays.fill(stack[p], 0);
+                sparePages.push(stack[p]);
+            }
+        }
+        Arrays.fill(stack, null);
+        Arrays.fill(stackOwned, false);
+        stackWords = 0;
+        stackPages = 0;
+    }
+
+    @Override
+    public RegionIOModule fork(InputStream inputStream, OutputStream outputStream) {
+        RegionIOModule copy = new RegionIOModule(inputStream, outputStream);
+        shareWith(copy);
+        copy.text = text;
+        copy.constants = constants;
+        copy.textShared = textShared = true;
+        copy.constantsShared = constantsShared = true;
+        copy.stack = stack.clone();
+        copy.stackOwned = new boolean[stack.length];
+        Arrays.fill(stackOwned, false);
+        copy.stackWords = stackWords;
+        copy.stackPages = stackPages;
+        copy.stackLimit = stackLimit;
+        copy.protection = protection;
+        return copy;
+    }
+
+    @Override
+    void forEachPage(IntConsumer action) {
+        super.forEachPage(action);
+        for (int p = 0; p << PAGE_BITS < text.length >> 2; p++)
+            action.accept(p);
+        for (int p = 0; p << PAGE_BITS < constants.length; p++)
+            action.accept((CONSTANT_POOL_WORD >>> PAGE_BITS) + p);
+        for (int p = 0; p < stackWords >>> PAGE_BITS; p++)
+            if (stack[p] != ZERO_PAGE)
+                action.accept((STACK_WORD >>> PAGE_BITS) + p);
+    }
+
+    boolean isProtected() {
+        return protection;
+    }
+
+    int getTextLength() {
+        return text.length;
+    }
+
+    int getConstantPoolLength() {
+        return constants.length << 2;
+    }
+
+    @Override
+    public long getFootprint() {
+        return super.getFootprint() + text.length + ((long) constants.length << 2) + (long) stackPages * PAGE_BYTES;
+    }
+
+    //Words from index, outside of every region, to the next region or the end of the address space
+    private int wordsToRegion(int index){
+        int end = WORD_MASK + 1;
+        if (index < CONSTANT_POOL_WORD && constants.length > 0)
+            end = CONSTANT_POOL_WORD;
+        else if (index < STACK_WORD)
+            end = STACK_WORD;
+        return end - index;
+    }
+
+    private boolean inConstantPool(int index){
+        return index >= CONSTANT_POOL_WORD && index - CONSTANT_POOL_WORD < constants.length;
+    }
+
+    private boolean inStack(int index){
+        return index >= STACK_WORD && index - STACK_WORD < stackLimit;
+    }
+
+    private byte[] ownText(){
+        if (textShared){
+            text = text.clone();
+            textShared = false;
+        }
+        return text;
+    }
+
+    private int[] ownConstants(){
+        if (constantsShared){
+            constants = constants.clone();
+            constantsShared = false;
+        }
+        return constants;
+    }
+
+    //Page holding word i of the stack region, grown and owned
+    private int[] stackPage(int i){
+        int page = i >>> PAGE_BITS;
+        if (i >= stackWords)
+            growStack(page);
+        if (!stackOwned[page]){
+            if (stack[page] == ZERO_PAGE){
+                long limit = getFootprintLimit();
+                if (limit >= 0 && getFootprint() + PAGE_BYTES > limit)
+                    throw new MemoryQuotaExceededException(getFootprint() + PAGE_BYTES, limit);
+                int[] spare = sparePages.poll();
+                stack[page] = spare != null ? spare : new int[PAGE_WORDS];
+                stackPages++;
+            }else {
+                stack[page] = stack[page].clone();
+            }
+            stackOwned[page] = true;
+        }
+        return stack[page];
+    }
+
+    //Extends the stack to page, the pages on the way read as zero and are only counted once written
+    private void growStack(int page){
+        if (page >= stack.length){
+            int maxPages = (int) (((long) stackLimit + PAGE_WORDS - 1) >>> PAGE_BITS);
+            int capacity = Math.min(maxPages, Math.max(page + 1, 2 * stack.length));
+            stack = Arrays.copyOf(stack, capacity);
+            stackOwned = Arrays.copyOf(stackOwned, capacity);
+        }
+        Arrays.fill(stack, stackWords >>> PAGE_BITS, page + 1, ZERO_PAGE);
+        stackWords = (page + 1) << PAGE_BITS;
+    }
+
+    private static byte byteOf(int word, int byteAddress){
+        return (byte) (word >>> ((3 - (byteAddress & 3)) << 3));
+    }
+}
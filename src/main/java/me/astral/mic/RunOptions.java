@@ -0,0 +1,62 @@
+package me.astral.mic;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Singular;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Limits and stop conditions of {@link MIC1Runner#run(MIC1Machine, RunOptions)}.
+ *
+ * The run stops after the first clock that leads to one of the {@code stopAddresses},
+ * after a clock that makes a register condition true, changes one of the watched words
+ * or brings the output to {@code maxOutputBytes} bytes. Conditions on registers and memory
+ * are only evaluated after clocks that may change them.
+ *
+ * A memory module allocating more than {@code maxFootprint} bytes aborts the clock it is in,
+ * the run then stops with {@link StopReason#MEMORY_QUOTA} and the machine cannot be resumed.
+ *
+ * With {@code checkpointEvery} set, slices end on every multiple of it in machine cycles
+ * and {@code checkpoint} is called there, for instance to write a {@link Checkpoint}.
+ */
+@Getter
+@Builder
+public class RunOptions {
+
+    @Builder.Default
+    private final long maxCycles = Long.MAX_VALUE;
+
+    private final Duration timeout;
+
+    @Singular
+    private final Set<Integer> stopAddresses;
+
+    @Singular
+    private final List<RegisterCondition> registerConditions;
+
+    @Singular
+    private final Set<Integer> watchedWords;
+
+    @Builder.Default
+    private final long maxOutputBytes = -1;
+
+    //Bytes of memory the machine may allocate, see IOModule#setFootprintLimit
+    @Builder.Default
+    private final long maxFootprint = -1;
+
+    //Calls checkpoint whenever the machine cycles reach a multiple of checkpointEvery
+    @Builder.Default
+    private final long checkpointEvery = -1;
+
+    private final Consumer<MIC1Machine> checkpoint;
+
+    //Records input and output with their cycle, needs a stream backed memory module
+    private final IOJournal journal;
+
+    public record RegisterCondition(int register, IntPredicate predicate){}
+}
@@ -0,0 +1,10 @@
+package me.astral.mic;
+
+/**
+ * Outcome of {@link MIC1Runner#run(MIC1Machine, RunOptions)}.
+ * @param cycles clocks executed by this run
+ * @param instructions JMPC dispatches, so IJVM instructions with the reference microcode
+ * @param fault the access that stopped the run on {@link StopReason#MEMORY_FAULT}, null otherwise
+ */
+public record RunResult(long cycles, StopReason reason, long instructions, long elapsedNanos, MemoryFaultException fault) {
+}
@@ -0,0 +1,136 @@
+package me.astral.mic;
+
+import java.util.List;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Stop conditions of a run compiled for the engines: a table of MPCs, and the register
+ * writes and memory operations after which registers, memory and output have to be checked.
+ * A journal makes the engines also return after every clock doing I/O.
+ * Engines working on packed words test those against the word they just executed, the others
+ * call {@link #stopAfterClock(MIC1Machine)}.
+ */
+public final class StopConditions {
+
+    private final boolean[] addresses = new boolean[512];
+    private long wordTrigger;
+    private int pendingTrigger;
+
+    private RunOptions.RegisterCondition[] registerConditions = new RunOptions.RegisterCondition[0];
+    private int[] watchedWords = new int[0];
+    private int[] watchedValues = new int[0];
+    private StreamIOModule output;
+    private long outputLimit;
+    private IOJournal journal;
+
+    private StopReason reason;
+
+    private StopConditions(){}
+
+    //Stops when reaching the address, nothing else
+    static StopConditions at(int address){
+        StopConditions conditions = new StopConditions();
+        conditions.addresses[address] = true;
+        return conditions;
+    }
+
+    /**
+     * @return the conditions, null when the options have none
+     */
+    static StopConditions compile(RunOptions options, MIC1Machine machine){
+        if (options.getStopAddresses().isEmpty() && options.getRegisterConditions().isEmpty()
+                && options.getWatchedWords().isEmpty() && options.getMaxOutputBytes() < 0
+                && options.getJournal() == null)
+            return null;
+
+        StopConditions conditions = new StopConditions();
+        for (int address : options.getStopAddresses())
+            conditions.addresses[address & 0x1FF] = true;
+
+        List<RunOptions.RegisterCondition> registerConditions = options.getRegisterConditions();
+        conditions.registerConditions = registerConditions.toArray(new RunOptions.RegisterCondition[0]);
+        for (RunOptions.RegisterCondition condition : registerConditions){
+            int register = condition.register();
+            conditions.wordTrigger |= (1L << register) << WRITE_SHIFT;
+            if (register == MDR)
+                conditions.pendingTrigger |= PENDING_READ;
+            if (register == MBR || register == MBRU)
+                conditions.pendingTrigger |= PENDING_FETCH;
+        }
+
+        conditions.watchedWords = options.getWatchedWords().stream().mapToInt(Integer::intValue).toArray();
+        conditions.watchedValues = new int[conditions.watchedWords.length];
+        for (int i = 0; i < conditions.watchedWords.length; i++)
+            conditions.watchedValues[i] = machine.memory.get32(conditions.watchedWords[i]);
+        if (conditions.watchedWords.length > 0)
+            conditions.pendingTrigger |= PENDING_WRITE;
+
+        if (options.getMaxOutputBytes() >= 0){
+            if (!(machine.memory instanceof StreamIOModule stream))
+                throw new IllegalArgumentException("Output limit needs a stream backed memory module");
+            conditions.output = stream;
+            conditions.outputLimit = stream.getBytesWritten() + options.getMaxOutputBytes();
+            conditions.pendingTrigger |= PENDING_WRITE;
+        }
+
+        if (options.getJournal() != null){
+            conditions.journal = options.getJournal();
+            conditions.pendingTrigger |= PENDING_READ | PENDING_WRITE;
+        }
+        return conditions;
+    }
+
+    /**
+     * Checks the conditions after a clock of a packed engine.
+     * @param word the word just executed
+     * @param pending the memory operations it resolved
+     * @param next the next MPC
+     */
+    boolean stopAfter(long word, int pending, int next, int[] registers, IOModule memory){
+        if (addresses[next]){
+            reason = StopReason.MPC;
+            return true;
+        }
+        if ((word & wordTrigger) == 0 && (pending & pendingTrigger) == 0)
+            return false;
+        return check(registers, memory);
+    }
+
+    /**
+     * Checks every condition against the machine, for engines without access to the word executed.
+     */
+    public boolean stopAfterClock(MIC1Machine machine){
+        if (addresses[machine.MPC]){
+            reason = StopReason.MPC;
+            return true;
+        }
+        return check(machine.registers, machine.memory);
+    }
+
+    private boolean check(int[] registers, IOModule memory){
+        for (RunOptions.RegisterCondition condition : registerConditions){
+            if (condition.predicate().test(registers[condition.register()])){
+                reason = StopReason.REGISTER;
+                return true;
+            }
+        }
+        for (int i = 0; i < watchedWords.length; i++){
+            if (memory.get32(watchedWords[i]) != watchedValues[i]){
+                reason = StopReason.MEMORY;
+                return true;
+            }
+        }
+        if (output != null && output.getBytesWritten() >= outputLimit){
+            reason = StopReason.OUTPUT;
+            return true;
+        }
+        //Hands the clock back to the runner to stamp the events, without a reason
+        return journal != null && journal.hasPending();
+    }
+
+    public StopReason getReason(){
+        return reason;
+    }
+}
@@ -0,0 +1,13 @@
+package me.astral.mic;
+
+public enum StopReason {
+    HALTED,
+    MAX_CYCLES,
+    TIMEOUT,
+    MPC,
+    REGISTER,
+    MEMORY,
+    OUTPUT,
+    MEMORY_QUOTA,
+    MEMORY_FAULT
+}
@@ -0,0 +1,209 @@
+package me.astral.mic;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * Memory module reading and writing the machine's I/O through streams.
+ *
+ * Output is unbuffered by default, every byte written and flushed on its own. With
+ * {@link #bufferOutput(int)} it is collected and written out when the buffer is full,
+ * before a read from the input that may block, when the machine halts, on newline if
+ * {@link #setFlushOnNewline asked} and once the {@link #setFlushInterval interval}
+ * since the last flush went by.
+ *
+ * The input can be {@link #setInput(ByteBuffer) preloaded} or mapped from a file instead of
+ * read from the stream byte by byte.
+ */
+public abstract class StreamIOModule implements IOModule {
+
+    protected InputStream inputStream;
+    protected OutputStream outputStream;
+    long bytesWritten = 0;
+    long bytesRead = 0;
+
+    private byte[] buffer;
+    private int buffered = 0;
+    private boolean flushOnNewline = false;
+    private long flushInterval = -1;
+    private long lastFlush = System.nanoTime();
+    //Bytes the input can give without blocking, as last reported
+    private int readable = 0;
+    //Whole input, read instead of the stream when set
+    private ByteBuffer preloaded;
+    IOJournal journal;
+
+    protected StreamIOModule(InputStream inputStream, OutputStream outputStream){
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+    }
+
+    /**
+     * Serves the input from {@code input}, from its position on, instead of the input stream.
+     */
+    public void setInput(ByteBuffer input) {
+        this.preloaded = input;
+    }
+
+    /**
+     * Serves the input from the content of {@code file}, memory mapped.
+     */
+    public void setInput(Path file) throws IOException {
+        setInput(file, 0);
+    }
+
+    /**
+     * Serves the input from the content of {@code file}, memory mapped, from byte {@code position} on.
+     */
+    public void setInput(Path file, long position) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+            ByteBuffer input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            setInput(input.position((int) Math.min(position, input.limit())));
+        }
+    }
+
+    /**
+     * @param size bytes of output held before writing them out, 0 to write every byte at once
+     */
+    public void bufferOutput(int size) {
+        flush();
+        this.buffer = size > 0 ? new byte[size] : null;
+    }
+
+    public void setFlushOnNewline(boolean flushOnNewline) {
+        this.flushOnNewline = flushOnNewline;
+    }
+
+    /**
+     * @param interval longest time buffered output may wait, null for no limit
+     */
+    public void setFlushInterval(Duration interval) {
+        this.flushInterval = interval == null ? -1 : interval.toNanos();
+    }
+
+    @Override
+    public void output(int data) {
+        bytesWritten++;
+        if (journal != null)
+            journal.output(data);
+        if (buffer == null){
+            write(data);
+            return;
+        }
+        buffer[buffered++] = (byte) data;
+        if (buffered == buffer.length || (flushOnNewline && (data & 0xFF) == '\n')
+                || (flushInterval >= 0 && System.nanoTime() - lastFlush >= flushInterval))
+            flush();
+    }
+
+    @Override
+    public void flush() {
+        if (buffered == 0)
+            return;
+        try {
+            this.outputStream.write(buffer, 0, buffered);
+            this.outputStream.flush();
+        }catch (IOException e){
+            e.printStackTrace();
+        }
+        buffered = 0;
+        lastFlush = System.nanoTime();
+    }
+
+    /**
+     * Flushes when the flush interval went by, to call while the machine runs without
+     * writing.
+     */
+    public void flushIfDue() {
+        if (buffered > 0 && flushInterval >= 0 && System.nanoTime() - lastFlush >= flushInterval)
+            flush();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    public int input() {
+        int data;
+        if (preloaded != null){
+            data = preloaded.hasRemaining() ? preloaded.get() & 0xFF : -1;
+        }else {
+            try {
+                if (buffered > 0 && readable == 0 && (readable = inputStream.available()) == 0)
+                    flush();
+                data = this.inputStream.read();
+                if (readable > 0)
+                    readable--;
+            } catch (IOException e) {
+                e.printStackTrace();
+                data = -1;
+            }
+        }
+        if (data >= 0)
+            bytesRead++;
+        if (journal != null)
+            journal.input(data);
+        return data;
+    }
+
+    /**
+     * Forgets the I/O of the last run, positions, pending output and preloaded input, then
+     * clears the memory. Output buffering settings are kept.
+     */
+    @Override
+    public void reset() {
+        resetStreams();
+        clear();
+    }
+
+    /**
+     * Resets the module, then reads and writes {@code inputStream} and {@code outputStream}.
+     */
+    public void reset(InputStream inputStream, OutputStream outputStream) {
+        this.inputStream = inputStream;
+        this.outputStream = outputStream;
+        reset();
+    }
+
+    protected void resetStreams(){
+        bytesWritten = 0;
+        bytesRead = 0;
+        buffered = 0;
+        readable = 0;
+        lastFlush = System.nanoTime();
+        preloaded = null;
+        journal = null;
+    }
+
+    /**
+     * Gives {@code copy} the same stream positions, output buffering and preloaded input.
+     */
+    protected void copyStreamState(StreamIOModule copy){
+        copy.bytesWritten = bytesWritten;
+        copy.bytesRead = bytesRead;
+        copy.buffer = buffer == null ? null : new byte[buffer.length];
+        copy.flushOnNewline = flushOnNewline;
+        copy.flushInterval = flushInterval;
+        copy.preloaded = preloaded == null ? null : preloaded.duplicate();
+    }
+
+    private void write(int data){
+        try{
+            this.outputStream.write(data & 0xFF);
+            this.outputStream.flush();
+        }catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+}
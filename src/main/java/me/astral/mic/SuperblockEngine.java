@@ -0,0 +1,116 @@
+package me.astral.mic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Engine fusing straight-line microcode into superblocks. Starting from any address,
+ * a block follows plain {@code goto}s until a JAM, a halt or an already visited word.
+ * Inside a block the successor of every word and the memory operations it leaves to
+ * the next one are known, so halting, budget and JAM are only checked once per block.
+ * Every block accounts for exactly as many cycles as it has words.
+ */
+class SuperblockEngine implements MIC1Engine {
+
+    private static final int MAX_BLOCK_LENGTH = 32;
+
+    private final MIC1Instruction[] instructions;
+    private final PackedEngine packed;
+    private final long[] words;
+    private final int[][] blocks;
+
+    SuperblockEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.packed = new PackedEngine(instructions);
+        this.words = packed.words;
+        this.blocks = new int[words.length][];
+        for (int i = 0; i < words.length; i++){
+            blocks[i] = superblock(i);
+        }
+    }
+
+    private int[] superblock(int start){
+        List<Integer> addresses = new ArrayList<>();
+        int address = start;
+        addresses.add(address);
+        while (addresses.size() < MAX_BLOCK_LENGTH){
+            long word = words[address];
+            int next = (int) word & NEXT_MASK;
+            if (((int) (word >>> JAM_SHIFT) & 0x3) != JAM_NONE || next == address || addresses.contains(next))
+                break;
+            address = next;
+            addresses.add(address);
+        }
+        return addresses.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        final long[] words = this.words;
+        final int[] registers = machine.registers;
+        final IOModule memory = machine.memory;
+
+        int mpc = machine.MPC;
+        int current = mpc;
+        int pending = pendingOf(machine);
+        int busC = 0;
+        boolean halted = false;
+        long executed = 0;
+        long retired = 0;
+        //Word of the block running
+        int step = 0;
+
+        try {
+            while (executed < maxCycles){
+                int[] block = blocks[mpc];
+                int length = (int) Math.min(block.length, maxCycles - executed);
+
+                //Straight-line part, the successor is the next word of the block
+                int last = length - 1;
+                for (step = 0; step < last; step++){
+                    long word = words[block[step]];
+                    busC = execute(word, registers, memory, pending);
+                    pending = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                }
+
+                long word = words[block[last]];
+                busC = execute(word, registers, memory, pending);
+                int next = next(word, registers, busC);
+
+                pending = (int) (word >>> MEMORY_SHIFT) & 0x7;
+                current = block[last];
+                halted = next == current;
+                mpc = next;
+                executed += length;
+                retired += ((int) (word >>> JAM_SHIFT) & 0x3) == JAM_PC ? 1 : 0;
+                if (halted)
+                    break;
+            }
+        } catch (MemoryException e){
+            //MPC is only moved at the end of a block
+            e.setMPC(blocks[mpc][step]);
+            e.addExecuted(executed + step);
+            abort(machine, instructions, blocks[mpc][step], pending, busC, executed + step, retired);
+            throw e;
+        }
+
+        if (executed > 0){
+            machine.MPC = mpc;
+            machine.currentInstruction = instructions[current];
+            machine.N = busC < 0;
+            machine.Z = busC == 0;
+            machine.halted = halted;
+            machine.retired += retired;
+            setPending(machine, pending);
+        }
+        return executed;
+    }
+
+    //Stops can be met inside a block
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        return stops == null ? run(machine, maxCycles) : packed.run(machine, maxCycles, stops);
+    }
+}
@@ -0,0 +1,89 @@
+package me.astral.mic;
+
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Engine applying the opcode summaries found by the {@link MicrocodeAnalyzer}, so it works
+ * with any control store, custom opcodes included. Summaries are computed the first time an
+ * opcode is dispatched with given pending memory operations. Opcodes without summary, and
+ * anything that does not fit in the remaining cycle budget, go through the packed engine
+ * until {@code Main1} is back. A {@link MemoryException} in a summary leaves the registers
+ * as they were at {@code Main1}, the opcode then runs again through the packed engine and
+ * faults on the same clock as the interpreter.
+ */
+class SymbolicEngine implements MIC1Engine {
+
+    private final MIC1Instruction[] instructions;
+    private final PackedEngine microcode;
+    private final MicrocodeAnalyzer analyzer;
+    private final int main;
+    private final StopConditions atMain;
+
+    //Indexed by pending operations then opcode
+    private final OpcodeSummary[][] summaries = new OpcodeSummary[8][256];
+    private final boolean[][] analyzed = new boolean[8][256];
+
+    SymbolicEngine(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+        this.microcode = new PackedEngine(instructions);
+        this.analyzer = new MicrocodeAnalyzer(instructions);
+        this.main = analyzer.main();
+        this.atMain = main >= 0 ? StopConditions.at(main) : null;
+    }
+
+    private OpcodeSummary summary(int opcode, int pending){
+        if (!analyzed[pending][opcode]){
+            summaries[pending][opcode] = analyzer.analyze(opcode, pending);
+            analyzed[pending][opcode] = true;
+        }
+        return summaries[pending][opcode];
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        final int[] registers = machine.registers;
+        final IOModule memory = machine.memory;
+
+        long executed = 0;
+        try {
+            while (executed < maxCycles){
+                if (machine.MPC == main){
+                    int pending = pendingOf(machine);
+                    int opcode = (pending & PENDING_FETCH) != 0 ? Byte.toUnsignedInt(memory.get8(registers[MIC1Machine.PC])) : registers[MIC1Machine.MBRU];
+                    OpcodeSummary summary = summary(opcode, pending);
+                    OpcodeSummary.Block leaf = null;
+                    try {
+                        if (summary != null && summary.maxCycles <= maxCycles - executed)
+                            leaf = summary.apply(registers, memory);
+                    } catch (MemoryException e){
+                        //Registers are only written at the leaf, the microcode runs the opcode again
+                    }
+                    if (leaf != null){
+                        int busC = summary.busC(leaf);
+                        executed += leaf.cycles;
+                        machine.currentInstruction = instructions[leaf.last];
+                        machine.N = busC < 0;
+                        machine.Z = busC == 0;
+                        machine.halted = false;
+                        machine.retired += leaf.dispatches;
+                        setPending(machine, leaf.pending);
+                        continue;
+                    }
+                }
+                executed += microcode.run(machine, maxCycles - executed, atMain);
+                if (machine.halted)
+                    break;
+            }
+        } catch (MemoryException e){
+            e.addExecuted(executed);
+            throw e;
+        }
+        return executed;
+    }
+
+    //Summaries apply a whole opcode at once
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        return stops == null ? run(machine, maxCycles) : microcode.run(machine, maxCycles, stops);
+    }
+}
@@ -0,0 +1,140 @@
+package me.astral.mic;
+
+import me.astral.mic.jit.CompiledLoop;
+import me.astral.mic.jit.LoopCompiler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.PackedEngine.*;
+
+/**
+ * Engine running IJVM programs in two tiers when the reference control store is loaded.
+ *
+ * Instructions go through the packed microcode engine one {@code Main1} to the next, while
+ * taken backward branches are counted by target, as are the targets of calls and returns.
+ * Once a target reaches {@link #HOT_LOOP_THRESHOLD} the loop it closes, or the code following
+ * a call or return target, is compiled by the {@link LoopCompiler} and entered every time the
+ * machine is back at {@code Main1} on one of its instructions, the latest compilation winning.
+ * Compiled code returns to the microcode on IN, OUT, calls, returns and any jump out of it.
+ * A {@link MemoryException} in compiled code takes the machine back to the start of the
+ * instruction making the access, which then runs again through the microcode and faults on
+ * the same clock as the interpreter.
+ */
+class TieredEngine implements MIC1Engine {
+
+    static final int HOT_LOOP_THRESHOLD = 50;
+
+    private final MIC1Instruction[] instructions;
+    private final PackedEngine microcode;
+    private final LoopCompiler compiler;
+    private final int main;
+    private final StopConditions atMain;
+
+    private final Map<Integer, Integer> targets = new HashMap<>();
+    private final Map<Integer, CompiledLoop> loops = new HashMap<>();
+    private final int[] state = new int[CompiledLoop.STATE_SIZE];
+
+    TieredEngine(MIC1Instruction[] instructions){
+        MicrocodeAnalyzer analyzer = new MicrocodeAnalyzer(instructions);
+        this.instructions = instructions;
+        this.microcode = new PackedEngine(instructions);
+        this.compiler = new LoopCompiler(analyzer);
+        this.main = analyzer.main();
+        this.atMain = StopConditions.at(main);
+    }
+
+    @Override
+    public long run(MIC1Machine machine, long maxCycles) {
+        long executed = 0;
+        try {
+            while (executed < maxCycles){
+                if (machine.MPC != main){
+                    executed += microcode.run(machine, maxCycles - executed, atMain);
+                }else {
+                    CompiledLoop loop = loops.get(machine.registers[PC]);
+                    long cycles = loop != null ? runCompiled(loop, machine, maxCycles - executed) : 0;
+                    executed += cycles > 0 ? cycles : interpret(machine, maxCycles - executed);
+                }
+                if (machine.halted)
+                    break;
+            }
+        } catch (MemoryException e){
+            e.addExecuted(executed);
+            throw e;
+        }
+        return executed;
+    }
+
+    //Compiled loops keep the registers in locals until they leave
+    @Override
+    public long run(MIC1Machine machine, long maxCycles, StopConditions stops) {
+        return stops == null ? run(machine, maxCycles) : microcode.run(machine, maxCycles, stops);
+    }
+
+    //Compiled loops and counts are keyed by text offset, they belong to the program run
+    @Override
+    public void reset() {
+        targets.clear();
+        loops.clear();
+    }
+
+    //One instruction in the microcode, counting it if it jumps backward, calls or returns
+    private long interpret(MIC1Machine machine, long budget){
+        int pc = machine.registers[PC];
+        int opcode = machine.toFetch ? Byte.toUnsignedInt(machine.memory.get8(pc)) : machine.registers[MBRU];
+        long cycles = microcode.run(machine, budget, atMain);
+        if (machine.MPC != main)
+            return cycles;
+
+        int target = machine.registers[PC];
+        switch (opcode){
+            case GOTO, IFEQ, IFLT, IF_ICMPEQ -> {
+                if (target < pc)
+                    count(machine, target, pc + 3);
+            }
+            case INVOKEVIRTUAL, IRETURN -> count(machine, target, target + LoopCompiler.MAX_LOOP_BYTES);
+        }
+        return cycles;
+    }
+
+    //Compiled from the state the machine has at the target
+    private void count(MIC1Machine machine, int target, int end){
+        if (targets.merge(target, 1, Integer::sum) == HOT_LOOP_THRESHOLD){
+            int pending = pendingOf(machine);
+            CompiledLoop loop = compiler.compile(machine.memory, target, end, pending);
+            if (loop != null){
+                for (int instruction : compiler.instructions(machine.memory, target, end, pending))
+                    loops.put(instruction, loop);
+            }
+        }
+    }
+
+    private long runCompiled(CompiledLoop loop, MIC1Machine machine, long budget){
+        final int[] registers = machine.registers;
+        final IOModule memory = machine.memory;
+
+        //Compiled code dispatches on the opcode at PC
+        if (!machine.toFetch && registers[MBRU] != Byte.toUnsignedInt(memory.get8(registers[PC])))
+            return 0;
+        state[CompiledLoop.PENDING] = pendingOf(machine);
+
+        long executed;
+        try {
+            executed = loop.run(registers, state, memory, Math.min(budget, Integer.MAX_VALUE));
+        } catch (MemoryException e){
+            //Left at the Main1 of the instruction making the access, the microcode runs it again
+            executed = state[CompiledLoop.EXECUTED];
+        }
+        setPending(machine, state[CompiledLoop.PENDING]);
+        if (executed > 0){
+            machine.currentInstruction = instructions[state[CompiledLoop.CURRENT]];
+            machine.N = state[CompiledLoop.BUS_C] < 0;
+            machine.Z = state[CompiledLoop.BUS_C] == 0;
+            machine.retired += state[CompiledLoop.RETIRED];
+        }
+        return executed;
+    }
+}
@@ -0,0 +1,161 @@
+package me.astral.mic.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file with a constant pool, interfaces and methods with their exception tables, nothing more.
+ * Classes are emitted as version 49 so no StackMapTable has to be computed,
+ * the type inferencing verifier takes care of the generated branches.
+ */
+final class ClassFileWriter {
+
+    private static final int VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    /**
+     * An exception table entry, {@code start} included and {@code end} excluded, catching the
+     * {@link #classRef(String) class} {@code catchType}.
+     */
+    record Handler(int start, int end, int handler, int catchType){}
+
+    private record Method(int access, int name, int descriptor, int maxStack, int maxLocals, byte[] code, Handler[] handlers){}
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+
+    private final List<Method> methods = new ArrayList<>();
+    private final int codeAttribute = utf8("Code");
+
+    int utf8(String value){
+        return entry("U" + value, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int integer(int value){
+        return entry("I" + value, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int classRef(String internalName){
+        int name = utf8(internalName);
+        return entry("C" + internalName, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor){
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor){
+        return memberRef(11, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor){
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + ":" + descriptor, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    void method(int access, String name, String descriptor, int maxStack, int maxLocals, byte[] code, Handler... handlers){
+        methods.add(new Method(access, utf8(name), utf8(descriptor), maxStack, maxLocals, code, handlers));
+    }
+
+    byte[] toByteArray(String name, String superName, String... interfaces){
+        int thisClass = classRef(name);
+        int superClass = classRef(superName);
+        int[] interfaceIndexes = new int[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++)
+            interfaceIndexes[i] = classRef(interfaces[i]);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaceIndexes.length);
+            for (int index : interfaceIndexes)
+                out.writeShort(index);
+
+            out.writeShort(0); //fields
+            out.writeShort(methods.size());
+            for (Method method : methods){
+                out.writeShort(method.access());
+                out.writeShort(method.name());
+                out.writeShort(method.descriptor());
+                out.writeShort(1);
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + method.code().length + 8 * method.handlers().length);
+                out.writeShort(method.maxStack());
+                out.writeShort(method.maxLocals());
+                out.writeInt(method.code().length);
+                out.write(method.code());
+                out.writeShort(method.handlers().length);
+                for (Handler handler : method.handlers()){
+                    out.writeShort(handler.start());
+                    out.writeShort(handler.end());
+                    out.writeShort(handler.handler());
+                    out.writeShort(handler.catchType());
+                }
+                out.writeShort(0); //attributes
+            }
+            out.writeShort(0); //class attributes
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface EntryWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private int entry(String key, EntryWriter writer){
+        Integer index = entries.get(key);
+        if (index != null)
+            return index;
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.put(key, poolCount);
+        return poolCount++;
+    }
+}
@@ -0,0 +1,228 @@
+package me.astral.mic.jit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Minimal bytecode buffer with forward and backward labels.
+ */
+final class CodeBuilder {
+
+    static final int ICONST_M1 = 0x02;
+    static final int ICONST_0 = 0x03;
+    static final int LCONST_0 = 0x09;
+    static final int LCONST_1 = 0x0A;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int LLOAD = 0x16;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2E;
+    static final int ISTORE = 0x36;
+    static final int LSTORE = 0x37;
+    static final int IASTORE = 0x4F;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int LADD = 0x61;
+    static final int ISUB = 0x64;
+    static final int LSUB = 0x65;
+    static final int INEG = 0x74;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7A;
+    static final int IAND = 0x7E;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+    static final int I2L = 0x85;
+    static final int L2I = 0x88;
+    static final int LCMP = 0x94;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IF_ICMPEQ = 0x9F;
+    static final int IF_ICMPNE = 0xA0;
+    static final int GOTO = 0xA7;
+    static final int LOOKUPSWITCH = 0xAB;
+    static final int LRETURN = 0xAD;
+    static final int RETURN = 0xB1;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKEINTERFACE = 0xB9;
+    static final int ATHROW = 0xBF;
+    static final int GOTO_W = 0xC8;
+
+    static final class Label {
+        private int position = -1;
+        private final List<int[]> fixups = new ArrayList<>();
+    }
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+
+    Label newLabel(){
+        return new Label();
+    }
+
+    void mark(Label label){
+        label.position = length;
+        for (int[] fixup : label.fixups){
+            patch(label, fixup[0], fixup[1], fixup[2] == 1);
+        }
+        label.fixups.clear();
+    }
+
+    void op(int opcode){
+        u1(opcode);
+    }
+
+    void iconst(int value){
+        if (value >= -1 && value <= 5){
+            op(ICONST_0 + value);
+        }else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE){
+            op(BIPUSH);
+            u1(value);
+        }else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE){
+            op(SIPUSH);
+            u2(value);
+        }else {
+            throw new IllegalArgumentException("Constant out of range: " + value);
+        }
+    }
+
+    void ldc(int constant){
+        op(LDC_W);
+        u2(constant);
+    }
+
+    void iload(int local){
+        local(ILOAD, local);
+    }
+
+    void istore(int local){
+        local(ISTORE, local);
+    }
+
+    void lload(int local){
+        local(LLOAD, local);
+    }
+
+    void lstore(int local){
+        local(LSTORE, local);
+    }
+
+    void iinc(int local, int delta){
+        op(IINC);
+        u1(local);
+        u1(delta);
+    }
+
+    void aload(int local){
+        local(ALOAD, local);
+    }
+
+    private void local(int opcode, int local){
+        op(opcode);
+        u1(local);
+    }
+
+    void jump(int opcode, Label target){
+        int start = length;
+        op(opcode);
+        reference(target, start, false);
+    }
+
+    void gotoWide(Label target){
+        int start = length;
+        op(GOTO_W);
+        reference(target, start, true);
+    }
+
+    //Keys in increasing order
+    void lookupSwitch(Label fallback, int[] keys, Label[] targets){
+        int start = length;
+        op(LOOKUPSWITCH);
+        while (length % 4 != 0)
+            u1(0);
+        reference(fallback, start, true);
+        u4(keys.length);
+        for (int i = 0; i < keys.length; i++){
+            u4(keys[i]);
+            reference(targets[i], start, true);
+        }
+    }
+
+    void invokeInterface(int methodRef, int argumentSlots){
+        op(INVOKEINTERFACE);
+        u2(methodRef);
+        u1(argumentSlots + 1);
+        u1(0);
+    }
+
+    void invokeSpecial(int methodRef){
+        op(INVOKESPECIAL);
+        u2(methodRef);
+    }
+
+    private void reference(Label target, int start, boolean wide){
+        int offsetPosition = length;
+        if (wide)
+            u4(0);
+        else
+            u2(0);
+        if (target.position >= 0)
+            patch(target, start, offsetPosition, wide);
+        else
+            target.fixups.add(new int[]{start, offsetPosition, wide ? 1 : 0});
+    }
+
+    private void patch(Label target, int start, int offsetPosition, boolean wide){
+        int offset = target.position - start;
+        if (wide){
+            code[offsetPosition] = (byte) (offset >>> 24);
+            code[offsetPosition + 1] = (byte) (offset >>> 16);
+            code[offsetPosition + 2] = (byte) (offset >>> 8);
+            code[offsetPosition + 3] = (byte) offset;
+        }else {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                throw new IllegalStateException("Branch offset out of range: " + offset);
+            code[offsetPosition] = (byte) (offset >>> 8);
+            code[offsetPosition + 1] = (byte) offset;
+        }
+    }
+
+    int length(){
+        return length;
+    }
+
+    byte[] toByteArray(){
+        return Arrays.copyOf(code, length);
+    }
+
+    void u1(int value){
+        ensure(1);
+        code[length++] = (byte) value;
+    }
+
+    void u2(int value){
+        ensure(2);
+        code[length++] = (byte) (value >>> 8);
+        code[length++] = (byte) value;
+    }
+
+    void u4(int value){
+        ensure(4);
+        code[length++] = (byte) (value >>> 24);
+        code[length++] = (byte) (value >>> 16);
+        code[length++] = (byte) (value >>> 8);
+        code[length++] = (byte) value;
+    }
+
+    private void ensure(int bytes){
+        if (length + bytes > code.length)
+            code = Arrays.copyOf(code, Math.max(code.length * 2, length + bytes));
+    }
+}
@@ -0,0 +1,35 @@
+package me.astral.mic.jit;
+
+import me.astral.mic.IOModule;
+
+/**
+ * A region of the control store compiled to JVM bytecode, entered at a fixed MPC.
+ */
+public interface CompiledBlock {
+
+    //Slots of the state array shared with the caller
+    int MPC = 0;
+    int PENDING = 1;
+    int BUS_C = 2;
+    int HALTED = 3;
+    int CURRENT = 4;
+    //Clocks run before a memory exception left the block, set on the way out
+    int EXECUTED = 5;
+    int STATE_SIZE = 6;
+
+    //Pending memory operations as stored in state[PENDING]
+    int PENDING_READ = 1;
+    int PENDING_WRITE = 2;
+    int PENDING_FETCH = 4;
+
+    /**
+     * Runs from {@code state[MPC]} until the region is left, the machine halts or
+     * {@code maxCycles} clocks went by. Registers and state are written back on exit.
+     * A {@link me.astral.mic.MemoryException} writes them back as they are in the clock of
+     * the word making the access, {@code state[MPC]} and {@code state[CURRENT]} both holding
+     * its address and {@code state[PENDING]} what it resolves. It also sets {@code state[EXECUTED]},
+     * so {@code maxCycles} must fit in an int.
+     * @return the number of clocks executed
+     */
+    long run(int[] registers, int[] state, IOModule memory, long maxCycles);
+}
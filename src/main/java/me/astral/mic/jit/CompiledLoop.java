@@ -0,0 +1,31 @@
+package me.astral.mic.jit;
+
+import me.astral.mic.IOModule;
+
+/**
+ * An IJVM loop compiled to JVM bytecode, entered with the machine at {@code Main1} and
+ * MBRU holding the opcode at PC unless a fetch is pending.
+ */
+public interface CompiledLoop {
+
+    //Slots of the state array shared with the caller
+    int BUS_C = 0;
+    int CURRENT = 1;
+    int RETIRED = 2;
+    //Clocks of the instructions run before a memory exception left the loop, set on the way out
+    int EXECUTED = 3;
+    //Memory operations pending at Main1 on the way in and out, as in CompiledBlock
+    int PENDING = 4;
+    int STATE_SIZE = 5;
+
+    /**
+     * Runs IJVM instructions from PC until the loop is left, an instruction it does not handle
+     * is reached or the next one may not fit in {@code maxCycles}. Registers are written
+     * back as they are at the following {@code Main1}, with {@code state[PENDING]} what it resolves.
+     * A {@link me.astral.mic.MemoryException} writes them back as they are at the
+     * {@code Main1} of the instruction making the access, and also sets {@code state[EXECUTED]},
+     * so {@code maxCycles} must fit in an int.
+     * @return the number of clocks the microcode would have taken
+     */
+    long run(int[] registers, int[] state, IOModule memory, long maxCycles);
+}
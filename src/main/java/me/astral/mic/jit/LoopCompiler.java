@@ -0,0 +1,453 @@
+package me.astral.mic.jit;
+
+import me.astral.mic.IJVMOpcodes;
+import me.astral.mic.IOModule;
+import me.astral.mic.MicrocodeAnalyzer;
+import me.astral.mic.OpcodeSummary;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.OpcodeSummary.*;
+import static me.astral.mic.jit.CodeBuilder.*;
+import static me.astral.mic.jit.MemoryCalls.IO_MODULE;
+
+/**
+ * Compiles IJVM loops, or any straight run of IJVM code, into hidden classes.
+ *
+ * Every instruction of the body is summarised by the {@link MicrocodeAnalyzer} where it is
+ * in the program text, so its operands and branch targets are constants, and the summary
+ * becomes straight JVM code on locals: the compiled code runs the microroutines of the
+ * control store rather than a copy of their semantics. As in the {@link MicrocodeCompiler},
+ * nodes are keyed by address and by the memory operations pending at {@code Main1}, and
+ * found from the first instruction. Jumps between nodes are direct and every node is also
+ * an entry point, picked by a lookup switch. IN, OUT, INVOKEVIRTUAL, IRETURN, anything
+ * without summary, I/O through a computed address and any jump out of the body write the
+ * registers back and return, so the caller continues with the microcode. Registers only
+ * change at the end of a summary, a memory exception leaves them as they were at the
+ * {@code Main1} of the instruction making the access. Operands are read when compiling,
+ * the program text must not change.
+ */
+public final class LoopCompiler {
+
+    public static final int MAX_LOOP_BYTES = 512;
+    //HotSpot does not compile longer methods, the body is cut to fit
+    private static final int MAX_CODE_BYTES = 8000;
+
+    private static final String COMPILED_LOOP = "me/astral/mic/jit/CompiledLoop";
+
+    //Locals of the generated run method
+    private static final int L_REGISTERS = 1;
+    private static final int L_STATE = 2;
+    private static final int L_MEMORY = 3;
+    private static final int L_MAX = 4;
+    private static final int L_EXECUTED = 6;
+    private static final int L_R0 = 8;
+    private static final int L_BUS_C = L_R0 + 11;
+    private static final int L_CURRENT = L_BUS_C + 1;
+    private static final int L_RETIRED = L_CURRENT + 1;
+    private static final int L_PENDING = L_RETIRED + 1;
+    //Value slots of the summary running, past the registers
+    private static final int L_SLOTS = L_PENDING + 1;
+    //Local indexes are one byte
+    private static final int MAX_LOCALS = 256;
+    private static final int MAX_STACK = 16;
+
+    private record Node(int pc, int pending){}
+
+    private final MicrocodeAnalyzer analyzer;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    public LoopCompiler(MicrocodeAnalyzer analyzer){
+        this.analyzer = analyzer;
+    }
+
+    /**
+     * Compiles the code between {@code start} and {@code end}, usually a loop from its header
+     * to the end of its backward branch.
+     * @param pending memory operations pending at the {@code Main1} of {@code start}, as in {@link CompiledBlock}
+     * @return the compiled code, null when the first instruction cannot be compiled
+     */
+    public CompiledLoop compile(IOModule memory, int start, int end, int pending){
+        int[] instructions = instructions(memory, start, end, pending);
+        if (instructions.length == 0)
+            return null;
+        byte[] bytes = generate(memory, instructions, pending);
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            return (CompiledLoop) hidden.lookupClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to load compiled loop at " + start, e);
+        }
+    }
+
+    /**
+     * Addresses of the instructions between {@code start} and {@code end} the compiled code
+     * runs, up to the first one it cannot run or the one making it too long.
+     */
+    public int[] instructions(IOModule memory, int start, int end, int pending){
+        end = Math.min(end, start + MAX_LOOP_BYTES);
+        List<Integer> instructions = new ArrayList<>();
+        for (int pc = start; pc < end && compilable(memory, pc); pc += IJVMOpcodes.length(entry(memory, pc)))
+            instructions.add(pc);
+        int[] body = instructions.stream().mapToInt(Integer::intValue).toArray();
+        while (body.length > 0 && generate(memory, body, pending) == null)
+            body = Arrays.copyOf(body, body.length * 7 / 8);
+        return body;
+    }
+
+    //Opcode, or the dispatch address of the WIDE routine for a WIDE prefix
+    private static int entry(IOModule memory, int pc){
+        int opcode = Byte.toUnsignedInt(memory.get8(pc));
+        return opcode == IJVMOpcodes.WIDE ? 0x100 | Byte.toUnsignedInt(memory.get8(pc + 1)) : opcode;
+    }
+
+    private boolean compilable(IOModule memory, int pc){
+        int entry = entry(memory, pc);
+        return switch (entry){
+            case IJVMOpcodes.IN, IJVMOpcodes.OUT, IJVMOpcodes.INVOKEVIRTUAL, IJVMOpcodes.IRETURN -> false;
+            default -> IJVMOpcodes.length(entry) > 0 && summary(memory, new Node(pc, 0)) != null;
+        };
+    }
+
+    //Null when the instruction has no summary or more value slots than locals
+    private OpcodeSummary summary(IOModule memory, Node node){
+        OpcodeSummary summary = analyzer.analyze(memory, node.pc(), node.pending());
+        return summary != null && local(summary.slots()) <= MAX_LOCALS ? summary : null;
+    }
+
+    private static int local(int slot){
+        return slot <= MAR ? L_R0 + slot : L_SLOTS + slot - MAR - 1;
+    }
+
+    //In the order they are found from the first instruction
+    private Map<Node, OpcodeSummary> discover(IOModule memory, Node first, Set<Integer> body){
+        Map<Node, OpcodeSummary> nodes = new LinkedHashMap<>();
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        Set<Node> seen = new HashSet<>();
+        queue.add(first);
+        seen.add(first);
+
+        while (!queue.isEmpty()){
+            Node node = queue.poll();
+            OpcodeSummary summary = summary(memory, node);
+            if (summary == null)
+                continue;
+            nodes.put(node, summary);
+            List<OpcodeSummary.Block> leaves = new ArrayList<>();
+            leaves(summary.root, leaves);
+            for (OpcodeSummary.Block leaf : leaves){
+                Node successor = successor(memory, summary, leaf, body);
+                if (successor != null && seen.add(successor))
+                    queue.add(successor);
+            }
+        }
+        return nodes;
+    }
+
+    private static void leaves(OpcodeSummary.Block block, List<OpcodeSummary.Block> leaves){
+        if (block.branch == BRANCH_NONE){
+            leaves.add(block);
+        }else {
+            leaves(block.taken, leaves);
+            leaves(block.notTaken, leaves);
+        }
+    }
+
+    //Node a leaf continues with, null when it leaves the body or MBRU may not hold the next opcode
+    private static Node successor(IOModule memory, OpcodeSummary summary, OpcodeSummary.Block leaf, Set<Integer> body){
+        int pc = leaf.registers[PC];
+        if (!summary.isConstant(pc) || !body.contains(summary.constant(pc)))
+            return null;
+        pc = summary.constant(pc);
+        if ((leaf.pending & CompiledBlock.PENDING_FETCH) == 0){
+            int mbru = leaf.registers[MBRU];
+            if (!summary.isConstant(mbru) || summary.constant(mbru) != Byte.toUnsignedInt(memory.get8(pc)))
+                return null;
+        }
+        return new Node(pc, leaf.pending);
+    }
+
+    //Null when the code is too long
+    byte[] generate(IOModule memory, int[] instructions, int pending){
+        Set<Integer> body = new HashSet<>();
+        for (int pc : instructions)
+            body.add(pc);
+        Map<Node, OpcodeSummary> nodes = discover(memory, new Node(instructions[0], pending), body);
+
+        ClassFileWriter classFile = new ClassFileWriter();
+        CodeBuilder code = new CodeBuilder();
+        Emitter emitter = new Emitter(classFile, code, memory, body);
+        TreeMap<Integer, CodeBuilder.Label> entries = new TreeMap<>();
+        for (Node node : nodes.keySet()){
+            CodeBuilder.Label label = code.newLabel();
+            emitter.labels.put(node, label);
+            entries.put(node.pc() << 3 | node.pending(), label);
+        }
+
+        //Prologue, load the machine in locals and jump to the node of PC and the pending operations
+        code.op(LCONST_0);
+        code.lstore(L_EXECUTED);
+        for (int r = 0; r <= MAR; r++){
+            code.aload(L_REGISTERS);
+            code.iconst(r);
+            code.op(IALOAD);
+            code.istore(L_R0 + r);
+        }
+        code.iconst(0);
+        code.istore(L_BUS_C);
+        code.iconst(0);
+        code.istore(L_CURRENT);
+        code.iconst(0);
+        code.istore(L_RETIRED);
+        code.aload(L_STATE);
+        code.iconst(CompiledLoop.PENDING);
+        code.op(IALOAD);
+        code.istore(L_PENDING);
+        code.iload(L_R0 + PC);
+        code.iconst(3);
+        code.op(ISHL);
+        code.iload(L_PENDING);
+        code.op(IOR);
+        code.lookupSwitch(emitter.tail, entries.keySet().stream().mapToInt(Integer::intValue).toArray(),
+                entries.values().toArray(new CodeBuilder.Label[0]));
+
+        //Jumps are short, nothing is marked past the limit
+        int start = code.length();
+        List<Node> order = new ArrayList<>(nodes.keySet());
+        for (int i = 0; i < order.size(); i++){
+            if (code.length() > MAX_CODE_BYTES)
+                return null;
+            emitter.following = i + 1 < order.size() ? emitter.labels.get(order.get(i + 1)) : null;
+            emitter.node(order.get(i), nodes.get(order.get(i)));
+        }
+        int end = code.length();
+
+        //Epilogue, write everything back
+        code.mark(emitter.tail);
+        writeBack(code);
+        code.lload(L_EXECUTED);
+        code.op(LRETURN);
+
+        //Memory exception, registers are still those of the Main1 of the instruction making the access
+        int handler = code.length();
+        writeBack(code);
+        code.aload(L_STATE);
+        code.iconst(CompiledLoop.EXECUTED);
+        code.lload(L_EXECUTED);
+        code.op(L2I);
+        code.op(IASTORE);
+        code.op(ATHROW);
+        if (code.length() > MAX_CODE_BYTES)
+            return null;
+
+        CodeBuilder constructor = new CodeBuilder();
+        constructor.aload(0);
+        constructor.invokeSpecial(classFile.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.op(RETURN);
+
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, constructor.toByteArray());
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "run", "([I[IL" + IO_MODULE + ";J)J",
+                MAX_STACK, MAX_LOCALS, code.toByteArray(), new ClassFileWriter.Handler(start, end, handler, emitter.calls.exception));
+        String name = "me/astral/mic/jit/Loop_" + Integer.toHexString(instructions[0]).toUpperCase();
+        return classFile.toByteArray(name, "java/lang/Object", COMPILED_LOOP);
+    }
+
+    private static void writeBack(CodeBuilder code){
+        for (int r = 0; r <= MAR; r++){
+            code.aload(L_REGISTERS);
+            code.iconst(r);
+            code.iload(L_R0 + r);
+            code.op(IASTORE);
+        }
+        storeState(code, CompiledLoop.BUS_C, L_BUS_C);
+        storeState(code, CompiledLoop.CURRENT, L_CURRENT);
+        storeState(code, CompiledLoop.RETIRED, L_RETIRED);
+        storeState(code, CompiledLoop.PENDING, L_PENDING);
+    }
+
+    private static void storeState(CodeBuilder code, int slot, int local){
+        code.aload(L_STATE);
+        code.iconst(slot);
+        code.iload(local);
+        code.op(IASTORE);
+    }
+
+    private final class Emitter {
+        final ClassFileWriter classFile;
+        final CodeBuilder code;
+        final IOModule memory;
+        final Set<Integer> body;
+        final MemoryCalls calls;
+        final Map<Node, CodeBuilder.Label> labels = new HashMap<>();
+        final CodeBuilder.Label tail;
+        //Node emitted next, reached without a jump
+        CodeBuilder.Label following;
+
+        Emitter(ClassFileWriter classFile, CodeBuilder code, IOModule memory, Set<Integer> body){
+            this.classFile = classFile;
+            this.code = code;
+            this.memory = memory;
+            this.body = body;
+            this.calls = new MemoryCalls(classFile);
+            this.tail = code.newLabel();
+        }
+
+        void node(Node node, OpcodeSummary summary){
+            code.mark(labels.get(node));
+            //Left pending if the instruction faults or does not fit
+            code.iconst(node.pending());
+            code.istore(L_PENDING);
+
+            //Leave before starting an instruction that may not fit in the budget
+            code.lload(L_EXECUTED);
+            push(summary.maxCycles);
+            code.op(I2L);
+            code.op(LADD);
+            code.lload(L_MAX);
+            code.op(LCMP);
+            code.jump(IFGT, tail);
+
+            block(summary, summary.root, true);
+        }
+
+        //The last block emitted for a node can fall through to the following one
+        private void block(OpcodeSummary summary, OpcodeSummary.Block block, boolean last){
+            int[] ops = block.ops;
+            for (int i = 0; i < ops.length; i += OP_SIZE){
+                switch (ops[i]){
+                    case OP_ALU -> {
+                        int control = ops[i + 2];
+                        int a = ops[i + 3];
+                        int b = ops[i + 4];
+                        MicrocodeCompiler.emitAlu(code, OpcodeSummary.function(control), () -> load(summary, a), () -> load(summary, b));
+                        if (control >>> 8 == SHIFT_SLL8){
+                            code.iconst(8);
+                            code.op(ISHL);
+                        }else if (control >>> 8 == SHIFT_SRA1){
+                            code.iconst(1);
+                            code.op(ISHR);
+                        }
+                        code.istore(local(ops[i + 1]));
+                    }
+                    case OP_READ -> read(summary, ops[i + 1], ops[i + 2]);
+                    case OP_WRITE -> write(summary, ops[i + 1], ops[i + 2]);
+                    case OP_FETCH -> {
+                        code.aload(L_MEMORY);
+                        load(summary, ops[i + 3]);
+                        code.invokeInterface(calls.get8, 1);
+                        code.op(DUP);
+                        code.istore(local(ops[i + 1]));
+                        code.iconst(0xFF);
+                        code.op(IAND);
+                        code.istore(local(ops[i + 2]));
+                    }
+                }
+            }
+
+            if (block.branch == BRANCH_NONE){
+                leaf(summary, block, last);
+                return;
+            }
+            CodeBuilder.Label taken = code.newLabel();
+            load(summary, block.condition);
+            code.jump(block.branch == BRANCH_N ? IFLT : IFEQ, taken);
+            block(summary, block.notTaken, false);
+            code.mark(taken);
+            block(summary, block.taken, last);
+        }
+
+        private void leaf(OpcodeSummary summary, OpcodeSummary.Block leaf, boolean last){
+            //All pushed before any is stored, registers may be read by the others
+            int[] registers = leaf.registers;
+            load(summary, leaf.busC);
+            for (int r = 0; r <= MAR; r++){
+                if (registers[r] != r)
+                    load(summary, registers[r]);
+            }
+            for (int r = MAR; r >= 0; r--){
+                if (registers[r] != r)
+                    code.istore(L_R0 + r);
+            }
+            code.istore(L_BUS_C);
+
+            code.lload(L_EXECUTED);
+            push(leaf.cycles);
+            code.op(I2L);
+            code.op(LADD);
+            code.lstore(L_EXECUTED);
+            push(leaf.last);
+            code.istore(L_CURRENT);
+            code.iinc(L_RETIRED, leaf.dispatches);
+
+            Node successor = successor(memory, summary, leaf, body);
+            CodeBuilder.Label target = successor != null ? labels.get(successor) : null;
+            if (target == null){
+                code.iconst(leaf.pending);
+                code.istore(L_PENDING);
+                target = tail;
+            }
+            if (!last || target != following)
+                code.jump(GOTO, target);
+        }
+
+        private void read(OpcodeSummary summary, int dst, int address){
+            if (summary.isConstant(address) && summary.constant(address) < 0){
+                code.aload(L_MEMORY);
+                code.invokeInterface(calls.input, 0);
+            }else {
+                checkWord(summary, address);
+                code.aload(L_MEMORY);
+                load(summary, address);
+                code.invokeInterface(calls.get32, 1);
+            }
+            code.istore(local(dst));
+        }
+
+        private void write(OpcodeSummary summary, int address, int value){
+            if (summary.isConstant(address) && summary.constant(address) < 0){
+                code.aload(L_MEMORY);
+                load(summary, value);
+                code.invokeInterface(calls.output, 1);
+            }else {
+                checkWord(summary, address);
+                code.aload(L_MEMORY);
+                load(summary, address);
+                load(summary, value);
+                code.invokeInterface(calls.set32, 2);
+            }
+        }
+
+        //A negative address is I/O, the microcode runs the instruction again from its Main1
+        private void checkWord(OpcodeSummary summary, int address){
+            if (summary.isConstant(address))
+                return;
+            load(summary, address);
+            code.jump(IFLT, tail);
+        }
+
+        private void load(OpcodeSummary summary, int slot){
+            if (slot > MAR && summary.isConstant(slot))
+                push(summary.constant(slot));
+            else
+                code.iload(local(slot));
+        }
+
+        private void push(int value){
+            if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+                code.iconst(value);
+            else
+                code.ldc(classFile.integer(value));
+        }
+    }
+}
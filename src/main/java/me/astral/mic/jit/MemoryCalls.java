@@ -0,0 +1,27 @@
+package me.astral.mic.jit;
+
+/**
+ * Constant pool references to the {@link me.astral.mic.IOModule} methods called by generated code,
+ * and to the exception they throw.
+ */
+final class MemoryCalls {
+
+    static final String IO_MODULE = "me/astral/mic/IOModule";
+    static final String EXCEPTION = "me/astral/mic/MemoryException";
+
+    final int get8;
+    final int get32;
+    final int set32;
+    final int input;
+    final int output;
+    final int exception;
+
+    MemoryCalls(ClassFileWriter classFile){
+        get8 = classFile.interfaceMethodRef(IO_MODULE, "get8", "(I)B");
+        get32 = classFile.interfaceMethodRef(IO_MODULE, "get32", "(I)I");
+        set32 = classFile.interfaceMethodRef(IO_MODULE, "set32", "(II)V");
+        input = classFile.interfaceMethodRef(IO_MODULE, "input", "()I");
+        output = classFile.interfaceMethodRef(IO_MODULE, "output", "(I)V");
+        exception = classFile.classRef(EXCEPTION);
+    }
+}
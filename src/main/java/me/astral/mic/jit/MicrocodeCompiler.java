@@ -0,0 +1,435 @@
+package me.astral.mic.jit;
+
+import me.astral.mic.JAM;
+import me.astral.mic.MIC1Instruction;
+import me.astral.mic.model.ALU;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.astral.mic.MIC1Machine.*;
+import static me.astral.mic.jit.CodeBuilder.*;
+import static me.astral.mic.jit.CompiledBlock.*;
+import static me.astral.mic.jit.MemoryCalls.IO_MODULE;
+
+/**
+ * Compiles regions of a control store into hidden classes.
+ *
+ * A region starts at an entry MPC and follows every {@code goto}, JAMN and JAMZ edge,
+ * so the microroutine of an IJVM instruction becomes one method holding the registers
+ * in locals, with transitions turned into direct jumps. A JMPC dispatch, a halt or a
+ * word outside the region writes the state back and returns to the caller.
+ * Since the memory operations started by a word are resolved by the next one, region
+ * nodes are keyed by address and incoming memory operations, which are only unknown
+ * at the entry. A memory exception writes the registers and state back as they are in the
+ * clock of the word making the access, before its bus C writes.
+ */
+public final class MicrocodeCompiler {
+
+    private static final int MAX_REGION_NODES = 48;
+    private static final int DYNAMIC = -1;
+
+    private static final String COMPILED_BLOCK = "me/astral/mic/jit/CompiledBlock";
+
+    //Locals of the generated run method
+    private static final int L_REGISTERS = 1;
+    private static final int L_STATE = 2;
+    private static final int L_MEMORY = 3;
+    private static final int L_MAX = 4;
+    private static final int L_EXECUTED = 6;
+    private static final int L_R0 = 8;
+    private static final int L_BUS_C = L_R0 + 11;
+    private static final int L_PENDING = L_BUS_C + 1;
+    private static final int L_EXIT_MPC = L_PENDING + 1;
+    private static final int L_EXIT_PENDING = L_EXIT_MPC + 1;
+    private static final int L_EXIT_HALTED = L_EXIT_PENDING + 1;
+    private static final int L_CURRENT = L_EXIT_HALTED + 1;
+    //Bus C of a word resolving memory operations, kept aside until they are done
+    private static final int L_NEXT_BUS_C = L_CURRENT + 1;
+    //Memory operations the current word resolves, for the exception handler
+    private static final int L_FAULT_PENDING = L_NEXT_BUS_C + 1;
+    private static final int MAX_LOCALS = L_FAULT_PENDING + 1;
+    private static final int MAX_STACK = 6;
+
+    private record Node(int address, int pendingIn){}
+
+    private final MIC1Instruction[] instructions;
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+    public MicrocodeCompiler(MIC1Instruction[] instructions){
+        this.instructions = instructions;
+    }
+
+    public CompiledBlock compile(int entry){
+        byte[] bytes = generate(entry);
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            return (CompiledBlock) hidden.lookupClass().getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to load compiled block at " + entry, e);
+        }
+    }
+
+    byte[] generate(int entry){
+        List<Node> nodes = new ArrayList<>();
+        Map<Node, CodeBuilder.Label> labels = new HashMap<>();
+        discover(entry, nodes, labels);
+
+        ClassFileWriter classFile = new ClassFileWriter();
+        CodeBuilder code = new CodeBuilder();
+        MemoryCalls calls = new MemoryCalls(classFile);
+        CodeBuilder.Label tail = code.newLabel();
+
+        //Prologue, load the machine in locals
+        code.op(LCONST_0);
+        code.lstore(L_EXECUTED);
+        for (int r = 0; r <= MAR; r++){
+            code.aload(L_REGISTERS);
+            code.iconst(r);
+            code.op(IALOAD);
+            code.istore(L_R0 + r);
+        }
+        loadState(code, PENDING, L_PENDING);
+        loadState(code, BUS_C, L_BUS_C);
+        loadState(code, CURRENT, L_CURRENT);
+        code.iconst(0);
+        code.istore(L_EXIT_HALTED);
+        code.iconst(0);
+        code.istore(L_FAULT_PENDING);
+
+        int start = code.length();
+        for (Node node : nodes){
+            code.mark(labels.get(node));
+            emitNode(code, calls, node, labels, tail);
+        }
+        int end = code.length();
+
+        //Epilogue, write everything back
+        code.mark(tail);
+        for (int r = 0; r <= MAR; r++){
+            code.aload(L_REGISTERS);
+            code.iconst(r);
+            code.iload(L_R0 + r);
+            code.op(IASTORE);
+        }
+        storeState(code, MPC, L_EXIT_MPC);
+        storeState(code, PENDING, L_EXIT_PENDING);
+        storeState(code, BUS_C, L_BUS_C);
+        storeState(code, HALTED, L_EXIT_HALTED);
+        storeState(code, CURRENT, L_CURRENT);
+        code.lload(L_EXECUTED);
+        code.op(LRETURN);
+
+        //Memory exception, left in the clock of the word making the access, already counted
+        int handler = code.length();
+        for (int r = 0; r <= MAR; r++){
+            code.aload(L_REGISTERS);
+            code.iconst(r);
+            code.iload(L_R0 + r);
+            code.op(IASTORE);
+        }
+        storeState(code, MPC, L_CURRENT);
+        storeState(code, PENDING, L_FAULT_PENDING);
+        storeState(code, BUS_C, L_BUS_C);
+        storeState(code, CURRENT, L_CURRENT);
+        code.aload(L_STATE);
+        code.iconst(EXECUTED);
+        code.lload(L_EXECUTED);
+        code.op(L2I);
+        code.iconst(1);
+        code.op(ISUB);
+        code.op(IASTORE);
+        code.op(ATHROW);
+
+        CodeBuilder constructor = new CodeBuilder();
+        constructor.aload(0);
+        constructor.invokeSpecial(classFile.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.op(RETURN);
+
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, constructor.toByteArray());
+        classFile.method(ClassFileWriter.ACC_PUBLIC, "run", "([I[IL" + IO_MODULE + ";J)J",
+                MAX_STACK, MAX_LOCALS, code.toByteArray(), new ClassFileWriter.Handler(start, end, handler, calls.exception));
+        String name = "me/astral/mic/jit/Microcode_" + Integer.toHexString(entry).toUpperCase();
+        return classFile.toByteArray(name, "java/lang/Object", COMPILED_BLOCK);
+    }
+
+    private void discover(int entry, List<Node> nodes, Map<Node, CodeBuilder.Label> labels){
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        Node first = new Node(entry, DYNAMIC);
+        labels.put(first, new CodeBuilder.Label());
+        queue.add(first);
+
+        while (!queue.isEmpty()){
+            Node node = queue.poll();
+            nodes.add(node);
+            MIC1Instruction instruction = instructions[node.address()];
+            int pendingOut = pendingOut(instruction);
+            int next = instruction.nextAddress();
+
+            int[] targets = switch (instruction.jam()){
+                case NONE -> new int[]{next};
+                case JAMN, JAMZ -> new int[]{next, next + 256};
+                case JMPC -> new int[0];
+            };
+            for (int target : targets){
+                if (target == node.address() || target >= instructions.length)
+                    continue;
+                Node successor = new Node(target, pendingOut);
+                if (labels.containsKey(successor) || labels.size() >= MAX_REGION_NODES)
+                    continue;
+                labels.put(successor, new CodeBuilder.Label());
+                queue.add(successor);
+            }
+        }
+    }
+
+    private void emitNode(CodeBuilder code, MemoryCalls calls, Node node, Map<Node, CodeBuilder.Label> labels, CodeBuilder.Label tail){
+        MIC1Instruction instruction = instructions[node.address()];
+        int pendingOut = pendingOut(instruction);
+
+        //Out of budget, leave before executing this word
+        CodeBuilder.Label run = code.newLabel();
+        code.lload(L_EXECUTED);
+        code.lload(L_MAX);
+        code.op(LCMP);
+        code.jump(IFLT, run);
+        code.iconst(node.address());
+        code.istore(L_EXIT_MPC);
+        if (node.pendingIn() == DYNAMIC)
+            code.iload(L_PENDING);
+        else
+            code.iconst(node.pendingIn());
+        code.istore(L_EXIT_PENDING);
+        code.gotoWide(tail);
+        code.mark(run);
+
+        code.lload(L_EXECUTED);
+        code.op(LCONST_1);
+        code.op(LADD);
+        code.lstore(L_EXECUTED);
+        code.iconst(node.address());
+        code.istore(L_CURRENT);
+
+        emitBusC(code, instruction);
+        if (node.pendingIn() == 0){
+            code.istore(L_BUS_C);
+        }else {
+            code.istore(L_NEXT_BUS_C);
+            if (node.pendingIn() == DYNAMIC){
+                code.iload(L_PENDING);
+                code.istore(L_FAULT_PENDING);
+                emitDynamicPending(code, calls);
+            }else {
+                code.iconst(node.pendingIn());
+                code.istore(L_FAULT_PENDING);
+                emitPending(code, calls, node.pendingIn());
+            }
+            code.iload(L_NEXT_BUS_C);
+            code.istore(L_BUS_C);
+        }
+
+        int mask = instruction.busCControl().writeMask();
+        for (int r = 0; r <= MAR; r++){
+            if ((mask & (1 << r)) != 0){
+                code.iload(L_BUS_C);
+                code.istore(L_R0 + r);
+            }
+        }
+
+        int next = instruction.nextAddress();
+        switch (instruction.jam()){
+            case NONE -> emitTransition(code, node, next, pendingOut, labels, tail);
+            case JAMN, JAMZ -> {
+                CodeBuilder.Label taken = code.newLabel();
+                code.iload(L_BUS_C);
+                code.jump(instruction.jam() == JAM.JAMN ? IFLT : IFEQ, taken);
+                emitTransition(code, node, next, pendingOut, labels, tail);
+                code.mark(taken);
+                emitTransition(code, node, next + 256, pendingOut, labels, tail);
+            }
+            case JMPC -> {
+                CodeBuilder.Label running = code.newLabel();
+                code.iload(L_R0 + MBRU);
+                code.iconst(next);
+                code.op(IOR);
+                code.istore(L_EXIT_MPC);
+                code.iconst(pendingOut);
+                code.istore(L_EXIT_PENDING);
+                code.iload(L_EXIT_MPC);
+                code.iconst(node.address());
+                code.jump(IF_ICMPNE, running);
+                code.iconst(1);
+                code.istore(L_EXIT_HALTED);
+                code.mark(running);
+                code.gotoWide(tail);
+            }
+        }
+    }
+
+    private void emitTransition(CodeBuilder code, Node node, int target, int pendingOut, Map<Node, CodeBuilder.Label> labels, CodeBuilder.Label tail){
+        CodeBuilder.Label label = labels.get(new Node(target, pendingOut));
+        if (target != node.address() && label != null){
+            code.gotoWide(label);
+            return;
+        }
+        code.iconst(target);
+        code.istore(L_EXIT_MPC);
+        code.iconst(pendingOut);
+        code.istore(L_EXIT_PENDING);
+        if (target == node.address()){
+            code.iconst(1);
+            code.istore(L_EXIT_HALTED);
+        }
+        code.gotoWide(tail);
+    }
+
+    private void emitBusC(CodeBuilder code, MIC1Instruction instruction){
+        int bus = instruction.bus();
+        Runnable a = () -> code.iload(L_R0 + H);
+        Runnable b = () -> {
+            if (bus >= 0 && bus < 9)
+                code.iload(L_R0 + bus);
+            else
+                code.iconst(0);
+        };
+
+        emitAlu(code, ALU.functionCode(instruction.aluControl()), a, b);
+
+        if (instruction.shifterControl().ssl8()){
+            code.iconst(8);
+            code.op(ISHL);
+        }else if (instruction.shifterControl().sra1()){
+            code.iconst(1);
+            code.op(ISHR);
+        }
+    }
+
+    //Pushes the output of a MIC-1 ALU function, a and b push its inputs
+    static void emitAlu(CodeBuilder code, int function, Runnable a, Runnable b){
+        switch (function){
+            case 0b01_10_00 -> a.run();
+            case 0b01_01_00 -> b.run();
+            case 0b01_10_10 -> { a.run(); code.iconst(-1); code.op(IXOR); }
+            case 0b10_11_00 -> { b.run(); code.iconst(-1); code.op(IXOR); }
+            case 0b11_11_00 -> { a.run(); b.run(); code.op(IADD); }
+            case 0b11_11_01 -> { a.run(); b.run(); code.op(IADD); code.iconst(1); code.op(IADD); }
+            case 0b11_10_01 -> { a.run(); code.iconst(1); code.op(IADD); }
+            case 0b11_01_01 -> { b.run(); code.iconst(1); code.op(IADD); }
+            case 0b11_11_11 -> { b.run(); a.run(); code.op(ISUB); }
+            case 0b11_01_11 -> { b.run(); code.iconst(1); code.op(ISUB); }
+            case 0b11_10_11 -> { a.run(); code.op(INEG); }
+            case 0b00_11_00 -> { a.run(); b.run(); code.op(IAND); }
+            case 0b01_11_00 -> { a.run(); b.run(); code.op(IOR); }
+            case 0b01_00_01 -> code.iconst(1);
+            case 0b01_00_10 -> code.iconst(-1);
+            default -> code.iconst(0);
+        }
+    }
+
+    private void emitPending(CodeBuilder code, MemoryCalls calls, int pending){
+        if ((pending & PENDING_FETCH) != 0)
+            emitFetch(code, calls);
+        if ((pending & PENDING_READ) != 0)
+            emitRead(code, calls);
+        else if ((pending & PENDING_WRITE) != 0)
+            emitWrite(code, calls);
+    }
+
+    private void emitDynamicPending(CodeBuilder code, MemoryCalls calls){
+        CodeBuilder.Label noFetch = code.newLabel();
+        CodeBuilder.Label noRead = code.newLabel();
+        CodeBuilder.Label done = code.newLabel();
+
+        code.iload(L_PENDING);
+        code.iconst(PENDING_FETCH);
+        code.op(IAND);
+        code.jump(IFEQ, noFetch);
+        emitFetch(code, calls);
+        code.mark(noFetch);
+
+        code.iload(L_PENDING);
+        code.iconst(PENDING_READ);
+        code.op(IAND);
+        code.jump(IFEQ, noRead);
+        emitRead(code, calls);
+        code.jump(GOTO, done);
+        code.mark(noRead);
+        code.iload(L_PENDING);
+        code.iconst(PENDING_WRITE);
+        code.op(IAND);
+        code.jump(IFEQ, done);
+        emitWrite(code, calls);
+        code.mark(done);
+    }
+
+    private void emitFetch(CodeBuilder code, MemoryCalls calls){
+        code.aload(L_MEMORY);
+        code.iload(L_R0 + PC);
+        code.invokeInterface(calls.get8, 1);
+        code.op(DUP);
+        code.istore(L_R0 + MBR);
+        code.iconst(0xFF);
+        code.op(IAND);
+        code.istore(L_R0 + MBRU);
+    }
+
+    private void emitRead(CodeBuilder code, MemoryCalls calls){
+        CodeBuilder.Label word = code.newLabel();
+        CodeBuilder.Label done = code.newLabel();
+        code.iload(L_R0 + MAR);
+        code.jump(IFGE, word);
+        code.aload(L_MEMORY);
+        code.invokeInterface(calls.input, 0);
+        code.jump(GOTO, done);
+        code.mark(word);
+        code.aload(L_MEMORY);
+        code.iload(L_R0 + MAR);
+        code.invokeInterface(calls.get32, 1);
+        code.mark(done);
+        code.istore(L_R0 + MDR);
+    }
+
+    private void emitWrite(CodeBuilder code, MemoryCalls calls){
+        CodeBuilder.Label word = code.newLabel();
+        CodeBuilder.Label done = code.newLabel();
+        code.iload(L_R0 + MAR);
+        code.jump(IFGE, word);
+        code.aload(L_MEMORY);
+        code.iload(L_R0 + MDR);
+        code.invokeInterface(calls.output, 1);
+        code.jump(GOTO, done);
+        code.mark(word);
+        code.aload(L_MEMORY);
+        code.iload(L_R0 + MAR);
+        code.iload(L_R0 + MDR);
+        code.invokeInterface(calls.set32, 2);
+        code.mark(done);
+    }
+
+    private static void loadState(CodeBuilder code, int slot, int local){
+        code.aload(L_STATE);
+        code.iconst(slot);
+        code.op(IALOAD);
+        code.istore(local);
+    }
+
+    private static void storeState(CodeBuilder code, int slot, int local){
+        code.aload(L_STATE);
+        code.iconst(slot);
+        code.iload(local);
+        code.op(IASTORE);
+    }
+
+    private static int pendingOut(MIC1Instruction instruction){
+        int pending = switch (instruction.memory()){
+            case READ -> PENDING_READ;
+            case WRITE -> PENDING_WRITE;
+            case NONE -> 0;
+        };
+        return instruction.fetch() ? pending | PENDING_FETCH : pending;
+    }
+}
@@ -21,14 +21,24 @@ public class ALU {
     private boolean Z;
 
     public void clock(){
+        output = compute(functionCode(control), busA, busB);
+
+        Z = output == 0;
+        N = output < 0;
+    }
+
+    public static int functionCode(ALUControl control){
         int func = (control.f0() ? 1 : 0);
         func = (func << 1) + (control.f1() ? 1 : 0);
         func = (func << 1) + (control.enA() ? 1 : 0);
         func = (func << 1) + (control.enB() ? 1 : 0);
         func = (func << 1) + (control.invA() ? 1 : 0);
         func = (func << 1) + (control.inc() ? 1 : 0);
+        return func;
+    }
 
-        output = switch (func){
+    public static int compute(int func, int busA, int busB){
+        return switch (func){
             case 0b01_10_00 -> busA;
             case 0b01_01_00 -> busB;
             case 0b01_10_10 -> ~busA;
@@ -47,8 +57,5 @@ public class ALU {
             case 0b01_00_10 -> -1;
             default -> 0;
         };
-
-        Z = output == 0;
-        N = output < 0;
     }
 }
@@ -1,5 +1,7 @@
 package me.astral.mic.model;
 
+import static me.astral.mic.MIC1Machine.*;
+
 public record BusCControl(
         boolean enableH,
         boolean enableOPC,
@@ -11,4 +13,28 @@ public record BusCControl(
         boolean enableMDR,
         boolean enableMAR
 ) {
+
+    //Enabled registers as a bit mask indexed by register number
+    public int writeMask(){
+        int mask = 0;
+        if (enableH)
+            mask |= 1 << H;
+        if (enableOPC)
+            mask |= 1 << OPC;
+        if (enableTOS)
+            mask |= 1 << TOS;
+        if (enableCPP)
+            mask |= 1 << CPP;
+        if (enableLV)
+            mask |= 1 << LV;
+        if (enableSP)
+            mask |= 1 << SP;
+        if (enablePC)
+            mask |= 1 << PC;
+        if (enableMDR)
+            mask |= 1 << MDR;
+        if (enableMAR)
+            mask |= 1 << MAR;
+        return mask;
+    }
 }
@@ -0,0 +1,113 @@
+package me.astral.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchCommandTest {
+
+    //IN; DUP; IFLT end; OUT; GOTO start; end: HALT
+    private static final int[] ECHO = {IN, DUP, IFLT, 0, 7, OUT, GOTO, 0xFF, 0xFA, HALT};
+
+    @TempDir
+    Path directory;
+
+    private static int batch(String... args) throws Exception{
+        BatchCommand command = new BatchCommand();
+        new CommandLine(command).parseArgs(args);
+        return command.call();
+    }
+
+    private void write(String name, int... text) throws IOException{
+        ByteBuffer buffer = ByteBuffer.allocate(20 + text.length);
+        buffer.putInt(0x1DEADFAD).putInt(0x00010000).putInt(0).putInt(0).putInt(text.length);
+        for (int b : text)
+            buffer.put((byte) b);
+        Files.write(directory.resolve(name), buffer.array());
+    }
+
+    private void copy(String resource, String name) throws IOException{
+        try (InputStream stream = getClass().getClassLoader().getResourceAsStream(resource)){
+            Files.copy(stream, directory.resolve(name));
+        }
+    }
+
+    @Test
+    public void testManifest() throws Exception{
+        write("echo.ijvm", ECHO);
+        copy("example.mal", "echo.mal");
+        Files.writeString(directory.resolve("hello.in"), "hello");
+        Files.writeString(directory.resolve("hello.out"), "hello");
+        Files.writeString(directory.resolve("other.out"), "other");
+        Path manifest = directory.resolve("cases.txt");
+        Files.writeString(manifest, """
+                # PROGRAM CONTROL_STORE INPUT EXPECTED_OUTPUT
+                echo.ijvm echo.mal hello.in hello.out
+
+                echo.ijvm   echo.mal hello.in other.out  # differs
+                echo.ijvm echo.mal
+                missing.ijvm echo.mal
+                """);
+        Path json = directory.resolve("report.json");
+        Path junit = directory.resolve("report.xml");
+
+        assertEquals(1, batch(manifest.toString(), "--json", json.toString(), "--junit", junit.toString()));
+
+        String report = Files.readString(json);
+        assertTrue(report.contains("\"tests\": 4"), report);
+        assertTrue(report.contains("\"passed\": 2"), report);
+        assertTrue(report.contains("{\"name\": \"echo:2\", \"passed\": true, \"reason\": \"HALTED\""), report);
+        assertTrue(report.contains("{\"name\": \"echo:4\", \"passed\": false, \"reason\": \"HALTED\""), report);
+        assertTrue(report.contains("\"error\": \"Output differs from other.out\""), report);
+        assertTrue(report.contains("{\"name\": \"echo:5\", \"passed\": true"), report);
+        assertTrue(report.contains("{\"name\": \"missing:6\", \"passed\": false, \"reason\": null, \"cycles\": 0"), report);
+
+        String xml = Files.readString(junit);
+        assertTrue(xml.contains("tests=\"4\" failures=\"1\" errors=\"1\""), xml);
+        assertTrue(xml.contains("<failure message=\"Output differs from other.out\"/>"), xml);
+        assertTrue(xml.contains("<system-out>hello</system-out>"), xml);
+        assertTrue(xml.contains("<error message=\"java.nio.file.NoSuchFileException"), xml);
+    }
+
+    @Test
+    public void testMalformedManifest() throws Exception{
+        Path manifest = directory.resolve("cases.txt");
+        Files.writeString(manifest, "#Only a program\necho.ijvm\n");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> batch(manifest.toString()));
+        assertTrue(e.getMessage().contains("cases.txt:2:"), e.getMessage());
+    }
+
+    @Test
+    public void testDirectory() throws Exception{
+        write("echo.ijvm", ECHO);
+        copy("example.mal", "echo.mal");
+        Files.writeString(directory.resolve("echo.in"), "abc");
+        Files.writeString(directory.resolve("echo.out"), "abc");
+        //Runs with --control-store, stopped by the cycle limit
+        write("spin.ijvm", GOTO, 0, 0);
+        copy("example.mic1", "default.mic1");
+        Path json = directory.resolve("report.json");
+
+        assertThrows(IllegalArgumentException.class, () -> batch(directory.toString()));
+        assertEquals(1, batch(directory.toString(), "-c", directory.resolve("default.mic1").toString(),
+                "--max-cycles", "1000", "--json", json.toString()));
+
+        String report = Files.readString(json);
+        assertTrue(report.contains("\"tests\": 2"), report);
+        assertTrue(report.contains("{\"name\": \"echo\", \"passed\": true, \"reason\": \"HALTED\""), report);
+        assertTrue(report.contains("{\"name\": \"spin\", \"passed\": false, \"reason\": \"MAX_CYCLES\", \"cycles\": 1000"), report);
+        assertTrue(report.contains("\"error\": \"Stopped (MAX_CYCLES) after 1000 cycles\""), report);
+
+        Files.delete(directory.resolve("spin.ijvm"));
+        assertEquals(0, batch(directory.toString()));
+    }
+}
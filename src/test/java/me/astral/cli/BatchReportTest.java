@@ -0,0 +1,55 @@
+package me.astral.cli;
+
+import me.astral.mic.StopReason;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchReportTest {
+
+    private static BatchCommand.Outcome outcome(String name, boolean passed, StopReason reason, String output, String error){
+        BatchCommand.Case testCase = new BatchCommand.Case(name, Path.of(name + ".ijvm"), Path.of("cs.mic1"), null, null);
+        return new BatchCommand.Outcome(testCase, passed, reason, 1234, 1_500_000_000L, output, error);
+    }
+
+    @Test
+    public void testJUnit(){
+        String xml = BatchReport.junit(List.of(
+                outcome("a<b>", true, StopReason.HALTED, "ignored", null),
+                outcome("quote\"", false, StopReason.MAX_CYCLES, "1 & 2\u0001", "Stopped"),
+                outcome("broken", false, null, "", "java.io.IOException: \"x\"")), 2_000_000_000L);
+
+        assertTrue(xml.startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<testsuite name=\"mikel\" tests=\"3\" failures=\"1\" errors=\"1\" time=\"2.000\">"), xml);
+        assertTrue(xml.contains("<testcase classname=\"mikel.batch\" name=\"a&lt;b&gt;\" time=\"1.500\">"), xml);
+        assertTrue(xml.contains("<property name=\"cycles\" value=\"1234\"/>"), xml);
+        assertTrue(xml.contains("<property name=\"reason\" value=\"MAX_CYCLES\"/>"), xml);
+        assertTrue(xml.contains("name=\"quote&quot;\""), xml);
+        assertTrue(xml.contains("<failure message=\"Stopped\"/>\n    <system-out>1 &amp; 2&#xFFFD;</system-out>"), xml);
+        assertTrue(xml.contains("<error message=\"java.io.IOException: &quot;x&quot;\"/>"), xml);
+        assertFalse(xml.contains("ignored"), xml);
+        assertTrue(xml.endsWith("</testsuite>\n"), xml);
+    }
+
+    @Test
+    public void testJSON(){
+        String json = BatchReport.json(List.of(
+                outcome("a\\b", true, StopReason.HALTED, "", null),
+                outcome("line", false, StopReason.MEMORY_FAULT, "", "first\n\"second\"\u0002")), 250_000_000L);
+
+        assertEquals("""
+                {
+                  "tests": 2,
+                  "passed": 1,
+                  "time": 0.250,
+                  "cases": [
+                    {"name": "a\\\\b", "passed": true, "reason": "HALTED", "cycles": 1234, "time": 1.500, "error": null},
+                    {"name": "line", "passed": false, "reason": "MEMORY_FAULT", "cycles": 1234, "time": 1.500, "error": "first\\n\\"second\\"\\u0002"}
+                  ]
+                }
+                """, json);
+        assertEquals("{\n  \"tests\": 0,\n  \"passed\": 0,\n  \"time\": 0.000,\n  \"cases\": []\n}\n", BatchReport.json(List.of(), 0));
+    }
+}
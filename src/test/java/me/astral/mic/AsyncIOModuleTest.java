@@ -0,0 +1,81 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.Random;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncIOModuleTest {
+
+    @Test
+    public void testEchoThroughSmallRings() throws Exception{
+        byte[] input = new byte[100_000];
+        new Random(7).nextBytes(input);
+        for (int i = 0; i < input.length; i++)
+            input[i] &= 0x7F;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule backing = new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        try (AsyncIOModule memory = new AsyncIOModule(backing, new ByteArrayInputStream(input), output, 16)){
+            MIC1Machine machine = MIC1Runner.loadIJVM(ECHO, controlStore(), memory);
+            machine.setEngine(EngineType.IJVM);
+            MIC1Runner.run(machine);
+            assertTrue(machine.isHalted());
+            //Flushed on halt
+            assertArrayEquals(input, output.toByteArray());
+            assertEquals(input.length, memory.getBytesRead());
+            assertEquals(input.length, memory.getBytesWritten());
+        }
+    }
+
+    @Test
+    public void testWaitsForInput() throws Exception{
+        PipedOutputStream keyboard = new PipedOutputStream();
+        PipedInputStream stdin = new PipedInputStream(keyboard);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (AsyncIOModule memory = new AsyncIOModule(new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()), stdin, output)){
+            Thread typist = new Thread(() -> {
+                try {
+                    for (char c : "slow".toCharArray()){
+                        Thread.sleep(20);
+                        keyboard.write(c);
+                        keyboard.flush();
+                    }
+                    keyboard.close();
+                } catch (Exception e){
+                    throw new RuntimeException(e);
+                }
+            });
+            typist.start();
+            assertEquals('s', memory.input());
+            memory.output('S');
+            memory.flush();
+            assertEquals("S", output.toString());
+            assertEquals('l', memory.input());
+            assertEquals('o', memory.input());
+            assertEquals('w', memory.input());
+            assertEquals(-1, memory.input());
+            typist.join();
+        }
+    }
+
+    @Test
+    public void testMemoryIsTheBackingModule() throws Exception{
+        PagedIOModule backing = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        try (AsyncIOModule memory = new AsyncIOModule(backing, InputStream.nullInputStream(), OutputStream.nullOutputStream())){
+            memory.set32(MIC1Machine.BASE_SP, 42);
+            memory.set8(3, (byte) 7);
+            assertEquals(42, backing.get32(MIC1Machine.BASE_SP));
+            assertEquals(7, memory.get32(0));
+            assertEquals(backing.getFootprint(), memory.getFootprint());
+        }
+    }
+}
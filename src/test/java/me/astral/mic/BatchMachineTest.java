@@ -0,0 +1,144 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchMachineTest {
+
+    @Test
+    public void testLanesMatchStandaloneRuns() throws Exception{
+        byte[] cs = controlStore();
+        String[] inputs = {"", "a", "hello", "lockstep lanes diverge", "hello"};
+        InputStream[] streams = new InputStream[inputs.length];
+        ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[inputs.length];
+        for (int i = 0; i < inputs.length; i++){
+            streams[i] = new ByteArrayInputStream(inputs[i].getBytes());
+            outputs[i] = new ByteArrayOutputStream();
+        }
+
+        BatchMachine batch = MIC1Runner.loadBatch(ECHO, cs, streams, outputs);
+        MIC1Runner.run(batch);
+        assertTrue(batch.isHalted());
+
+        for (int i = 0; i < inputs.length; i++){
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            MIC1Machine expected = MIC1Runner.loadIJVM(ECHO, cs, new ByteArrayInputStream(inputs[i].getBytes()), expectedOutput);
+            MIC1Runner.run(expected);
+
+            assertEquals(inputs[i], outputs[i].toString());
+            assertEquals(expectedOutput.toString(), outputs[i].toString());
+            assertTrue(batch.isHalted(i));
+            assertEquals(expected.getCycles(), batch.getCycles(i));
+            assertEquals(expected.getInstructionsRetired(), batch.getInstructionsRetired(i));
+            assertEquals(expected.getMPC(), batch.getMPC(i));
+            assertEquals(expected.isN(), batch.isN(i));
+            assertEquals(expected.isZ(), batch.isZ(i));
+            for (int r = 0; r <= MIC1Machine.MAR; r++)
+                assertEquals(expected.getRegister(r), batch.getRegister(i, r), "register " + r);
+        }
+    }
+
+    @Test
+    public void testSingleClock() throws Exception{
+        byte[] cs = controlStore();
+        byte[] program = resource("14.ijvm");
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), new ByteArrayOutputStream());
+        BatchMachine batch = MIC1Runner.loadBatch(program, cs,
+                new InputStream[]{InputStream.nullInputStream(), InputStream.nullInputStream()},
+                new OutputStream[]{new ByteArrayOutputStream(), new ByteArrayOutputStream()});
+        while (!expected.isHalted()){
+            expected.clock();
+            assertEquals(1, batch.run(1));
+            for (int lane = 0; lane < 2; lane++){
+                assertEquals(expected.getMPC(), batch.getMPC(lane));
+                assertEquals(expected.isToRead(), batch.isToRead(lane));
+                assertEquals(expected.isToWrite(), batch.isToWrite(lane));
+                assertEquals(expected.isToFetch(), batch.isToFetch(lane));
+                for (int r = 0; r <= MIC1Machine.MAR; r++)
+                    assertEquals(expected.getRegister(r), batch.getRegister(lane, r), "register " + r);
+            }
+        }
+        assertTrue(batch.isHalted());
+        assertEquals(0, batch.run(1));
+    }
+
+    @Test
+    public void testLanesRunProgram() throws Exception{
+        byte[] program = resource("Tanenbaum.ijvm");
+        byte[] cs = controlStore();
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), expectedOutput);
+        MIC1Runner.run(expected);
+        assertEquals("OK", expectedOutput.toString());
+
+        ByteArrayOutputStream[] outputs = {new ByteArrayOutputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream()};
+        InputStream[] inputs = {InputStream.nullInputStream(), InputStream.nullInputStream(), InputStream.nullInputStream()};
+        BatchMachine batch = MIC1Runner.loadBatch(program, cs, inputs, outputs);
+        MIC1Runner.run(batch);
+        for (int lane = 0; lane < outputs.length; lane++){
+            assertEquals(expectedOutput.toString(), outputs[lane].toString());
+            assertEquals(expected.getCycles(), batch.getCycles(lane));
+            assertEquals(expected.getInstructionsRetired(), batch.getInstructionsRetired(lane));
+        }
+    }
+
+    @Test
+    public void testFaultStopsOnlyItsLane() throws Exception{
+        //start: IN; DUP; IFLT end; DUP; OUT; GOTO start; end: HALT echoes while keeping every byte on the stack
+        byte[] program = ijvm(IJVMOpcodes.IN, IJVMOpcodes.DUP, IJVMOpcodes.IFLT, 0, 8, IJVMOpcodes.DUP, IJVMOpcodes.OUT,
+                IJVMOpcodes.GOTO, 0xFF, 0xF9, IJVMOpcodes.HALT);
+        byte[] cs = controlStore();
+        int faulting = 1;
+        String[] inputs = {"abc", "lockstep lanes diverge ".repeat(50), "hello"};
+        InputStream[] streams = new InputStream[inputs.length];
+        ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[inputs.length];
+        for (int i = 0; i < inputs.length; i++){
+            streams[i] = new ByteArrayInputStream(inputs[i].getBytes());
+            outputs[i] = new ByteArrayOutputStream();
+        }
+        BatchMachine batch = MIC1Runner.loadBatch(program, cs, streams, outputs);
+        protect((RegionIOModule) batch.getMemory(faulting));
+        MIC1Runner.run(batch);
+        assertTrue(batch.isHalted());
+
+        for (int i = 0; i < inputs.length; i++){
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            RegionIOModule memory = new RegionIOModule(new ByteArrayInputStream(inputs[i].getBytes()), expectedOutput);
+            if (i == faulting)
+                protect(memory);
+            MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, memory);
+            RunResult result = MIC1Runner.run(expected, RunOptions.builder().build());
+
+            assertEquals(expectedOutput.toString(), outputs[i].toString());
+            assertEquals(i == faulting ? StopReason.MEMORY_FAULT : StopReason.HALTED, result.reason());
+            assertEquals(expected.isHalted(), batch.isHalted(i));
+            assertEquals(i == faulting, batch.getFault(i) != null);
+            if (i == faulting)
+                assertEquals(result.fault().getMPC(), batch.getFault(i).getMPC());
+            assertEquals(expected.getCycles(), batch.getCycles(i));
+            assertEquals(expected.getInstructionsRetired(), batch.getInstructionsRetired(i));
+            assertEquals(expected.getMPC(), batch.getMPC(i));
+            assertEquals(expected.isN(), batch.isN(i));
+            assertEquals(expected.isZ(), batch.isZ(i));
+            assertEquals(expected.isToRead(), batch.isToRead(i));
+            assertEquals(expected.isToWrite(), batch.isToWrite(i));
+            assertEquals(expected.isToFetch(), batch.isToFetch(i));
+            for (int r = 0; r <= MIC1Machine.MAR; r++)
+                assertEquals(expected.getRegister(r), batch.getRegister(i, r), "register " + r);
+        }
+        assertEquals(0, batch.run(1));
+    }
+
+    //Room for one page of bytes, less than the faulting lane reads
+    private static void protect(RegionIOModule memory){
+        memory.setProtection(true);
+        memory.setStackLimit(PagedIOModule.PAGE_WORDS);
+    }
+}
@@ -0,0 +1,116 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CheckpointTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testResumeMatchesUninterruptedRun() throws Exception{
+        byte[] cs = controlStore();
+        MIC1Machine expected = MIC1Runner.loadIJVM(resource("14.ijvm"), cs, InputStream.nullInputStream(), new ByteArrayOutputStream());
+        MIC1Runner.run(expected);
+
+        MIC1Machine machine = MIC1Runner.loadIJVM(resource("14.ijvm"), cs, InputStream.nullInputStream(), new ByteArrayOutputStream());
+        machine.setEngine(EngineType.TIERED);
+        Path file = directory.resolve("14.checkpoint");
+        List<Long> checkpoints = new ArrayList<>();
+        RunResult first = MIC1Runner.run(machine, RunOptions.builder()
+                .maxCycles(expected.getCycles() / 2)
+                .checkpointEvery(100)
+                .checkpoint(m -> {
+                    checkpoints.add(m.getCycles());
+                    try {
+                        Checkpoint.write(m.snapshot(), file);
+                    } catch (Exception e){
+                        throw new RuntimeException(e);
+                    }
+                })
+                .build());
+        assertEquals(StopReason.MAX_CYCLES, first.reason());
+        assertEquals(expected.getCycles() / 2 / 100, checkpoints.size());
+        assertEquals(100, checkpoints.get(0));
+        assertEquals(0, Files.size(file) % PagedIOModule.PAGE_BYTES);
+
+        MachineSnapshot snapshot = Checkpoint.read(file, machine.getControlStore());
+        assertEquals(checkpoints.get(checkpoints.size() - 1), snapshot.getCycles());
+        assertEquals(EngineType.TIERED, snapshot.getEngine());
+        MIC1Machine resumed = snapshot.newMachine(InputStream.nullInputStream(), new ByteArrayOutputStream());
+        MIC1Runner.run(resumed);
+
+        assertTrue(resumed.isHalted());
+        assertEquals(expected.getCycles(), resumed.getCycles());
+        assertEquals(expected.getInstructionsRetired(), resumed.getInstructionsRetired());
+        assertEquals(expected.getMPC(), resumed.getMPC());
+        for (int r = 0; r <= MIC1Machine.MAR; r++)
+            assertEquals(expected.getRegister(r), resumed.getRegister(r), "register " + r);
+    }
+
+    @Test
+    public void testStreamPositions() throws Exception{
+        byte[] cs = controlStore();
+        String input = "checkpointed echo";
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MIC1Machine machine = MIC1Runner.loadIJVM(ECHO, cs, new ByteArrayInputStream(input.getBytes()), output);
+        while (output.size() < 5)
+            machine.clock();
+        Path file = directory.resolve("echo.checkpoint");
+        Checkpoint.write(machine.snapshot(), file);
+
+        MachineSnapshot snapshot = Checkpoint.read(file, machine.getControlStore());
+        assertEquals(5, snapshot.getOutputPosition());
+        assertTrue(snapshot.getInputPosition() >= 5);
+        InputStream replay = new ByteArrayInputStream(input.getBytes());
+        replay.skipNBytes(snapshot.getInputPosition());
+        ByteArrayOutputStream rest = new ByteArrayOutputStream();
+        MIC1Machine resumed = snapshot.newMachine(replay, rest);
+        MIC1Runner.run(resumed);
+        assertEquals(input, output.toString() + rest);
+    }
+
+    @Test
+    public void testMappedInputPosition() throws Exception{
+        String input = "checkpointed mapped echo";
+        Path inputFile = directory.resolve("echo.in");
+        Files.writeString(inputFile, input);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), output);
+        memory.setInput(inputFile);
+        MIC1Machine machine = MIC1Runner.loadIJVM(ECHO, controlStore(), memory);
+        while (output.size() < 5)
+            machine.clock();
+        Path file = directory.resolve("echo.checkpoint");
+        Checkpoint.write(machine.snapshot(), file);
+
+        MachineSnapshot snapshot = Checkpoint.read(file, machine.getControlStore());
+        ByteArrayOutputStream rest = new ByteArrayOutputStream();
+        MIC1Machine resumed = snapshot.newMachine(InputStream.nullInputStream(), rest);
+        ((StreamIOModule) resumed.getMemory()).setInput(inputFile, snapshot.getInputPosition());
+        MIC1Runner.run(resumed);
+        assertEquals(input, output.toString() + rest);
+        assertEquals(input.length(), ((StreamIOModule) resumed.getMemory()).getBytesRead());
+    }
+
+    @Test
+    public void testRejectsOtherControlStore() throws Exception{
+        MIC1Machine machine = MIC1Runner.loadIJVM(ECHO, controlStore(), InputStream.nullInputStream(), new ByteArrayOutputStream());
+        Path file = directory.resolve("echo.checkpoint");
+        Checkpoint.write(machine.snapshot(), file);
+        ControlStore other = ControlStoreRegistry.shared().get(resource("sdup.mic1"));
+        assertThrows(IllegalArgumentException.class, () -> Checkpoint.read(file, other));
+    }
+}
@@ -0,0 +1,41 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ControlStoreRegistryTest {
+
+    @Test
+    public void testDecodedOnce() throws Exception{
+        ControlStoreRegistry registry = new ControlStoreRegistry();
+        byte[] example = resource("example.mic1");
+        ControlStore first = registry.get(example);
+        ControlStore second = registry.get(example.clone());
+        ControlStore other = registry.get(resource("sdup.mic1"));
+
+        assertSame(first, second);
+        assertNotSame(first, other);
+        assertNotEquals(first.getHash(), other.getHash());
+        assertEquals(2, registry.size());
+        assertArrayEquals(MIC1Machine.decode(example), first.instructions());
+    }
+
+    @Test
+    public void testMachinesShareTable() throws Exception{
+        byte[] program = resource("14.ijvm");
+        byte[] cs = controlStore();
+        MIC1Machine a = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), new ByteArrayOutputStream());
+        MIC1Machine b = MIC1Runner.loadIJVM(program, cs.clone(), InputStream.nullInputStream(), new ByteArrayOutputStream());
+        assertSame(a.getControlStore(), b.getControlStore());
+        assertSame(a.instructions, b.instructions);
+
+        MIC1Runner.run(a);
+        MIC1Runner.run(b);
+        assertEquals(a.getCycles(), b.getCycles());
+    }
+}
@@ -0,0 +1,158 @@
+package me.astral.mic;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EngineTest {
+
+    private static MIC1Machine runWith(EngineType engine, String program, String mal, ByteArrayOutputStream bos) throws Exception{
+        MIC1Machine machine = MIC1Runner.loadIJVM(resource(program), assemble(mal), InputStream.nullInputStream(), bos);
+        machine.setEngine(engine);
+        MIC1Runner.run(machine);
+        return machine;
+    }
+
+    private static void assertSameState(MIC1Machine expected, MIC1Machine actual){
+        assertEquals(expected.getCycles(), actual.getCycles());
+        assertEquals(expected.getMPC(), actual.getMPC());
+        assertEquals(expected.isN(), actual.isN());
+        assertEquals(expected.isZ(), actual.isZ());
+        assertEquals(expected.isHalted(), actual.isHalted());
+        for (int i = 0; i <= MIC1Machine.MAR; i++)
+            assertEquals(expected.getRegister(i), actual.getRegister(i), "register " + i);
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testMandel(EngineType engine) throws Exception{
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MIC1Machine machine = runWith(engine, "mandelbread.ijvm", "example.mal", bos);
+        assertEquals(MIC1Test.EXPECTED_OUTPUT, bos.toString());
+        assertTrue(machine.isHalted());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testMatchesInterpreter(EngineType engine) throws Exception{
+        String[][] cases = {{"14.ijvm", "example.mal"}, {"sdup_all_tests.ijvm", "sdup.mal"}, {"IINCTest.ijvm", "example.mal"}};
+        for (String[] c : cases){
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            ByteArrayOutputStream actualOutput = new ByteArrayOutputStream();
+            MIC1Machine expected = runWith(EngineType.INTERPRETER, c[0], c[1], expectedOutput);
+            MIC1Machine actual = runWith(engine, c[0], c[1], actualOutput);
+            assertEquals(expectedOutput.toString(), actualOutput.toString());
+            assertSameState(expected, actual);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testSingleClock(EngineType engine) throws Exception{
+        MIC1Machine expected = MIC1Runner.loadIJVM(resource("14.ijvm"), assemble("example.mal"), InputStream.nullInputStream(), new ByteArrayOutputStream());
+        MIC1Machine actual = MIC1Runner.loadIJVM(resource("14.ijvm"), assemble("example.mal"), InputStream.nullInputStream(), new ByteArrayOutputStream());
+        actual.setEngine(engine);
+        while (!expected.isHalted()){
+            expected.clock();
+            actual.clock();
+            assertSameState(expected, actual);
+            assertEquals(expected.isToRead(), actual.isToRead());
+            assertEquals(expected.isToWrite(), actual.isToWrite());
+            assertEquals(expected.isToFetch(), actual.isToFetch());
+            assertEquals(expected.getCurrentInstruction(), actual.getCurrentInstruction());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = EngineType.class, names = {"IJVM", "TIERED", "SYMBOLIC"})
+    public void testHotLoopsMatchInterpreter(EngineType engine) throws Exception{
+        //Loops going well past TieredEngine.HOT_LOOP_THRESHOLD
+        byte[][] programs = {
+                //i = 100; do { 3 - i | 12 & 0x7F; i-- } while (i != 0)
+                ijvm(BIPUSH, 100, ISTORE, 0,
+                        ILOAD, 0, BIPUSH, 3, SWAP, ISUB, BIPUSH, 12, IOR, BIPUSH, 0x7F, IAND, POP,
+                        IINC, 0, 0xFF, ILOAD, 0, IFEQ, 0, 6, GOTO, 0xFF, 0xEB, HALT),
+                //Counts to 90 in a wide local, then prints it
+                ijvm(BIPUSH, 0, WIDE, ISTORE, 0, 1,
+                        WIDE, ILOAD, 0, 1, BIPUSH, 1, IADD, DUP, WIDE, ISTORE, 0, 1,
+                        BIPUSH, 90, IF_ICMPEQ, 0, 11, LDC_W, 0, 0, POP, NOP, GOTO, 0xFF, 0xEA,
+                        WIDE, ILOAD, 0, 1, OUT, HALT),
+                //Prints a countdown from 59, leaving the compiled code on every OUT
+                ijvm(BIPUSH, 60, BIPUSH, 1, ISUB, DUP, IFLT, 0, 11, DUP, BIPUSH, 48, IADD, OUT, GOTO, 0xFF, 0xF4, HALT),
+                ECHO
+        };
+        for (byte[] program : programs){
+            for (long slice : new long[]{Long.MAX_VALUE, 37}){
+                ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+                ByteArrayOutputStream actualOutput = new ByteArrayOutputStream();
+                MIC1Machine expected = hotLoops(EngineType.INTERPRETER, program, expectedOutput);
+                MIC1Machine actual = hotLoops(engine, program, actualOutput);
+                while (!expected.isHalted()){
+                    expected.run(slice);
+                    actual.run(slice);
+                    assertSameState(expected, actual);
+                    assertEquals(expected.getCurrentInstruction(), actual.getCurrentInstruction());
+                    assertEquals(expected.getInstructionsRetired(), actual.getInstructionsRetired());
+                    //The native opcodes retire memory operations before Main1
+                    if (engine != EngineType.IJVM){
+                        assertEquals(expected.isToRead(), actual.isToRead());
+                        assertEquals(expected.isToWrite(), actual.isToWrite());
+                        assertEquals(expected.isToFetch(), actual.isToFetch());
+                    }
+                }
+                assertEquals(expectedOutput.toString(), actualOutput.toString());
+            }
+        }
+    }
+
+    private static MIC1Machine hotLoops(EngineType engine, byte[] program, ByteArrayOutputStream bos) throws Exception{
+        byte[] input = "hot loops, ".repeat(10).getBytes();
+        MIC1Machine machine = MIC1Runner.loadIJVM(program, controlStore(), new ByteArrayInputStream(input), bos);
+        machine.setEngine(engine);
+        return machine;
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testFaultMatchesInterpreter(EngineType engine) throws Exception{
+        //Pushes below BASE_SP, then hot loops pushing past the stack with BIPUSH, DUP and IN
+        byte[][] programs = {
+                ijvm(POP, POP, BIPUSH, 5, HALT),
+                ijvm(BIPUSH, 1, GOTO, 0xFF, 0xFE),
+                ijvm(BIPUSH, 3, DUP, GOTO, 0xFF, 0xFF),
+                ijvm(IN, GOTO, 0xFF, 0xFF)
+        };
+        for (byte[] program : programs){
+            MIC1Machine expected = faultRun(EngineType.INTERPRETER, program);
+            MIC1Machine actual = faultRun(engine, program);
+            assertSameState(expected, actual);
+            assertEquals(expected.isToRead(), actual.isToRead());
+            assertEquals(expected.isToWrite(), actual.isToWrite());
+            assertEquals(expected.isToFetch(), actual.isToFetch());
+            assertEquals(expected.getCurrentInstruction(), actual.getCurrentInstruction());
+            assertEquals(expected.getInstructionsRetired(), actual.getInstructionsRetired());
+        }
+    }
+
+    private static MIC1Machine faultRun(EngineType engine, byte[] program) throws Exception{
+        byte[] input = new byte[400];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (byte) i;
+        RegionIOModule regions = new RegionIOModule(new ByteArrayInputStream(input), new ByteArrayOutputStream());
+        regions.setProtection(true);
+        regions.setStackLimit(300);
+        MIC1Machine machine = MIC1Runner.loadIJVM(program, controlStore(), regions);
+        machine.setEngine(engine);
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().build());
+        assertEquals(StopReason.MEMORY_FAULT, result.reason());
+        assertEquals(machine.getMPC(), result.fault().getMPC());
+        return machine;
+    }
+}
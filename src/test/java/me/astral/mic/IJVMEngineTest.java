@@ -0,0 +1,53 @@
+package me.astral.mic;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.stream.Stream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IJVMEngineTest {
+
+    private static Stream<Arguments> programs(){
+        return Stream.of(EngineType.IJVM, EngineType.TIERED)
+                .flatMap(engine -> Stream.of("14.ijvm", "IINCTest.ijvm", "GOTO2.ijvm", "IFEQ1.ijvm", "IFLT1.ijvm", "IFICMPEQ1.ijvm", "Tanenbaum.ijvm")
+                        .map(name -> Arguments.of(engine, name)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("programs")
+    public void testSameStateAtEveryInstruction(EngineType engine, String name) throws Exception{
+        byte[] program = resource(name);
+        byte[] cs = controlStore();
+
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream actualOutput = new ByteArrayOutputStream();
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), expectedOutput);
+        MIC1Machine actual = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), actualOutput);
+        actual.setEngine(engine);
+
+        int main = 4;
+        while (!expected.isHalted()){
+            long before = expected.getCycles();
+            do {
+                expected.clock();
+            } while (expected.getMPC() != main && !expected.isHalted());
+
+            actual.run(expected.getCycles() - before);
+            assertEquals(expected.getCycles(), actual.getCycles());
+            assertEquals(expected.getMPC(), actual.getMPC());
+            assertEquals(expected.isHalted(), actual.isHalted());
+            assertEquals(expected.isN(), actual.isN());
+            assertEquals(expected.isZ(), actual.isZ());
+            assertEquals(expected.getCurrentInstruction(), actual.getCurrentInstruction());
+            for (int i = 0; i <= MIC1Machine.MAR; i++)
+                assertEquals(expected.getRegister(i), actual.getRegister(i), "register " + i + " at cycle " + expected.getCycles());
+        }
+        assertEquals(expectedOutput.toString(), actualOutput.toString());
+    }
+}
@@ -0,0 +1,55 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IJVMProfileTest {
+
+    @Test
+    public void testAttributesEveryClock() throws Exception{
+        byte[] program = resource("14.ijvm");
+        byte[] cs = controlStore();
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()));
+        MIC1Runner.run(expected);
+
+        MIC1Machine machine = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()));
+        IJVMProfile profile = new IJVMProfile();
+        machine.setProfile(profile);
+        //Small slices, the open instruction carried from one to the next
+        while (!machine.isHalted())
+            machine.run(7);
+        assertEquals(expected.getCycles(), machine.getCycles());
+        assertEquals(machine.getInstructionsRetired(), profile.getInstructions());
+        assertTrue(profile.getCycles() <= machine.getCycles());
+        assertTrue(machine.getCycles() - profile.getCycles() < 8);
+
+        ByteBuffer text = MIC1Runner.segments(ByteBuffer.wrap(program))[1];
+        long offsetCycles = 0;
+        for (int offset : profile.getHottestOffsets(Integer.MAX_VALUE)){
+            assertEquals(profile.getOffsetOpcode(offset) & 0xFF, Byte.toUnsignedInt(text.get(offset)), Integer.toHexString(offset));
+            offsetCycles += profile.getOffsetCycles(offset);
+        }
+        assertTrue(offsetCycles <= profile.getCycles());
+
+        //Straight line instructions take the cycles of the reference microcode
+        IJVMCostTable costs = new IJVMCostTable(MIC1Machine.decode(cs));
+        for (int opcode : new int[]{BIPUSH, ILOAD, ISTORE, IADD, ISUB, DUP, POP, GOTO, IINC}){
+            if (profile.getCount(opcode) > 0)
+                assertEquals(costs.cost(opcode, false), profile.getCPI(opcode), 1e-9, name(opcode));
+        }
+    }
+
+    @Test
+    public void testNamesWideVariants(){
+        assertEquals("ILOAD", name(ILOAD));
+        assertEquals("WIDE ISTORE", name(WIDE_ISTORE));
+        assertNull(name(0x01));
+    }
+}
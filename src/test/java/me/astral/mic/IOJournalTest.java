@@ -0,0 +1,82 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class IOJournalTest {
+
+    private static final String INPUT = "journaled\necho";
+
+    @TempDir
+    Path directory;
+
+    private Path record(EngineType engine) throws Exception{
+        MIC1Machine machine = MIC1Runner.loadIJVM(ECHO, controlStore(), new ByteArrayInputStream(INPUT.getBytes()), new ByteArrayOutputStream());
+        machine.setEngine(engine);
+        Path file = directory.resolve(engine + ".journal");
+        try (IOJournal journal = IOJournal.record(file)){
+            assertEquals(StopReason.HALTED, MIC1Runner.run(machine, RunOptions.builder().journal(journal).build()).reason());
+        }
+        return file;
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testEnginesRecordSameCycles(EngineType engine) throws Exception{
+        assertArrayEquals(Files.readAllBytes(record(EngineType.INTERPRETER)), Files.readAllBytes(record(engine)));
+    }
+
+    @Test
+    public void testReplay() throws Exception{
+        byte[] cs = controlStore();
+        MIC1Machine expected = MIC1Runner.loadIJVM(ECHO, cs, new ByteArrayInputStream(INPUT.getBytes()), new ByteArrayOutputStream());
+        expected.setEngine(EngineType.INTERPRETER);
+        long[] outputCycles = new long[INPUT.length()];
+        StreamIOModule streams = (StreamIOModule) expected.getMemory();
+        while (!expected.isHalted()){
+            long written = streams.getBytesWritten();
+            expected.clock();
+            if (streams.getBytesWritten() > written)
+                outputCycles[(int) written] = expected.getCycles();
+        }
+
+        IOJournal.Recording recording = IOJournal.read(record(EngineType.PACKED));
+        assertEquals(INPUT, new String(recording.input()));
+        assertEquals(INPUT, new String(recording.output()));
+        assertArrayEquals(outputCycles, recording.outputCycles());
+        assertEquals(expected.getCycles(), recording.endCycle());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), output);
+        memory.setInput(ByteBuffer.wrap(recording.input()));
+        MIC1Machine replay = MIC1Runner.loadIJVM(ECHO, cs, memory);
+        replay.setEngine(EngineType.IJVM);
+        MIC1Runner.run(replay);
+        assertEquals(INPUT, output.toString());
+        assertEquals(recording.endCycle(), replay.getCycles());
+        assertEquals(INPUT.length(), memory.getBytesRead());
+    }
+
+    @Test
+    public void testMappedInput() throws Exception{
+        Path file = directory.resolve("input");
+        Files.writeString(file, INPUT);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), output);
+        memory.setInput(file);
+        MIC1Runner.run(MIC1Runner.loadIJVM(ECHO, controlStore(), memory));
+        assertEquals(INPUT, output.toString());
+    }
+}
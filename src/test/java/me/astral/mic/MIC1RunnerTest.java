@@ -0,0 +1,138 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.time.Duration;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MIC1RunnerTest {
+
+    private static MIC1Machine load(String program, EngineType engine, ByteArrayOutputStream bos) throws Exception{
+        byte[] cs = controlStore();
+        MIC1Machine machine = MIC1Runner.loadIJVM(resource(program), cs, InputStream.nullInputStream(), bos);
+        machine.setEngine(engine);
+        return machine;
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testMaxCycles(EngineType engine) throws Exception{
+        MIC1Machine machine = load("mandelbread.ijvm", engine, new ByteArrayOutputStream());
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().maxCycles(1_234_567).build());
+        assertEquals(StopReason.MAX_CYCLES, result.reason());
+        assertEquals(1_234_567, result.cycles());
+        assertEquals(1_234_567, machine.getCycles());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testInstructionsRetired(EngineType engine) throws Exception{
+        RunResult expected = MIC1Runner.run(load("14.ijvm", EngineType.INTERPRETER, new ByteArrayOutputStream()), RunOptions.builder().build());
+        RunResult actual = MIC1Runner.run(load("14.ijvm", engine, new ByteArrayOutputStream()), RunOptions.builder().build());
+        assertEquals(StopReason.HALTED, actual.reason());
+        assertEquals(expected.cycles(), actual.cycles());
+        assertEquals(expected.instructions(), actual.instructions());
+        assertTrue(actual.instructions() > 0);
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testStopAddress(EngineType engine) throws Exception{
+        MIC1Machine machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        RunOptions options = RunOptions.builder().stopAddress(4).build();
+        for (int i = 0; i < 10; i++){
+            RunResult result = MIC1Runner.run(machine, options);
+            assertEquals(StopReason.MPC, result.reason());
+            assertEquals(4, machine.getMPC());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testRegisterCondition(EngineType engine) throws Exception{
+        MIC1Machine machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder()
+                .registerCondition(new RunOptions.RegisterCondition(MIC1Machine.SP, sp -> sp > MIC1Machine.BASE_SP + 2))
+                .build());
+        assertEquals(StopReason.REGISTER, result.reason());
+        assertEquals(MIC1Machine.BASE_SP + 3, machine.getRegister(MIC1Machine.SP));
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testMemoryWatch(EngineType engine) throws Exception{
+        MIC1Machine machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        int word = MIC1Machine.BASE_SP + 1;
+        int before = machine.memory.get32(word);
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().watchedWord(word).build());
+        assertEquals(StopReason.MEMORY, result.reason());
+        assertNotEquals(before, machine.memory.get32(word));
+    }
+
+    @Test
+    public void testOutputLimit() throws Exception{
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        MIC1Machine machine = load("mandelbread.ijvm", EngineType.PACKED, bos);
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().maxOutputBytes(150).build());
+        assertEquals(StopReason.OUTPUT, result.reason());
+        assertEquals(MIC1Test.EXPECTED_OUTPUT.substring(0, 150), bos.toString());
+    }
+
+    @Test
+    public void testTimeout() throws Exception{
+        MIC1Machine machine = load("mandelbread.ijvm", EngineType.PACKED, new ByteArrayOutputStream());
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().timeout(Duration.ofMillis(1)).build());
+        assertEquals(StopReason.TIMEOUT, result.reason());
+        assertFalse(machine.isHalted());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = EngineType.class, names = {"PACKED", "IJVM", "TIERED"})
+    public void testMemoryQuota(EngineType engine) throws Exception{
+        MIC1Machine machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        long loaded = machine.getMemoryFootprint();
+        assertTrue(loaded > 0);
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().maxFootprint(loaded).build());
+        assertEquals(StopReason.MEMORY_QUOTA, result.reason());
+        assertEquals(loaded, machine.getMemoryFootprint());
+        //The quota only holds for the run it was given to
+        MIC1Runner.run(machine);
+        assertTrue(machine.isHalted());
+
+        machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        MIC1Runner.run(machine);
+        long needed = machine.getMemoryFootprint();
+        assertTrue(needed > loaded);
+
+        machine = load("14.ijvm", engine, new ByteArrayOutputStream());
+        result = MIC1Runner.run(machine, RunOptions.builder().maxFootprint(needed).build());
+        assertEquals(StopReason.HALTED, result.reason());
+        assertEquals(needed, machine.getMemoryFootprint());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testMemoryQuotaCountsCycles(EngineType engine) throws Exception{
+        //start: BIPUSH 1; GOTO start grows the stack until it needs a second page
+        byte[] program = ijvm(BIPUSH, 1, GOTO, 0xFF, 0xFE);
+        byte[] cs = controlStore();
+        long[] cycles = new long[2];
+        for (int i = 0; i < 2; i++){
+            MIC1Machine machine = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), new ByteArrayOutputStream());
+            machine.setEngine(i == 0 ? EngineType.INTERPRETER : engine);
+            RunResult result = MIC1Runner.run(machine, RunOptions.builder().maxFootprint(machine.getMemoryFootprint() + PagedIOModule.PAGE_BYTES).build());
+            assertEquals(StopReason.MEMORY_QUOTA, result.reason());
+            assertEquals(result.cycles(), machine.getCycles());
+            cycles[i] = result.cycles();
+        }
+        assertTrue(cycles[0] > 1000, String.valueOf(cycles[0]));
+        assertEquals(cycles[0], cycles[1]);
+    }
+}
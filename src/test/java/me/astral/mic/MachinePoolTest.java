@@ -0,0 +1,99 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MachinePoolTest {
+
+    //BIPUSH 120; loop: BIPUSH step; ISUB; DUP; IFLT end; GOTO loop; end: HALT
+    private static byte[] countdown(int step){
+        return ijvm(BIPUSH, 120, BIPUSH, step, ISUB, DUP, IFLT, 0, 6, GOTO, 0xFF, 0xF9, HALT);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = EngineType.class, names = {"PACKED", "TIERED"})
+    public void testPooledRunsMatchFresh(EngineType engine) throws Exception{
+        byte[] cs = controlStore();
+        MachinePool pool = new MachinePool(engine);
+        RunOptions options = RunOptions.builder().maxCycles(100000).build();
+
+        //The countdowns share offsets, a loop compiled for one must not run the other
+        String[] names = {"14.ijvm", "GOTO1.ijvm", "14.ijvm", "countdown 1", "countdown 2", "IFEQ1.ijvm", "simple_add.ijvm", "14.ijvm"};
+        for (String name : names){
+            byte[] program = name.startsWith("countdown") ? countdown(name.charAt(name.length() - 1) - '0') : resource(name);
+            ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+            MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), expectedOutput));
+            expected.setEngine(engine);
+            MIC1Runner.run(expected, options);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            MIC1Machine machine = pool.acquire(ByteBuffer.wrap(program), cs, InputStream.nullInputStream(), output);
+            MIC1Runner.run(machine, options);
+            assertEquals(expected.getCycles(), machine.getCycles(), name);
+            assertEquals(expected.isHalted(), machine.isHalted(), name);
+            for (int r = 0; r <= MIC1Machine.MAR; r++)
+                assertEquals(expected.getRegister(r), machine.getRegister(r), name + " register " + r);
+            assertEquals(expectedOutput.toString(), output.toString(), name);
+            assertEquals(expected.getMemoryFootprint(), machine.getMemoryFootprint(), name);
+            pool.release(machine);
+        }
+        assertEquals(1, pool.getIdle());
+    }
+
+    @Test
+    public void testResetZeroesWrittenMemory(){
+        int[] words = {0, 100, MIC1Machine.BASE_CPP, MIC1Machine.BASE_SP, MIC1Machine.BASE_SP + 5000, MIC1Machine.BASE_LV, 0x3FFFFFFF};
+        for (PagedIOModule memory : new PagedIOModule[]{
+                new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()),
+                new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream())}){
+            for (int round = 0; round < 3; round++){
+                memory.load(0, new byte[]{1, 2, 3, 4, 5});
+                memory.load(MIC1Machine.BASE_CPP << 2, new byte[]{6, 7, 8, 9, 10, 11});
+                assertEquals(0x0A0B0000, memory.get32(MIC1Machine.BASE_CPP + 1));
+                for (int word : words)
+                    memory.set32(word + 1, round + 1);
+                memory.output('x');
+                memory.reset();
+                for (int word : words){
+                    assertEquals(0, memory.get32(word), Integer.toHexString(word));
+                    assertEquals(0, memory.get32(word + 1), Integer.toHexString(word));
+                }
+                assertEquals(0, memory.getFootprint());
+                assertEquals(0, memory.getBytesWritten());
+            }
+        }
+    }
+
+    @Test
+    public void testResetLeavesForksAlone(){
+        for (PagedIOModule memory : new PagedIOModule[]{
+                new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()),
+                new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream())}){
+            memory.load(0, new byte[]{1, 2, 3, 4});
+            memory.set32(MIC1Machine.BASE_SP, 10);
+            memory.set32(MIC1Machine.BASE_LV, 20);
+            IOModule fork = memory.fork(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+
+            memory.reset();
+            memory.set32(MIC1Machine.BASE_SP, 11);
+            memory.reset();
+            assertEquals(0, memory.get32(MIC1Machine.BASE_SP));
+            assertEquals(0x01020304, fork.get32(0));
+            assertEquals(10, fork.get32(MIC1Machine.BASE_SP));
+            assertEquals(20, fork.get32(MIC1Machine.BASE_LV));
+
+            fork.reset();
+            assertEquals(0, fork.get32(MIC1Machine.BASE_SP));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MachineSnapshotTest {
+
+    private static MIC1Machine load(String program, IOModule memory) throws Exception{
+        byte[] cs = controlStore();
+        return MIC1Runner.loadIJVM(resource(program), cs, memory);
+    }
+
+    private static void assertSameState(MIC1Machine expected, MIC1Machine actual){
+        assertEquals(expected.getCycles(), actual.getCycles());
+        assertEquals(expected.getInstructionsRetired(), actual.getInstructionsRetired());
+        assertEquals(expected.getMPC(), actual.getMPC());
+        assertEquals(expected.isN(), actual.isN());
+        assertEquals(expected.isZ(), actual.isZ());
+        for (int r = 0; r <= MIC1Machine.MAR; r++)
+            assertEquals(expected.getRegister(r), actual.getRegister(r), "register " + r);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = EngineType.class, names = {"INTERPRETER", "PACKED", "TIERED"})
+    public void testForkFinishesLikeOriginal(EngineType engine) throws Exception{
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        MIC1Machine expected = load("14.ijvm", new RegionIOModule(InputStream.nullInputStream(), expectedOutput));
+        expected.setEngine(engine);
+        MIC1Runner.run(expected);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MIC1Machine machine = load("14.ijvm", new RegionIOModule(InputStream.nullInputStream(), output));
+        machine.setEngine(engine);
+        MIC1Runner.run(machine, RunOptions.builder().maxCycles(expected.getCycles() / 2).build());
+        String prefix = output.toString();
+
+        ByteArrayOutputStream forkOutput = new ByteArrayOutputStream();
+        MIC1Machine fork = machine.fork(InputStream.nullInputStream(), forkOutput);
+        assertEquals(engine, fork.getEngine());
+        assertSameState(machine, fork);
+
+        MIC1Runner.run(machine);
+        MIC1Runner.run(fork);
+        assertTrue(fork.isHalted());
+        assertSameState(expected, machine);
+        assertSameState(expected, fork);
+        assertEquals(expectedOutput.toString(), output.toString());
+        assertEquals(expectedOutput.toString(), prefix + forkOutput);
+    }
+
+    @Test
+    public void testRestoreRewinds() throws Exception{
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MIC1Machine machine = load("14.ijvm", new RegionIOModule(InputStream.nullInputStream(), output));
+        MIC1Runner.run(machine, RunOptions.builder().maxCycles(1000).build());
+        MachineSnapshot snapshot = machine.snapshot();
+        assertEquals(machine.getCycles(), snapshot.getCycles());
+
+        MIC1Runner.run(machine);
+        String first = output.toString();
+        output.reset();
+        machine.restore(snapshot);
+        assertFalse(machine.isHalted());
+        assertEquals(1000, machine.getCycles());
+        MIC1Runner.run(machine);
+        String second = output.toString();
+        assertTrue(first.endsWith(second));
+
+        MIC1Machine other = snapshot.newMachine(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        MIC1Runner.run(other);
+        assertSameState(machine, other);
+    }
+
+    @Test
+    public void testWritesDoNotLeak(){
+        for (PagedIOModule memory : new PagedIOModule[]{
+                new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()),
+                new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream())}){
+            memory.load(0, new byte[]{1, 2, 3, 4});
+            memory.load(MIC1Machine.BASE_CPP << 2, new byte[]{5, 6, 7, 8});
+            memory.set32(MIC1Machine.BASE_SP, 10);
+            memory.set32(MIC1Machine.BASE_LV, 20);
+
+            IOModule fork = memory.fork(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+            long footprint = memory.getFootprint();
+            memory.set32(MIC1Machine.BASE_SP, 11);
+            memory.set8(1, (byte) 9);
+            fork.set32(MIC1Machine.BASE_LV, 21);
+            fork.set32(MIC1Machine.BASE_CPP, 22);
+            fork.set32(MIC1Machine.BASE_SP + 4096, 23);
+
+            assertEquals(11, memory.get32(MIC1Machine.BASE_SP));
+            assertEquals(10, fork.get32(MIC1Machine.BASE_SP));
+            assertEquals(9, memory.get8(1));
+            assertEquals(2, fork.get8(1));
+            assertEquals(20, memory.get32(MIC1Machine.BASE_LV));
+            assertEquals(21, fork.get32(MIC1Machine.BASE_LV));
+            assertEquals(0x05060708, memory.get32(MIC1Machine.BASE_CPP));
+            assertEquals(22, fork.get32(MIC1Machine.BASE_CPP));
+            assertEquals(0, memory.get32(MIC1Machine.BASE_SP + 4096));
+            assertEquals(23, fork.get32(MIC1Machine.BASE_SP + 4096));
+            assertEquals(footprint, memory.getFootprint());
+        }
+    }
+}
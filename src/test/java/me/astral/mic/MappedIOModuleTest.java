@@ -0,0 +1,87 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MappedIOModuleTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testMatchesPagedModule() throws Exception{
+        try (MappedIOModule direct = new MappedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+             MappedIOModule mapped = new MappedIOModule(directory.resolve("ram.img"), InputStream.nullInputStream(), OutputStream.nullOutputStream())){
+            PagedIOModule reference = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+            Random random = new Random(42);
+            int[] bases = {0, 0x10000, MIC1Machine.BASE_SP, MIC1Machine.BASE_LV, 0x7FFFFFF0, -64};
+
+            for (int i = 0; i < 10000; i++){
+                int address = bases[random.nextInt(bases.length)] + random.nextInt(64);
+                switch (random.nextInt(4)){
+                    case 0 -> {
+                        int value = random.nextInt();
+                        reference.set32(address, value);
+                        direct.set32(address, value);
+                        mapped.set32(address, value);
+                    }
+                    case 1 -> {
+                        byte value = (byte) random.nextInt();
+                        reference.set8(address, value);
+                        direct.set8(address, value);
+                        mapped.set8(address, value);
+                    }
+                    case 2 -> {
+                        assertEquals(reference.get32(address), direct.get32(address));
+                        assertEquals(reference.get32(address), mapped.get32(address));
+                    }
+                    case 3 -> {
+                        assertEquals(reference.get8(address), direct.get8(address));
+                        assertEquals(reference.get8(address), mapped.get8(address));
+                    }
+                }
+            }
+
+            direct.clear();
+            mapped.clear();
+            for (int base : bases){
+                assertEquals(0, direct.get32(base));
+                assertEquals(0, mapped.get32(base));
+            }
+        }
+    }
+
+    @Test
+    public void testImageOutlivesModule() throws Exception{
+        Path image = directory.resolve("mandel.img");
+        byte[] program = resource("mandelbread.ijvm");
+        byte[] cs = resource("examples/default.mic1");
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        int sp;
+        int top;
+        try (MappedIOModule memory = new MappedIOModule(image, InputStream.nullInputStream(), bos)){
+            MIC1Machine machine = MIC1Runner.loadIJVM(program, cs, memory);
+            machine.setEngine(EngineType.IJVM);
+            MIC1Runner.run(machine);
+            sp = machine.getRegister(MIC1Machine.SP);
+            top = memory.get32(sp);
+        }
+        assertEquals(MIC1Test.EXPECTED_OUTPUT, bos.toString());
+
+        try (MappedIOModule reopened = new MappedIOModule(image, InputStream.nullInputStream(), OutputStream.nullOutputStream())){
+            assertEquals(top, reopened.get32(sp));
+            assertEquals(program[20 + ByteBuffer.wrap(program).getInt(8)], reopened.get8(0));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroProfileTest {
+
+    @Test
+    public void testProfileCountsEveryClock() throws Exception{
+        byte[] program = resource("14.ijvm");
+        byte[] cs = controlStore();
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), expectedOutput));
+        expected.setEngine(EngineType.INTERPRETER);
+        MIC1Runner.run(expected);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MIC1Machine machine = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), output));
+        machine.setEngine(EngineType.TIERED);
+        MicroProfile profile = new MicroProfile();
+        machine.setProfile(profile);
+        MIC1Runner.run(machine, RunOptions.builder().maxCycles(500).build());
+        MIC1Runner.run(machine);
+
+        assertEquals(EngineType.TIERED, machine.getEngine());
+        assertEquals(expected.getCycles(), machine.getCycles());
+        assertEquals(expected.getInstructionsRetired(), machine.getInstructionsRetired());
+        assertEquals(expectedOutput.toString(), output.toString());
+        assertEquals(machine.getCycles(), profile.getCycles());
+
+        ControlStore store = machine.getControlStore();
+        long dispatches = 0;
+        for (int from = 0; from < MicroProfile.ADDRESSES; from++){
+            if (store.get(from) != null && store.get(from).jam() == JAM.JMPC)
+                dispatches += profile.getCount(from);
+            long incoming = 0;
+            for (int to = 0; to < MicroProfile.ADDRESSES; to++)
+                incoming += profile.getEdge(to, from);
+            //Only the first word runs without being jumped to
+            assertTrue(profile.getCount(from) - incoming <= (from == 0 ? 1 : 0), "address " + from);
+        }
+        assertEquals(machine.getInstructionsRetired(), dispatches);
+
+        int[] hottest = profile.getHottest(3);
+        assertEquals(3, hottest.length);
+        assertTrue(profile.getCount(hottest[0]) >= profile.getCount(hottest[1]));
+        int[] successors = profile.getSuccessors(hottest[0]);
+        assertTrue(successors.length > 0);
+        assertTrue(profile.getEdge(hottest[0], successors[0]) > 0);
+    }
+}
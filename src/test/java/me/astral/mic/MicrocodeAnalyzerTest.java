@@ -0,0 +1,44 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicrocodeAnalyzerTest {
+
+    private static MIC1Instruction[] decode(String name) throws Exception{
+        return MIC1Machine.decode(TestPrograms.assemble(name));
+    }
+
+    @Test
+    public void testReferenceCosts() throws Exception{
+        MIC1Instruction[] instructions = decode("example.mal");
+        MicrocodeAnalyzer analyzer = new MicrocodeAnalyzer(instructions);
+        IJVMCostTable costs = new IJVMCostTable(instructions);
+        assertEquals(costs.main(), analyzer.main());
+
+        for (int opcode : IJVMCostTable.NATIVE){
+            if (opcode > 0xFF)
+                continue;
+            OpcodeSummary summary = analyzer.analyze(opcode, PackedEngine.PENDING_FETCH);
+            assertNotNull(summary, "opcode " + opcode);
+            assertEquals(costs.maxCost(opcode), summary.maxCycles, "opcode " + opcode);
+        }
+    }
+
+    @Test
+    public void testUnresolved() throws Exception{
+        MicrocodeAnalyzer analyzer = new MicrocodeAnalyzer(decode("example.mal"));
+        assertNull(analyzer.analyze(IJVMOpcodes.WIDE, 0));
+        assertNull(analyzer.analyze(IJVMOpcodes.HALT, 0));
+    }
+
+    @Test
+    public void testCustomOpcode() throws Exception{
+        MicrocodeAnalyzer analyzer = new MicrocodeAnalyzer(decode("sdup.mal"));
+        OpcodeSummary summary = analyzer.analyze(0x05, PackedEngine.PENDING_FETCH);
+        assertNotNull(summary);
+        assertEquals(OpcodeSummary.BRANCH_Z, summary.root.branch);
+        assertEquals(5, summary.maxCycles);
+    }
+}
@@ -0,0 +1,134 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PagedIOModuleTest {
+
+    @Test
+    public void testUntouchedIsZero(){
+        PagedIOModule module = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        assertEquals(0, module.get32(MIC1Machine.BASE_SP));
+        assertEquals(0, module.get32(-1));
+        assertEquals(0, module.get8(0x10000));
+    }
+
+    @Test
+    public void testMatchesDefaultModule(){
+        PagedIOModule paged = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        DefaultIOModule reference = new DefaultIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        Random random = new Random(42);
+        int[] bases = {0, 0x10000, MIC1Machine.BASE_SP, MIC1Machine.BASE_LV, 0x7FFFFFF0, -64};
+
+        for (int i = 0; i < 10000; i++){
+            int base = bases[random.nextInt(bases.length)];
+            int offset = random.nextInt(64);
+            switch (random.nextInt(4)){
+                case 0 -> {
+                    int value = random.nextInt();
+                    paged.set32(base + offset, value);
+                    reference.set32(base + offset, value);
+                }
+                case 1 -> {
+                    byte value = (byte) random.nextInt();
+                    paged.set8(base + offset, value);
+                    reference.set8(base + offset, value);
+                }
+                case 2 -> assertEquals(reference.get32(base + offset), paged.get32(base + offset));
+                case 3 -> assertEquals(reference.get8(base + offset), paged.get8(base + offset));
+            }
+        }
+
+        paged.clear();
+        assertEquals(0, paged.get32(bases[1]));
+    }
+
+    @Test
+    public void testBulkMatchesDefaultModule() throws Exception{
+        byte[] text = new byte[2050];
+        byte[] constants = new byte[800];
+        new Random(1).nextBytes(text);
+        new Random(2).nextBytes(constants);
+        try (MappedIOModule mapped = new MappedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream())){
+            for (IOModule module : new IOModule[]{
+                    new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()),
+                    new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream()),
+                    mapped}){
+                DefaultIOModule reference = new DefaultIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+                for (IOModule m : new IOModule[]{module, reference}){
+                    m.load(0, ByteBuffer.wrap(text));
+                    m.load(MIC1Machine.BASE_CPP << 2, ByteBuffer.wrap(constants));
+                }
+                assertBulkMatches(reference, module);
+            }
+        }
+    }
+
+    private static void assertBulkMatches(IOModule reference, IOModule module){
+        Random random = new Random(7);
+        int[] wordBases = {0, 500, MIC1Machine.BASE_CPP - 300, MIC1Machine.BASE_SP - 8, MIC1Machine.BASE_SP + 1000,
+                MIC1Machine.BASE_LV - 4, 0x3FFFFFF0};
+        for (int i = 0; i < 400; i++){
+            int word = wordBases[random.nextInt(wordBases.length)] + random.nextInt(64);
+            int address = (word << 2) + random.nextInt(4);
+            int length = random.nextInt(3000);
+            String step = "step " + i + " at " + Integer.toHexString(address);
+            switch (random.nextInt(6)){
+                case 0 -> {
+                    byte[] bytes = new byte[length];
+                    random.nextBytes(bytes);
+                    reference.write(address, bytes, 0, length);
+                    module.write(address, ByteBuffer.wrap(bytes));
+                }
+                case 1 -> {
+                    int[] words = random.ints(length / 4).toArray();
+                    reference.writeWords(word, words, 0, words.length);
+                    module.writeWords(word, words, 0, words.length);
+                }
+                case 2 -> {
+                    byte value = (byte) (random.nextBoolean() ? 0 : random.nextInt());
+                    reference.fill(address, length, value);
+                    module.fill(address, length, value);
+                }
+                case 3 -> {
+                    int to = word + random.nextInt(200) - 100;
+                    reference.copyWords(word, to, length / 4);
+                    module.copyWords(word, to, length / 4);
+                }
+                case 4 -> {
+                    byte[] expected = new byte[length];
+                    ByteBuffer actual = ByteBuffer.allocateDirect(length);
+                    reference.read(address, expected, 0, length);
+                    module.read(address, actual);
+                    assertArrayEquals(expected, ByteBuffer.wrap(new byte[length]).put(actual.flip()).array(), step);
+                }
+                case 5 -> {
+                    int[] expected = new int[length / 4];
+                    int[] actual = new int[length / 4];
+                    reference.readWords(word, expected, 0, expected.length);
+                    module.readWords(word, actual, 0, actual.length);
+                    assertArrayEquals(expected, actual, step);
+                }
+            }
+        }
+        for (int base : wordBases)
+            for (int w = base; w < base + 1000; w++)
+                assertEquals(reference.get32(w), module.get32(w), "word " + Integer.toHexString(w));
+    }
+
+    @Test
+    public void testZeroFillAllocatesNothing(){
+        PagedIOModule module = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        module.fill(MIC1Machine.BASE_SP << 2, 1 << 20, (byte) 0);
+        assertEquals(0, module.getFootprint());
+        module.fill(MIC1Machine.BASE_SP << 2, 8, (byte) 1);
+        assertEquals(0x01010101, module.get32(MIC1Machine.BASE_SP + 1));
+        assertEquals(0, module.get32(MIC1Machine.BASE_SP + 2));
+    }
+}
@@ -0,0 +1,83 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProgramImageTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testImageRunsLikeProgram() throws Exception{
+        byte[] program = resource("14.ijvm");
+        byte[] cs = controlStore();
+        ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+        MIC1Machine expected = MIC1Runner.loadIJVM(program, cs, new RegionIOModule(InputStream.nullInputStream(), expectedOutput));
+        MIC1Runner.run(expected);
+
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("program", "14.ijvm");
+        metadata.put("note", "a=b");
+        Path file = directory.resolve("14" + ProgramImage.EXTENSION);
+        ProgramImage.write(file, program, cs, null, metadata);
+        assertTrue(ProgramImage.isImage(file));
+
+        ProgramImage image = ProgramImage.map(file);
+        assertEquals(metadata, image.getMetadata());
+        assertNull(image.getInput());
+        assertSame(ControlStoreRegistry.shared().get(cs), image.getControlStore());
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        MIC1Machine machine = image.load(new RegionIOModule(InputStream.nullInputStream(), output));
+        MIC1Runner.run(machine);
+        assertEquals(expected.getCycles(), machine.getCycles());
+        assertEquals(expectedOutput.toString(), output.toString());
+    }
+
+    @Test
+    public void testImageKeepsInput() throws Exception{
+        byte[] cs = resource("example.mic1");
+        Path file = directory.resolve("echo" + ProgramImage.EXTENSION);
+        ProgramImage.write(file, ECHO, cs, "packed input".getBytes(StandardCharsets.US_ASCII), Map.of());
+
+        ProgramImage image = ProgramImage.map(file);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), output);
+        memory.setInput(image.getInput());
+        MIC1Machine machine = image.load(memory);
+        machine.setEngine(EngineType.PACKED);
+        MIC1Runner.run(machine);
+        assertEquals("packed input", output.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testRejectsCorruptControlStore() throws Exception{
+        Path file = directory.resolve("14" + ProgramImage.EXTENSION);
+        ProgramImage.write(file, resource("14.ijvm"), resource("example.mic1"), null, Map.of());
+        byte[] bytes = Files.readAllBytes(file);
+        //First byte of the control store section, after the aligned header
+        bytes[4096] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IllegalArgumentException.class, () -> ProgramImage.map(file));
+    }
+
+    @Test
+    public void testRejectsOtherFiles() throws Exception{
+        Path file = directory.resolve("14.ijvm");
+        Files.write(file, resource("14.ijvm"));
+        assertFalse(ProgramImage.isImage(file));
+        assertThrows(IllegalArgumentException.class, () -> ProgramImage.map(file));
+    }
+}
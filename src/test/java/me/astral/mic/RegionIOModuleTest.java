@@ -0,0 +1,134 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static me.astral.mic.IJVMOpcodes.*;
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionIOModuleTest {
+
+    private static RegionIOModule module(){
+        return new RegionIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+    }
+
+    @Test
+    public void testMatchesPagedModule(){
+        RegionIOModule regions = module();
+        PagedIOModule reference = new PagedIOModule(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        Random random = new Random(42);
+        byte[] text = new byte[37];
+        byte[] constants = new byte[22];
+        random.nextBytes(text);
+        random.nextBytes(constants);
+        regions.load(RegionIOModule.TEXT_ORIGIN, text);
+        regions.load(RegionIOModule.CONSTANT_POOL_ORIGIN, constants);
+        reference.load(RegionIOModule.TEXT_ORIGIN, text);
+        reference.load(RegionIOModule.CONSTANT_POOL_ORIGIN, constants);
+
+        int[] bases = {0, MIC1Machine.BASE_CPP, MIC1Machine.BASE_SP, MIC1Machine.BASE_LV, MIC1Machine.BASE_SP + 5000, 0x7FFFFFF0, -64};
+        for (int i = 0; i < 20000; i++){
+            int base = bases[random.nextInt(bases.length)];
+            int offset = random.nextInt(64);
+            switch (random.nextInt(4)){
+                case 0 -> {
+                    int value = random.nextInt();
+                    regions.set32(base + offset, value);
+                    reference.set32(base + offset, value);
+                }
+                case 1 -> {
+                    byte value = (byte) random.nextInt();
+                    regions.set8((base << 2) + offset, value);
+                    reference.set8((base << 2) + offset, value);
+                }
+                case 2 -> assertEquals(reference.get32(base + offset), regions.get32(base + offset));
+                case 3 -> assertEquals(reference.get8((base << 2) + offset), regions.get8((base << 2) + offset));
+            }
+        }
+
+        regions.clear();
+        for (int base : bases)
+            assertEquals(0, regions.get32(base));
+    }
+
+    @Test
+    public void testProtection(){
+        RegionIOModule regions = module();
+        regions.load(RegionIOModule.TEXT_ORIGIN, new byte[]{NOP, (byte) HALT});
+        regions.load(RegionIOModule.CONSTANT_POOL_ORIGIN, new byte[8]);
+        regions.setProtection(true);
+
+        regions.set32(MIC1Machine.BASE_SP + 3, 7);
+        regions.set32(MIC1Machine.BASE_LV, 9);
+        assertEquals(7, regions.get32(MIC1Machine.BASE_SP + 3));
+        assertEquals((byte) HALT, regions.get8(1));
+
+        MemoryFaultException fault = assertThrows(MemoryFaultException.class, () -> regions.set8(1, (byte) 0));
+        assertEquals(1, fault.getByteAddress());
+        assertTrue(fault.isWrite());
+        assertThrows(MemoryFaultException.class, () -> regions.set32(MIC1Machine.BASE_CPP + 1, 0));
+        assertThrows(MemoryFaultException.class, () -> regions.set32(MIC1Machine.BASE_SP - 1, 0));
+        assertEquals((byte) HALT, regions.get8(1));
+
+        regions.writeWords(MIC1Machine.BASE_SP + 4000, new int[]{1, 2, 3}, 0, 3);
+        assertEquals(3, regions.get32(MIC1Machine.BASE_SP + 4002));
+        assertThrows(MemoryFaultException.class, () -> regions.write(0, new byte[2], 0, 2));
+        assertThrows(MemoryFaultException.class, () -> regions.fill(RegionIOModule.CONSTANT_POOL_ORIGIN, 4, (byte) 0));
+        assertThrows(MemoryFaultException.class, () -> regions.writeWords(MIC1Machine.BASE_SP - 1, new int[2], 0, 2));
+        assertEquals((byte) HALT, regions.get8(1));
+    }
+
+    @Test
+    public void testFootprintCountsWrittenStackPages(){
+        RegionIOModule regions = module();
+        long empty = regions.getFootprint();
+        int base = MIC1Machine.BASE_SP;
+        int page = PagedIOModule.PAGE_WORDS;
+        regions.set32(base, 1);
+        regions.set32(base + 5 * page, 2);
+        assertEquals(empty + 2 * PagedIOModule.PAGE_BYTES, regions.getFootprint());
+        assertEquals(0, regions.get32(base + 3 * page));
+        assertEquals(2, regions.get32(base + 5 * page));
+
+        regions.set32(base + 3 * page, 3);
+        regions.set32(base + 6 * page, 4);
+        assertEquals(empty + 4 * PagedIOModule.PAGE_BYTES, regions.getFootprint());
+
+        regions.setFootprintLimit(regions.getFootprint());
+        regions.set32(base + 6 * page + 1, 5);
+        assertThrows(MemoryQuotaExceededException.class, () -> regions.set32(base + 7 * page, 6));
+        assertEquals(empty + 4 * PagedIOModule.PAGE_BYTES, regions.getFootprint());
+    }
+
+    @ParameterizedTest
+    @EnumSource(EngineType.class)
+    public void testFaultStopsRun(EngineType engine) throws Exception{
+        RunResult expected = faultRun(EngineType.INTERPRETER);
+        RunResult result = faultRun(engine);
+
+        assertEquals(StopReason.MEMORY_FAULT, result.reason());
+        assertEquals((MIC1Machine.BASE_SP - 1) << 2, result.fault().getByteAddress());
+        assertTrue(result.fault().getMessage().contains("MPC"));
+        assertEquals(expected.fault().getMPC(), result.fault().getMPC());
+        assertEquals(expected.cycles(), result.cycles());
+    }
+
+    private static RunResult faultRun(EngineType engine) throws Exception{
+        //POP; POP; BIPUSH 5; HALT pushes below BASE_SP
+        byte[] program = ijvm(POP, POP, BIPUSH, 5, HALT);
+        RegionIOModule regions = new RegionIOModule(InputStream.nullInputStream(), new ByteArrayOutputStream());
+        regions.setProtection(true);
+        MIC1Machine machine = MIC1Runner.loadIJVM(program, controlStore(), regions);
+        machine.setEngine(engine);
+        RunResult result = MIC1Runner.run(machine, RunOptions.builder().build());
+        assertEquals(result.cycles(), machine.getCycles());
+        return result;
+    }
+}
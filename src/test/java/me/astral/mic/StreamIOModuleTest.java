@@ -0,0 +1,79 @@
+package me.astral.mic;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static me.astral.mic.TestPrograms.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamIOModuleTest {
+
+    private static PagedIOModule module(InputStream input, OutputStream output){
+        return new PagedIOModule(input, output);
+    }
+
+    @Test
+    public void testBufferFlushes(){
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PagedIOModule memory = module(InputStream.nullInputStream(), output);
+        memory.bufferOutput(4);
+        memory.output('a');
+        memory.output('b');
+        memory.output('c');
+        assertEquals(0, output.size());
+        assertEquals(3, memory.getBytesWritten());
+        memory.output('d');
+        assertEquals("abcd", output.toString());
+
+        memory.setFlushOnNewline(true);
+        memory.output('e');
+        memory.output('\n');
+        assertEquals("abcde\n", output.toString());
+
+        memory.setFlushOnNewline(false);
+        memory.output('f');
+        memory.flush();
+        assertEquals("abcde\nf", output.toString());
+    }
+
+    @Test
+    public void testFlushBeforeBlockingInput(){
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        //Nothing available, a read could block
+        InputStream input = new InputStream() {
+            @Override
+            public int read() {
+                assertEquals("?", output.toString());
+                return 'y';
+            }
+        };
+        PagedIOModule memory = module(input, output);
+        memory.bufferOutput(64);
+        memory.output('?');
+        assertEquals(0, output.size());
+        assertEquals('y', memory.input());
+        assertEquals(1, memory.getBytesRead());
+    }
+
+    @Test
+    public void testFlushOnHalt() throws Exception{
+        byte[] cs = assemble("examples/default.mal");
+        byte[] program = resource("examples/mandelbread.ijvm");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        MIC1Machine unbuffered = MIC1Runner.loadIJVM(program, cs, InputStream.nullInputStream(), expected);
+        unbuffered.setEngine(EngineType.IJVM);
+        MIC1Runner.run(unbuffered);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        RegionIOModule memory = new RegionIOModule(InputStream.nullInputStream(), output);
+        memory.bufferOutput(1 << 16);
+        MIC1Machine buffered = MIC1Runner.loadIJVM(program, cs, memory);
+        buffered.setEngine(EngineType.IJVM);
+        MIC1Runner.run(buffered);
+        assertEquals(expected.toString(), output.toString());
+    }
+}
@@ -0,0 +1,48 @@
+package me.astral.mic;
+
+import me.astral.mal.MAL;
+import me.astral.mal.writer.MALWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static me.astral.mic.IJVMOpcodes.*;
+
+/**
+ * Programs and control stores shared by the tests.
+ */
+final class TestPrograms {
+
+    //IN; DUP; IFLT end; OUT; GOTO start; end: HALT
+    static final byte[] ECHO = ijvm(IN, DUP, IFLT, 0, 7, OUT, GOTO, 0xFF, 0xFA, HALT);
+
+    private TestPrograms(){}
+
+    static byte[] resource(String name) throws IOException {
+        try (InputStream stream = TestPrograms.class.getClassLoader().getResourceAsStream(name)){
+            if (stream == null)
+                throw new IOException("No test resource " + name);
+            return stream.readAllBytes();
+        }
+    }
+
+    //An .ijvm binary with an empty constant pool and the given text bytes
+    static byte[] ijvm(int... text){
+        ByteBuffer buffer = ByteBuffer.allocate(20 + text.length);
+        buffer.putInt(0x1DEADFAD).putInt(0x00010000).putInt(0).putInt(0).putInt(text.length);
+        for (int b : text)
+            buffer.put((byte) b);
+        return buffer.array();
+    }
+
+    //Binary control store of the textual MAL resource
+    static byte[] assemble(String name) throws IOException {
+        return new MALWriter(MAL.parse(new String(resource(name)))).write();
+    }
+
+    //The reference control store
+    static byte[] controlStore() throws IOException {
+        return assemble("example.mal");
+    }
+}